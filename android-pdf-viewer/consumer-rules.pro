@@ -0,0 +1,30 @@
+# Rules applied to apps using this library. The native code looks these classes and members up
+# by name, and calls the native methods of the classes declaring them.
+
+-keepclasseswithmembernames,includedescriptorclasses class * {
+    native <methods>;
+}
+
+-keep class com.shockwave.pdfium.util.Size {
+    <init>(int, int);
+}
+-keep class com.shockwave.pdfium.PdfPasswordException {
+    <init>(java.lang.String);
+}
+
+-keep class com.shockwave.pdfium.RenderControl {
+    boolean cancelled;
+    long progressIntervalMs;
+    void onProgress(android.graphics.Bitmap);
+}
+-keep class com.shockwave.pdfium.SaveControl {
+    boolean cancelled;
+    void onProgress(long);
+}
+-keep class com.shockwave.pdfium.ChannelReader {
+    int fill(long, int);
+    boolean isAvailable(long, long);
+}
+-keep interface com.heaven7.android.pdf.PdfAnnotManager$NativeCallback {
+    void onGotImageAnnotation(int, long, long);
+}
@@ -0,0 +1,95 @@
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.source.FileSource;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Time to open large documents. Page sizes are fetched one native call per page, as
+ * document loading used to do, and all at once, as {@link PdfFile} does now. A complete load by
+ * {@link DocumentLoader} is timed as well.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DocumentOpenBenchmark {
+
+    private static final String TAG = DocumentOpenBenchmark.class.getSimpleName();
+
+    @Test
+    public void openTime() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        PdfiumCore pdfiumCore = new PdfiumCore(context);
+        for (int pageCount : new int[]{1000, 5000}) {
+            File file = SyntheticPdf.create(new File(context.getCacheDir(), "open-benchmark.pdf"),
+                    pageCount, false);
+            try {
+                measurePageSizes(context, pdfiumCore, file, pageCount);
+                measureLoad(context, pdfiumCore, file, pageCount);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private static void measurePageSizes(Context context, PdfiumCore pdfiumCore, File file, int pageCount)
+            throws Exception {
+        PdfDocument document = new FileSource(file).createDocument(context, pdfiumCore, null);
+        try {
+            int[] pageIndexes = new int[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pageIndexes[i] = i;
+            }
+            // warm up
+            pdfiumCore.getPageSizes(document, pageIndexes);
+
+            long start = System.nanoTime();
+            Size[] sizes = new Size[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                sizes[i] = pdfiumCore.getPageSize(document, i);
+            }
+            long perPage = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[] batch = pdfiumCore.getPageSizes(document, pageIndexes);
+            long batched = System.nanoTime() - start;
+
+            for (int i = 0; i < pageCount; i++) {
+                assertEquals(sizes[i].getWidth(), batch[i * 2]);
+                assertEquals(sizes[i].getHeight(), batch[i * 2 + 1]);
+            }
+            Log.i(TAG, String.format(Locale.US, "%d pages: sizes one by one %.1f ms, in one call %.1f ms",
+                    pageCount, perPage / 1e6, batched / 1e6));
+        } finally {
+            pdfiumCore.closeDocument(document);
+        }
+    }
+
+    private static void measureLoad(Context context, PdfiumCore pdfiumCore, File file, int pageCount)
+            throws Exception {
+        DocumentLoader loader = new DocumentLoader(context, pdfiumCore);
+        DocumentLoader.Request request = new DocumentLoader.Request(new FileSource(file))
+                .viewSize(1080, 1920);
+        long start = System.nanoTime();
+        PdfFile pdfFile = loader.load(request, null).get();
+        long elapsed = System.nanoTime() - start;
+        try {
+            assertEquals(pageCount, pdfFile.getPagesCount());
+            Log.i(TAG, String.format(Locale.US, "%d pages: loaded in %.1f ms", pageCount, elapsed / 1e6));
+        } finally {
+            pdfFile.dispose();
+        }
+    }
+}
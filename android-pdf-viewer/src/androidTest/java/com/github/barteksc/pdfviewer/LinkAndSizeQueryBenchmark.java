@@ -0,0 +1,86 @@
+package com.github.barteksc.pdfviewer;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cost of one page size query and of one page links query, which create Java objects from
+ * native code with the classes and member IDs cached at library load. The benchmark only uses
+ * calls which existed before that cache, run it on both trees to compare.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LinkAndSizeQueryBenchmark {
+
+    private static final String TAG = LinkAndSizeQueryBenchmark.class.getSimpleName();
+
+    private static final int PAGES = 50;
+
+    private static final int CALLS = 20000;
+
+    private PdfiumCore pdfiumCore;
+
+    private PdfDocument document;
+
+    @Before
+    public void setUp() throws Exception {
+        pdfiumCore = new PdfiumCore(InstrumentationRegistry.getTargetContext());
+        document = pdfiumCore.newDocument(SyntheticPdf.create(PAGES, false));
+        // link queries need open pages, keep them all open
+        pdfiumCore.setOpenPagesLimit(document, PAGES);
+        for (int page = 0; page < PAGES; page++) {
+            pdfiumCore.openPage(document, page);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pdfiumCore.closeDocument(document);
+    }
+
+    @Test
+    public void pageSizeQuery() {
+        for (int i = 0; i < CALLS; i++) {
+            pdfiumCore.getPageSize(document, i % PAGES);
+        }
+        long start = System.nanoTime();
+        int width = 0;
+        for (int i = 0; i < CALLS; i++) {
+            width += pdfiumCore.getPageSize(document, i % PAGES).getWidth();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(width > 0);
+        Log.i(TAG, String.format(Locale.US, "getPageSize: %.2f us per call", elapsed / 1e3 / CALLS));
+    }
+
+    @Test
+    public void pageLinksQuery() {
+        for (int i = 0; i < CALLS; i++) {
+            pdfiumCore.getPageLinks(document, i % PAGES);
+        }
+        long start = System.nanoTime();
+        int links = 0;
+        for (int i = 0; i < CALLS; i++) {
+            List<PdfDocument.Link> pageLinks = pdfiumCore.getPageLinks(document, i % PAGES);
+            links += pageLinks.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(CALLS * SyntheticPdf.LINKS_PER_PAGE, links);
+        Log.i(TAG, String.format(Locale.US, "getPageLinks: %.2f us per call, %d links each",
+                elapsed / 1e3 / CALLS, SyntheticPdf.LINKS_PER_PAGE));
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.github.barteksc.pdfviewer.source.ProgressiveSource;
+import com.shockwave.pdfium.PdfiumCore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Loads documents from a file written by a throttled stream, as a download in progress would.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProgressiveLoadTest {
+
+    private static final int PAGES = 8;
+
+    /** bytes written at each step of the stream */
+    private static final int CHUNK = 8 * 1024;
+
+    private static final long CHUNK_INTERVAL_MS = 10;
+
+    private Context context;
+
+    private PdfiumCore pdfiumCore;
+
+    private ExecutorService executor;
+
+    private File file;
+
+    private Thread stream;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        pdfiumCore = new PdfiumCore(context);
+        executor = Executors.newSingleThreadExecutor();
+        file = new File(context.getCacheDir(), "progressive-test.pdf");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (stream != null) {
+            stream.interrupt();
+            stream.join();
+        }
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    /**
+     * Write the first bytes of the data to the file, a chunk at a time. The file exists on return.
+     */
+    private void startStream(final byte[] data, final int length) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        stream = new Thread("throttled stream") {
+            @Override
+            public void run() {
+                try {
+                    for (int written = 0; written < length; written += CHUNK) {
+                        out.write(data, written, Math.min(CHUNK, length - written));
+                        out.flush();
+                        Thread.sleep(CHUNK_INTERVAL_MS);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // the test is over
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        // ignored
+                    }
+                }
+            }
+        };
+        stream.start();
+    }
+
+    @Test
+    public void documentLoadsAsDataArrives() throws Exception {
+        byte[] data = SyntheticPdf.create(PAGES);
+        startStream(data, data.length);
+
+        DocumentLoader loader = new DocumentLoader(context, pdfiumCore, executor);
+        PdfFile pdfFile = loader.load(new DocumentLoader.Request(new ProgressiveSource(file, data.length))
+                .viewSize(1080, 1920), null).get(30, TimeUnit.SECONDS);
+        try {
+            assertTrue(pdfFile.isProgressive());
+            assertEquals(PAGES, pdfFile.getPagesCount());
+            // the document is not linearized, it opens once all its data has arrived
+            for (int page = 0; page < PAGES; page++) {
+                assertTrue(pdfFile.isPageAvailable(page));
+            }
+        } finally {
+            pdfFile.dispose();
+        }
+    }
+
+    @Test
+    public void loadOfStalledStreamIsCancelled() throws Exception {
+        byte[] data = SyntheticPdf.create(PAGES);
+        startStream(data, data.length / 2);
+
+        DocumentLoader loader = new DocumentLoader(context, pdfiumCore, executor);
+        DocumentLoader.LoadHandle handle = loader.load(
+                new DocumentLoader.Request(new ProgressiveSource(file, data.length)), null);
+        try {
+            handle.get(1, TimeUnit.SECONDS);
+            fail("a document missing half of its data was loaded");
+        } catch (TimeoutException e) {
+            // waits for the data
+        }
+        assertTrue(handle.cancel(true));
+
+        // the cancellation interrupts the wait for data and frees the loader thread
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
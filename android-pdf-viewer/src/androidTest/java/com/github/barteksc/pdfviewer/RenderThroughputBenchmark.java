@@ -0,0 +1,124 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.RenderControl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tiles rendered per second by 1, 2, 4 and 8 workers. Each worker runs the steps of a
+ * {@link RenderingHandler} worker: take the next tile, borrow a bitmap from the shared pool,
+ * erase it, render it and give it back.
+ * <p>
+ * Renders hold PdfiumCore's global lock, so only the bitmap work of one worker overlaps the
+ * render of another. Throughput beyond one worker is bounded by that lock, the speedup over
+ * one worker is reported but not asserted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RenderThroughputBenchmark {
+
+    private static final String TAG = RenderThroughputBenchmark.class.getSimpleName();
+
+    private static final int PAGES = 6;
+
+    private static final float ZOOM = 3;
+
+    private static final int TILE_SIZE = (int) Constants.PART_SIZE;
+
+    private PdfiumCore pdfiumCore;
+
+    private PdfDocument document;
+
+    /** page, left, top, page width and page height of each tile, in pixels at the zoom */
+    private final List<int[]> tiles = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        pdfiumCore = new PdfiumCore(InstrumentationRegistry.getTargetContext());
+        document = pdfiumCore.newDocument(SyntheticPdf.create(PAGES));
+        for (int page = 0; page < PAGES; page++) {
+            pdfiumCore.openPage(document, page);
+            int width = Math.round(pdfiumCore.getPageWidth(document, page) * ZOOM);
+            int height = Math.round(pdfiumCore.getPageHeight(document, page) * ZOOM);
+            for (int top = 0; top < height; top += TILE_SIZE) {
+                for (int left = 0; left < width; left += TILE_SIZE) {
+                    tiles.add(new int[]{page, left, top, width, height});
+                }
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pdfiumCore.closeDocument(document);
+    }
+
+    @Test
+    public void tilesPerSecond() throws InterruptedException {
+        // warm up
+        render(1);
+        double singleWorkerRate = 0;
+        for (int workers : new int[]{1, 2, 4, 8}) {
+            long start = System.nanoTime();
+            int rendered = render(workers);
+            long elapsed = System.nanoTime() - start;
+            assertEquals(tiles.size(), rendered);
+            double rate = rendered * 1e9 / elapsed;
+            if (workers == 1) {
+                singleWorkerRate = rate;
+            }
+            Log.i(TAG, String.format(Locale.US, "%d workers: %d tiles in %d ms, %.1f tiles/s, %.2fx one worker",
+                    workers, rendered, elapsed / 1000000, rate, rate / singleWorkerRate));
+        }
+        Log.i(TAG, "renders are serialized by the global pdfium lock, extra workers only overlap bitmap work");
+    }
+
+    private int render(int workerCount) throws InterruptedException {
+        final BitmapPool bitmapPool = new BitmapPool(2L * workerCount * TILE_SIZE * TILE_SIZE * 2);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger rendered = new AtomicInteger();
+        Thread[] workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread("PDF renderer #" + i) {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < tiles.size()) {
+                        int[] tile = tiles.get(index);
+                        Bitmap bitmap = bitmapPool.acquire(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+                        bitmap.eraseColor(Color.WHITE);
+                        if (pdfiumCore.renderPageBitmap(document, bitmap, tile[0], -tile[1], -tile[2],
+                                tile[3], tile[4], false, new RenderControl())) {
+                            rendered.incrementAndGet();
+                        }
+                        bitmapPool.release(bitmap);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return rendered.get();
+    }
+}
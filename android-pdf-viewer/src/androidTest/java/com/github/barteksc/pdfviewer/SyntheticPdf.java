@@ -0,0 +1,144 @@
+package com.github.barteksc.pdfviewer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Writes PDF documents of any page count for benchmarks. Pages have a few sizes, carry
+ * {@link #LINKS_PER_PAGE} links and their own content stream. Drawn pages hold stroked shapes and
+ * text, so each page costs a real parse and render, plain pages a single line to keep large
+ * documents small.
+ * Documents are not linearized.
+ */
+final class SyntheticPdf {
+
+    static final int LINKS_PER_PAGE = 2;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /** page sizes in points, cycled over the pages */
+    private static final int[][] PAGE_SIZES = {{612, 792}, {595, 842}, {842, 595}};
+
+    private SyntheticPdf() {
+        // Prevents instantiation
+    }
+
+    static byte[] create(int pageCount) {
+        return create(pageCount, true);
+    }
+
+    static byte[] create(int pageCount, boolean drawn) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pageCount * (drawn ? 16384 : 512));
+        try {
+            write(out, pageCount, drawn);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static File create(File file, int pageCount) throws IOException {
+        return create(file, pageCount, true);
+    }
+
+    static File create(File file, int pageCount, boolean drawn) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(create(pageCount, drawn));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Objects: 1 catalog, 2 page tree, 3 font, then for each page its page object and its content
+     */
+    private static void write(ByteArrayOutputStream out, int pageCount, boolean drawn) throws IOException {
+        int objectCount = 3 + 2 * pageCount;
+        long[] offsets = new long[objectCount + 1];
+        write(out, "%PDF-1.4\n");
+
+        offsets[1] = out.size();
+        write(out, "1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+
+        offsets[2] = out.size();
+        StringBuilder kids = new StringBuilder();
+        for (int i = 0; i < pageCount; i++) {
+            kids.append(pageObject(i)).append(" 0 R ");
+        }
+        write(out, "2 0 obj\n<< /Type /Pages /Kids [ " + kids + "] /Count " + pageCount + " >>\nendobj\n");
+
+        offsets[3] = out.size();
+        write(out, "3 0 obj\n<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>\nendobj\n");
+
+        for (int i = 0; i < pageCount; i++) {
+            int[] size = PAGE_SIZES[i % PAGE_SIZES.length];
+            offsets[pageObject(i)] = out.size();
+            write(out, pageObject(i) + " 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 "
+                    + size[0] + " " + size[1] + "] /Resources << /Font << /F1 3 0 R >> >> /Contents "
+                    + (pageObject(i) + 1) + " 0 R /Annots " + links(i, pageCount) + " >>\nendobj\n");
+
+            String text = drawn ? content(i, size[0], size[1])
+                    : "BT /F1 10 Tf 48 48 Td (Page " + (i + 1) + ") Tj ET";
+            byte[] content = text.getBytes(ASCII);
+            offsets[pageObject(i) + 1] = out.size();
+            write(out, (pageObject(i) + 1) + " 0 obj\n<< /Length " + content.length + " >>\nstream\n");
+            out.write(content);
+            write(out, "\nendstream\nendobj\n");
+        }
+
+        long xref = out.size();
+        StringBuilder table = new StringBuilder("xref\n0 " + (objectCount + 1) + "\n0000000000 65535 f \n");
+        for (int i = 1; i <= objectCount; i++) {
+            table.append(String.format(Locale.US, "%010d 00000 n \n", offsets[i]));
+        }
+        write(out, table.toString());
+        write(out, "trailer\n<< /Size " + (objectCount + 1) + " /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+    }
+
+    private static int pageObject(int pageIndex) {
+        return 4 + 2 * pageIndex;
+    }
+
+    /**
+     * Link annotations of a page: one to a web page, one to the next page
+     */
+    private static String links(int pageIndex, int pageCount) {
+        return "[ << /Type /Annot /Subtype /Link /Rect [36 36 136 56] /Border [0 0 0]"
+                + " /A << /S /URI /URI (https://example.com/page" + (pageIndex + 1) + ") >> >>"
+                + " << /Type /Annot /Subtype /Link /Rect [156 36 256 56] /Border [0 0 0]"
+                + " /Dest [" + pageObject((pageIndex + 1) % pageCount) + " 0 R /Fit] >> ]";
+    }
+
+    private static String content(int pageIndex, int width, int height) {
+        StringBuilder content = new StringBuilder();
+        // a grid of stroked rectangles and diagonals
+        content.append("0.2 0.4 0.8 RG 0.5 w\n");
+        for (int x = 36; x < width - 36; x += 48) {
+            for (int y = 36; y < height - 36; y += 48) {
+                content.append(x).append(' ').append(y).append(" 40 40 re S ")
+                        .append(x).append(' ').append(y).append(" m ")
+                        .append(x + 40).append(' ').append(y + 40).append(" l S\n");
+            }
+        }
+        // lines of text
+        content.append("0 g BT /F1 10 Tf\n");
+        for (int y = height - 48, line = 0; y > 48; y -= 14, line++) {
+            content.append("1 0 0 1 48 ").append(y).append(" Tm (Page ").append(pageIndex + 1)
+                    .append(", line ").append(line + 1)
+                    .append(": the quick brown fox jumps over the lazy dog) Tj\n");
+        }
+        content.append("ET");
+        return content.toString();
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(ASCII));
+    }
+}
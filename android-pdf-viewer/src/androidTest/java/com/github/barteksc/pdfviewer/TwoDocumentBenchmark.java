@@ -0,0 +1,147 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.RenderControl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two documents used at once, as by the two views of a split screen. Pdfium is not thread safe
+ * across documents for page loading, rendering and closing, those calls share a process wide
+ * lock and the pages of two documents are rendered one after the other. Structure queries only
+ * hold the lock of their document, so queries on one document keep their pace while the other
+ * document renders, where a lock shared by all calls would make each query wait for a render.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TwoDocumentBenchmark {
+
+    private static final String TAG = TwoDocumentBenchmark.class.getSimpleName();
+
+    private static final int PAGES = 4;
+
+    private static final float ZOOM = 2;
+
+    private static final int TILE_SIZE = (int) Constants.PART_SIZE;
+
+    private static final long MEASURE_MS = 1000;
+
+    private PdfiumCore pdfiumCore;
+
+    private PdfDocument rendered;
+
+    private PdfDocument queried;
+
+    @Before
+    public void setUp() throws Exception {
+        pdfiumCore = new PdfiumCore(InstrumentationRegistry.getTargetContext());
+        rendered = pdfiumCore.newDocument(SyntheticPdf.create(PAGES));
+        queried = pdfiumCore.newDocument(SyntheticPdf.create(PAGES));
+        for (int page = 0; page < PAGES; page++) {
+            pdfiumCore.openPage(rendered, page);
+            pdfiumCore.openPage(queried, page);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pdfiumCore.closeDocument(rendered);
+        pdfiumCore.closeDocument(queried);
+    }
+
+    @Test
+    public void queriesDoNotWaitForRendersOfOtherDocument() throws InterruptedException {
+        // warm up
+        queryRate();
+        double idleRate = queryRate();
+
+        final boolean[] stop = new boolean[1];
+        final int[] tiles = new int[1];
+        Thread renderer = new Thread("PDF renderer") {
+            @Override
+            public void run() {
+                Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565);
+                while (!isStopped()) {
+                    tiles[0] += renderAll(bitmap);
+                }
+                bitmap.recycle();
+            }
+
+            private boolean isStopped() {
+                synchronized (stop) {
+                    return stop[0];
+                }
+            }
+        };
+        renderer.start();
+        double busyRate;
+        try {
+            busyRate = queryRate();
+        } finally {
+            synchronized (stop) {
+                stop[0] = true;
+            }
+            renderer.join();
+        }
+
+        Log.i(TAG, String.format(Locale.US, "page size queries: %.0f/s alone, %.0f/s while %d tiles of the"
+                + " other document render", idleRate, busyRate, tiles[0]));
+        assertTrue("no tile rendered", tiles[0] > 0);
+        // waiting for renders would divide the rate by the queries per tile render, hundreds
+        assertTrue(String.format(Locale.US, "%.0f/s alone, %.0f/s while rendering", idleRate, busyRate),
+                busyRate > idleRate / 4);
+    }
+
+    /**
+     * @return page size queries per second on the queried document
+     */
+    private double queryRate() {
+        long start = System.nanoTime();
+        long end = start + MEASURE_MS * 1000000;
+        int queries = 0;
+        long now;
+        do {
+            pdfiumCore.getPageSize(queried, queries % PAGES);
+            queries++;
+            now = System.nanoTime();
+        } while (now < end);
+        return queries * 1e9 / (now - start);
+    }
+
+    /**
+     * Render all the tiles of the rendered document
+     *
+     * @return number of rendered tiles
+     */
+    private int renderAll(Bitmap bitmap) {
+        int count = 0;
+        for (int page = 0; page < PAGES; page++) {
+            int width = Math.round(pdfiumCore.getPageWidth(rendered, page) * ZOOM);
+            int height = Math.round(pdfiumCore.getPageHeight(rendered, page) * ZOOM);
+            for (int top = 0; top < height; top += TILE_SIZE) {
+                for (int left = 0; left < width; left += TILE_SIZE) {
+                    bitmap.eraseColor(Color.WHITE);
+                    if (pdfiumCore.renderPageBitmap(rendered, bitmap, page, -left, -top, width, height,
+                            false, new RenderControl())) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
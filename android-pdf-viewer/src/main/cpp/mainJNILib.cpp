@@ -1,4 +1,5 @@
 #include "util.hpp"
+#include "rgb565.hpp"
 #include "utils/Errors.h"
 
 extern "C" {
@@ -7,6 +8,7 @@ extern "C" {
 #include <sys/stat.h>
 #include <string.h>
 #include <stdio.h>
+#include <time.h>
 }
 
 #include <android/native_window.h>
@@ -21,13 +23,210 @@ using namespace android;
 #include <fpdf_doc.h>
 #include <string>
 #include <vector>
+#include <map>
+#include <algorithm>
 #include <fpdf_save.h>
+#include <fpdf_progressive.h>
+#include <fpdf_dataavail.h>
 #include <public/fpdf_annot.h>
 
 static Mutex sLibraryLock;
 
 static int sLibraryReferenceCount = 0;
 
+static JavaVM *sJavaVM = NULL;
+
+/**
+ * Classes and member IDs used by the native calls. Core ones are resolved in JNI_OnLoad,
+ * the ones of optional features on first use by the resolve functions below.
+ * Class references are global so they stay valid across calls and threads.
+ */
+static struct {
+    jclass longClass;
+    jmethodID longInit;
+    jmethodID longValue;
+
+    jclass integerClass;
+    jmethodID integerInit;
+
+    jclass sizeClass;
+    jmethodID sizeInit;
+
+    jclass rectFClass;
+    jmethodID rectFInit;
+
+    jclass pointClass;
+    jmethodID pointInit;
+
+    jclass pointFClass;
+    jmethodID pointFInit;
+
+    jclass nativeCallbackClass;
+    jmethodID onGotImageAnnotation;
+
+    jclass renderControlClass;
+    jfieldID renderControlCancelled;
+    jfieldID renderControlProgressIntervalMs;
+    jmethodID renderControlOnProgress;
+
+    jclass channelReaderClass;
+    jmethodID channelReaderFill;
+    jmethodID channelReaderIsAvailable;
+
+    jclass saveControlClass;
+    jfieldID saveControlCancelled;
+    jmethodID saveControlOnProgress;
+
+    jclass outputStreamClass;
+    jmethodID outputStreamWrite;
+} sJni;
+
+static jclass findGlobalClass(JNIEnv *env, const char *name) {
+    jclass localClass = env->FindClass(name);
+    if (localClass == NULL) {
+        LOGE("Unable to find class %s", name);
+        return NULL;
+    }
+    jclass globalClass = reinterpret_cast<jclass>(env->NewGlobalRef(localClass));
+    env->DeleteLocalRef(localClass);
+    return globalClass;
+}
+
+static bool initJniCache(JNIEnv *env) {
+    sJni.longClass = findGlobalClass(env, "java/lang/Long");
+    sJni.integerClass = findGlobalClass(env, "java/lang/Integer");
+    sJni.sizeClass = findGlobalClass(env, "com/shockwave/pdfium/util/Size");
+    sJni.rectFClass = findGlobalClass(env, "android/graphics/RectF");
+    sJni.pointClass = findGlobalClass(env, "android/graphics/Point");
+    sJni.pointFClass = findGlobalClass(env, "android/graphics/PointF");
+    if (sJni.longClass == NULL || sJni.integerClass == NULL || sJni.sizeClass == NULL
+        || sJni.rectFClass == NULL || sJni.pointClass == NULL || sJni.pointFClass == NULL) {
+        return false;
+    }
+
+    sJni.longInit = env->GetMethodID(sJni.longClass, "<init>", "(J)V");
+    sJni.longValue = env->GetMethodID(sJni.longClass, "longValue", "()J");
+    sJni.integerInit = env->GetMethodID(sJni.integerClass, "<init>", "(I)V");
+    sJni.sizeInit = env->GetMethodID(sJni.sizeClass, "<init>", "(II)V");
+    sJni.rectFInit = env->GetMethodID(sJni.rectFClass, "<init>", "(FFFF)V");
+    sJni.pointInit = env->GetMethodID(sJni.pointClass, "<init>", "(II)V");
+    sJni.pointFInit = env->GetMethodID(sJni.pointFClass, "<init>", "(FF)V");
+    return sJni.longInit != NULL && sJni.longValue != NULL && sJni.integerInit != NULL
+           && sJni.sizeInit != NULL && sJni.rectFInit != NULL && sJni.pointInit != NULL
+           && sJni.pointFInit != NULL;
+}
+
+/*
+ * Classes of optional features are resolved on first use, so a class removed by the app's
+ * shrinker only fails the feature needing it, with the NoClassDefFoundError or NoSuchMethodError
+ * left pending. Callers return at once when they get false.
+ */
+static Mutex sJniLock;
+
+static bool resolveNativeCallback(JNIEnv *env) {
+    Mutex::Autolock lock(sJniLock);
+    if (sJni.onGotImageAnnotation != NULL) {
+        return true;
+    }
+    if (sJni.nativeCallbackClass == NULL) {
+        sJni.nativeCallbackClass = findGlobalClass(env,
+                                                   "com/heaven7/android/pdf/PdfAnnotManager$NativeCallback");
+        if (sJni.nativeCallbackClass == NULL) {
+            return false;
+        }
+    }
+    sJni.onGotImageAnnotation = env->GetMethodID(sJni.nativeCallbackClass,
+                                                 "onGotImageAnnotation", "(IJJ)V");
+    return sJni.onGotImageAnnotation != NULL;
+}
+
+static bool resolveRenderControl(JNIEnv *env) {
+    Mutex::Autolock lock(sJniLock);
+    if (sJni.renderControlOnProgress != NULL) {
+        return true;
+    }
+    if (sJni.renderControlClass == NULL) {
+        sJni.renderControlClass = findGlobalClass(env, "com/shockwave/pdfium/RenderControl");
+        if (sJni.renderControlClass == NULL) {
+            return false;
+        }
+    }
+    sJni.renderControlCancelled = env->GetFieldID(sJni.renderControlClass, "cancelled", "Z");
+    if (sJni.renderControlCancelled == NULL) {
+        return false;
+    }
+    sJni.renderControlProgressIntervalMs = env->GetFieldID(sJni.renderControlClass,
+                                                           "progressIntervalMs", "J");
+    if (sJni.renderControlProgressIntervalMs == NULL) {
+        return false;
+    }
+    // set last, it marks the members as resolved
+    sJni.renderControlOnProgress = env->GetMethodID(sJni.renderControlClass, "onProgress",
+                                                    "(Landroid/graphics/Bitmap;)V");
+    return sJni.renderControlOnProgress != NULL;
+}
+
+static bool resolveChannelReader(JNIEnv *env) {
+    Mutex::Autolock lock(sJniLock);
+    if (sJni.channelReaderIsAvailable != NULL) {
+        return true;
+    }
+    if (sJni.channelReaderClass == NULL) {
+        sJni.channelReaderClass = findGlobalClass(env, "com/shockwave/pdfium/ChannelReader");
+        if (sJni.channelReaderClass == NULL) {
+            return false;
+        }
+    }
+    sJni.channelReaderFill = env->GetMethodID(sJni.channelReaderClass, "fill", "(JI)I");
+    if (sJni.channelReaderFill == NULL) {
+        return false;
+    }
+    sJni.channelReaderIsAvailable = env->GetMethodID(sJni.channelReaderClass, "isAvailable", "(JJ)Z");
+    return sJni.channelReaderIsAvailable != NULL;
+}
+
+static bool resolveSaveControl(JNIEnv *env) {
+    Mutex::Autolock lock(sJniLock);
+    if (sJni.outputStreamWrite != NULL) {
+        return true;
+    }
+    if (sJni.saveControlClass == NULL) {
+        sJni.saveControlClass = findGlobalClass(env, "com/shockwave/pdfium/SaveControl");
+        if (sJni.saveControlClass == NULL) {
+            return false;
+        }
+    }
+    sJni.saveControlCancelled = env->GetFieldID(sJni.saveControlClass, "cancelled", "Z");
+    if (sJni.saveControlCancelled == NULL) {
+        return false;
+    }
+    sJni.saveControlOnProgress = env->GetMethodID(sJni.saveControlClass, "onProgress", "(J)V");
+    if (sJni.saveControlOnProgress == NULL) {
+        return false;
+    }
+    if (sJni.outputStreamClass == NULL) {
+        sJni.outputStreamClass = findGlobalClass(env, "java/io/OutputStream");
+        if (sJni.outputStreamClass == NULL) {
+            return false;
+        }
+    }
+    sJni.outputStreamWrite = env->GetMethodID(sJni.outputStreamClass, "write", "([BII)V");
+    return sJni.outputStreamWrite != NULL;
+}
+
+extern "C" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    sJavaVM = vm;
+    if (!initJniCache(env)) {
+        LOGE("Unable to cache JNI classes");
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
 static void initLibraryIfNeed() {
     Mutex::Autolock lock(sLibraryLock);
     if (sLibraryReferenceCount == 0) {
@@ -96,23 +295,158 @@ struct rgb {
     uint8_t blue;
 };
 
+class DocumentFile;
+
+/** FX_FILEAVAIL which knows its document, pdfium passes it back to IsDataAvail */
+struct FileAvail : FX_FILEAVAIL {
+    DocumentFile *docFile;
+};
+
 class DocumentFile {
 private:
     int fileFd;
 
 public:
     FPDF_DOCUMENT pdfDocument = NULL;
-    size_t fileSize;
+    size_t fileSize = 0;
+
+    /** Global ref to the Java object backing the document data, released on close */
+    jobject sourceRef = NULL;
+    /** Native copy of a byte array source, pdfium reads it until the document is closed */
+    jbyte *dataCopy = NULL;
+
+    /** Availability of a progressively loaded document, pdfium keeps pointers to both structs */
+    FPDF_AVAIL avail = NULL;
+    FileAvail fileAvail;
+    FPDF_FILEACCESS fileAccess;
+    /** Read-ahead buffer of a ChannelReader source */
+    uint8_t *readBuffer = NULL;
+    jint readBufferSize = 0;
+
+    /** Pages loaded by annotation and page property calls, open only while they have live annotations */
+    std::map<int, FPDF_PAGE> cachedPages;
+    /** Annotation handles given to Java by page, closed before their pages */
+    std::map<int, std::vector<FPDF_ANNOTATION> > liveAnnots;
 
     DocumentFile() { initLibraryIfNeed(); }
 
     ~DocumentFile();
+
+    FPDF_PAGE getCachedPage(int pageIndex);
+
+    void releaseCachedPage(int pageIndex);
+
+    void keepAnnot(int pageIndex, FPDF_ANNOTATION annot);
+
+    bool hasLiveAnnot(int pageIndex, FPDF_ANNOTATION annot);
+
+    void closeAnnot(int pageIndex, FPDF_ANNOTATION annot);
+
+    void closeAnnots(int pageIndex);
 };
 
+/**
+ * Load a page once for the annotation calls on it. Callers hand it back with
+ * releaseCachedPage(), it stays open while Java holds annotation handles of the page.
+ */
+FPDF_PAGE DocumentFile::getCachedPage(int pageIndex) {
+    std::map<int, FPDF_PAGE>::iterator it = cachedPages.find(pageIndex);
+    if (it != cachedPages.end()) {
+        return it->second;
+    }
+    FPDF_PAGE page = FPDF_LoadPage(pdfDocument, pageIndex);
+    if (page != NULL) {
+        cachedPages[pageIndex] = page;
+    }
+    return page;
+}
+
+/**
+ * Close a cached page unless Java holds annotation handles of it
+ */
+void DocumentFile::releaseCachedPage(int pageIndex) {
+    std::map<int, std::vector<FPDF_ANNOTATION> >::iterator live = liveAnnots.find(pageIndex);
+    if (live != liveAnnots.end() && !live->second.empty()) {
+        return;
+    }
+    std::map<int, FPDF_PAGE>::iterator it = cachedPages.find(pageIndex);
+    if (it != cachedPages.end()) {
+        FPDF_ClosePage(it->second);
+        cachedPages.erase(it);
+    }
+}
+
+void DocumentFile::keepAnnot(int pageIndex, FPDF_ANNOTATION annot) {
+    liveAnnots[pageIndex].push_back(annot);
+}
+
+bool DocumentFile::hasLiveAnnot(int pageIndex, FPDF_ANNOTATION annot) {
+    std::map<int, std::vector<FPDF_ANNOTATION> >::iterator live = liveAnnots.find(pageIndex);
+    return live != liveAnnots.end()
+           && std::find(live->second.begin(), live->second.end(), annot) != live->second.end();
+}
+
+/**
+ * Close a handle given to Java, the page is not released
+ */
+void DocumentFile::closeAnnot(int pageIndex, FPDF_ANNOTATION annot) {
+    std::map<int, std::vector<FPDF_ANNOTATION> >::iterator live = liveAnnots.find(pageIndex);
+    if (live == liveAnnots.end()) {
+        return;
+    }
+    std::vector<FPDF_ANNOTATION>::iterator it = std::find(live->second.begin(), live->second.end(), annot);
+    if (it != live->second.end()) {
+        FPDFPage_CloseAnnot(annot);
+        live->second.erase(it);
+    }
+    if (live->second.empty()) {
+        liveAnnots.erase(live);
+    }
+}
+
+/**
+ * Close the handles of a page given to Java, or of all pages for a negative index, and release their pages
+ */
+void DocumentFile::closeAnnots(int pageIndex) {
+    std::vector<int> pages;
+    for (std::map<int, std::vector<FPDF_ANNOTATION> >::iterator it = liveAnnots.begin();
+         it != liveAnnots.end(); ++it) {
+        if (pageIndex < 0 || it->first == pageIndex) {
+            for (size_t i = 0; i < it->second.size(); i++) {
+                FPDFPage_CloseAnnot(it->second[i]);
+            }
+            pages.push_back(it->first);
+        }
+    }
+    for (size_t i = 0; i < pages.size(); i++) {
+        liveAnnots.erase(pages[i]);
+        releaseCachedPage(pages[i]);
+    }
+}
+
 DocumentFile::~DocumentFile() {
+    for (std::map<int, std::vector<FPDF_ANNOTATION> >::iterator it = liveAnnots.begin();
+         it != liveAnnots.end(); ++it) {
+        for (size_t i = 0; i < it->second.size(); i++) {
+            FPDFPage_CloseAnnot(it->second[i]);
+        }
+    }
+    for (std::map<int, FPDF_PAGE>::iterator it = cachedPages.begin(); it != cachedPages.end(); ++it) {
+        FPDF_ClosePage(it->second);
+    }
     if (pdfDocument != NULL) {
         FPDF_CloseDocument(pdfDocument);
     }
+    if (avail != NULL) {
+        FPDFAvail_Destroy(avail);
+    }
+    delete[] dataCopy;
+    if (sourceRef != NULL) {
+        JNIEnv *env;
+        if (sJavaVM->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) == JNI_OK) {
+            env->DeleteGlobalRef(sourceRef);
+        }
+    }
 
     destroyLibraryIfNeed();
 }
@@ -188,15 +522,11 @@ int jniThrowExceptionFmt(JNIEnv *env, const char *className, const char *fmt, ..
 }
 
 jobject NewLong(JNIEnv *env, jlong value) {
-    jclass cls = env->FindClass("java/lang/Long");
-    jmethodID methodID = env->GetMethodID(cls, "<init>", "(J)V");
-    return env->NewObject(cls, methodID, value);
+    return env->NewObject(sJni.longClass, sJni.longInit, value);
 }
 
 jobject NewInteger(JNIEnv *env, jint value) {
-    jclass cls = env->FindClass("java/lang/Integer");
-    jmethodID methodID = env->GetMethodID(cls, "<init>", "(I)V");
-    return env->NewObject(cls, methodID, value);
+    return env->NewObject(sJni.integerClass, sJni.integerInit, value);
 }
 
 uint16_t rgbTo565(rgb *color) {
@@ -204,18 +534,7 @@ uint16_t rgbTo565(rgb *color) {
 }
 
 void rgbBitmapTo565(void *source, int sourceStride, void *dest, AndroidBitmapInfo *info) {
-    rgb *srcLine;
-    uint16_t *dstLine;
-    int y, x;
-    for (y = 0; y < info->height; y++) {
-        srcLine = (rgb *) source;
-        dstLine = (uint16_t *) dest;
-        for (x = 0; x < info->width; x++) {
-            dstLine[x] = rgbTo565(&srcLine[x]);
-        }
-        source = (char *) source + sourceStride;
-        dest = (char *) dest + info->stride;
-    }
+    rgbPixelsTo565(source, sourceStride, dest, info->stride, info->width, info->height);
 }
 
 extern "C" { //For JNI support
@@ -231,10 +550,64 @@ static int getBlock(void *param, unsigned long position, unsigned char *outBuffe
     return 1;
 }
 
+/**
+ * Reads a block through ChannelReader.fill, which loads the requested range into its direct
+ * read-ahead buffer. pdfium calls this on the thread using the document, which is a Java thread.
+ */
+static int getBlockFromReader(void *param, unsigned long position, unsigned char *outBuffer,
+                              unsigned long size) {
+    DocumentFile *docFile = reinterpret_cast<DocumentFile *>(param);
+    JNIEnv *env;
+    if (sJavaVM->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        LOGE("Cannot read from channel: thread not attached");
+        return 0;
+    }
+    while (size > 0) {
+        jint chunk = (jint) std::min<unsigned long>(size, (unsigned long) docFile->readBufferSize);
+        jint offset = env->CallIntMethod(docFile->sourceRef, sJni.channelReaderFill,
+                                         (jlong) position, chunk);
+        if (env->ExceptionCheck()) {
+            env->ExceptionClear();
+            LOGE("Cannot read from channel at %lu", position);
+            return 0;
+        }
+        if (offset < 0) {
+            LOGE("Unexpected end of channel at %lu", position);
+            return 0;
+        }
+        memcpy(outBuffer, docFile->readBuffer + offset, (size_t) chunk);
+        outBuffer += chunk;
+        position += chunk;
+        size -= chunk;
+    }
+    return 1;
+}
+
+static FPDF_BOOL isDataAvail(FX_FILEAVAIL *pThis, size_t offset, size_t size) {
+    DocumentFile *docFile = static_cast<FileAvail *>(pThis)->docFile;
+    JNIEnv *env;
+    if (sJavaVM->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return false;
+    }
+    jboolean available = env->CallBooleanMethod(docFile->sourceRef, sJni.channelReaderIsAvailable,
+                                                (jlong) offset, (jlong) size);
+    if (env->ExceptionCheck()) {
+        env->ExceptionClear();
+        return false;
+    }
+    return available;
+}
+
+/** Data is requested through ChannelReader.isAvailable, download hints are not needed */
+static void addSegment(FX_DOWNLOADHINTS *pThis, size_t offset, size_t size) {
+}
+
+static FX_DOWNLOADHINTS sDownloadHints = {1, &addSegment};
+
 JNI_FUNC(jlong, PdfiumCore, nInsertImage)(JNI_ARGS, jlong docPtr, jint pageIndex, jobject bitmap,
                                           jfloat left, jfloat top, jint width, jint height) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, pageIndex);
+    FPDF_PAGE page = doc->getCachedPage(pageIndex);
     if (page == NULL) {
         LOGE("nInsertImage: Loaded page is null");
         return 0;
@@ -270,7 +643,8 @@ JNI_FUNC(jlong, PdfiumCore, nInsertImage)(JNI_ARGS, jlong docPtr, jint pageIndex
          (float) FPDF_GetPageWidth(page), (float) FPDF_GetPageHeight(page));
     LOGD("w, h = %d, %d", width, height);
     FPDFBitmap_Destroy(pdfBitmap);
-    FPDFPage_CloseAnnot(anno);
+    // the returned image lives in the annotation, keep it and its page open
+    doc->keepAnnot(pageIndex, anno);
 
     return reinterpret_cast<jlong>(image_object);
 }
@@ -285,6 +659,7 @@ JNI_FUNC(jlong, PdfiumCore, nativeOpenDocument)(JNI_ARGS, jint fd, jstring passw
     }
 
     DocumentFile *docFile = new DocumentFile();
+    docFile->fileSize = fileLength;
 
     FPDF_FILEACCESS loader;
     loader.m_FileLen = fileLength;
@@ -325,6 +700,204 @@ JNI_FUNC(jlong, PdfiumCore, nativeOpenDocument)(JNI_ARGS, jint fd, jstring passw
     return reinterpret_cast<jlong>(docFile);
 }
 
+JNI_FUNC(jlong, PdfiumCore, nativeOpenReaderDocument)(JNI_ARGS, jobject reader, jobject buffer,
+                                                      jlong size, jstring password) {
+    if (!resolveChannelReader(env)) {
+        return -1;
+    }
+    if (size <= 0) {
+        jniThrowException(env, "java/io/IOException",
+                          "File is empty");
+        return -1;
+    }
+    uint8_t *readBuffer = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong readBufferSize = env->GetDirectBufferCapacity(buffer);
+    if (readBuffer == NULL || readBufferSize <= 0) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                          "Read buffer must be a direct buffer");
+        return -1;
+    }
+
+    DocumentFile *docFile = new DocumentFile();
+    docFile->sourceRef = env->NewGlobalRef(reader);
+    docFile->readBuffer = readBuffer;
+    docFile->readBufferSize = (jint) readBufferSize;
+    docFile->fileSize = (size_t) size;
+
+    FPDF_FILEACCESS loader;
+    loader.m_FileLen = (unsigned long) size;
+    loader.m_Param = docFile;
+    loader.m_GetBlock = &getBlockFromReader;
+
+    const char *cpassword = NULL;
+    if (password != NULL) {
+        cpassword = env->GetStringUTFChars(password, NULL);
+    }
+
+    FPDF_DOCUMENT document = FPDF_LoadCustomDocument(&loader, cpassword);
+
+    if (cpassword != NULL) {
+        env->ReleaseStringUTFChars(password, cpassword);
+    }
+
+    if (!document) {
+        delete docFile;
+
+        const long errorNum = FPDF_GetLastError();
+        if (errorNum == FPDF_ERR_PASSWORD) {
+            jniThrowException(env, "com/shockwave/pdfium/PdfPasswordException",
+                              "Password required or incorrect password.");
+        } else {
+            char *error = getErrorDescription(errorNum);
+            jniThrowExceptionFmt(env, "java/io/IOException",
+                                 "cannot create document: %s", error);
+
+            free(error);
+        }
+
+        return -1;
+    }
+
+    docFile->pdfDocument = document;
+
+    return reinterpret_cast<jlong>(docFile);
+}
+
+JNI_FUNC(jlong, PdfiumCore, nativeCreateAvail)(JNI_ARGS, jobject reader, jobject buffer, jlong size) {
+    if (!resolveChannelReader(env)) {
+        return -1;
+    }
+    if (size <= 0) {
+        jniThrowException(env, "java/io/IOException",
+                          "File is empty");
+        return -1;
+    }
+    uint8_t *readBuffer = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong readBufferSize = env->GetDirectBufferCapacity(buffer);
+    if (readBuffer == NULL || readBufferSize <= 0) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                          "Read buffer must be a direct buffer");
+        return -1;
+    }
+
+    DocumentFile *docFile = new DocumentFile();
+    docFile->sourceRef = env->NewGlobalRef(reader);
+    docFile->readBuffer = readBuffer;
+    docFile->readBufferSize = (jint) readBufferSize;
+    docFile->fileSize = (size_t) size;
+
+    docFile->fileAccess.m_FileLen = (unsigned long) size;
+    docFile->fileAccess.m_Param = docFile;
+    docFile->fileAccess.m_GetBlock = &getBlockFromReader;
+    docFile->fileAvail.version = 1;
+    docFile->fileAvail.IsDataAvail = &isDataAvail;
+    docFile->fileAvail.docFile = docFile;
+
+    docFile->avail = FPDFAvail_Create(&docFile->fileAvail, &docFile->fileAccess);
+    if (docFile->avail == NULL) {
+        delete docFile;
+        jniThrowException(env, "java/io/IOException",
+                          "cannot create availability provider");
+        return -1;
+    }
+    return reinterpret_cast<jlong>(docFile);
+}
+
+JNI_FUNC(jint, PdfiumCore, nativeIsDocAvail)(JNI_ARGS, jlong docPtr) {
+    DocumentFile *docFile = reinterpret_cast<DocumentFile *>(docPtr);
+    return FPDFAvail_IsDocAvail(docFile->avail, &sDownloadHints);
+}
+
+JNI_FUNC(jint, PdfiumCore, nativeIsPageAvail)(JNI_ARGS, jlong docPtr, jint pageIndex) {
+    DocumentFile *docFile = reinterpret_cast<DocumentFile *>(docPtr);
+    if (docFile->avail == NULL) {
+        return PDF_DATA_AVAIL;
+    }
+    return FPDFAvail_IsPageAvail(docFile->avail, pageIndex, &sDownloadHints);
+}
+
+JNI_FUNC(void, PdfiumCore, nativeLoadAvailDocument)(JNI_ARGS, jlong docPtr, jstring password) {
+    DocumentFile *docFile = reinterpret_cast<DocumentFile *>(docPtr);
+
+    const char *cpassword = NULL;
+    if (password != NULL) {
+        cpassword = env->GetStringUTFChars(password, NULL);
+    }
+
+    FPDF_DOCUMENT document = FPDFAvail_GetDocument(docFile->avail, cpassword);
+
+    if (cpassword != NULL) {
+        env->ReleaseStringUTFChars(password, cpassword);
+    }
+
+    if (!document) {
+        const long errorNum = FPDF_GetLastError();
+        if (errorNum == FPDF_ERR_PASSWORD) {
+            jniThrowException(env, "com/shockwave/pdfium/PdfPasswordException",
+                              "Password required or incorrect password.");
+        } else {
+            char *error = getErrorDescription(errorNum);
+            jniThrowExceptionFmt(env, "java/io/IOException",
+                                 "cannot create document: %s", error);
+
+            free(error);
+        }
+        return;
+    }
+
+    docFile->pdfDocument = document;
+}
+
+JNI_FUNC(jlong, PdfiumCore, nativeOpenBufferDocument)(JNI_ARGS, jobject buffer, jint offset,
+                                                      jint length, jstring password) {
+    uint8_t *address = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (address == NULL || offset < 0 || length <= 0 || offset + (jlong) length > capacity) {
+        jniThrowException(env, "java/lang/IllegalArgumentException",
+                          "Invalid direct buffer range");
+        return -1;
+    }
+
+    DocumentFile *docFile = new DocumentFile();
+    // pdfium reads the buffer in place, keep it reachable until the document is closed
+    docFile->sourceRef = env->NewGlobalRef(buffer);
+    docFile->fileSize = (size_t) length;
+
+    const char *cpassword = NULL;
+    if (password != NULL) {
+        cpassword = env->GetStringUTFChars(password, NULL);
+    }
+
+    FPDF_DOCUMENT document = FPDF_LoadMemDocument(reinterpret_cast<const void *>(address + offset),
+                                                  length, cpassword);
+
+    if (cpassword != NULL) {
+        env->ReleaseStringUTFChars(password, cpassword);
+    }
+
+    if (!document) {
+        delete docFile;
+
+        const long errorNum = FPDF_GetLastError();
+        if (errorNum == FPDF_ERR_PASSWORD) {
+            jniThrowException(env, "com/shockwave/pdfium/PdfPasswordException",
+                              "Password required or incorrect password.");
+        } else {
+            char *error = getErrorDescription(errorNum);
+            jniThrowExceptionFmt(env, "java/io/IOException",
+                                 "cannot create document: %s", error);
+
+            free(error);
+        }
+
+        return -1;
+    }
+
+    docFile->pdfDocument = document;
+
+    return reinterpret_cast<jlong>(docFile);
+}
+
 JNI_FUNC(jlong, PdfiumCore, nativeOpenMemDocument)(JNI_ARGS, jbyteArray data, jstring password) {
     DocumentFile *docFile = new DocumentFile();
 
@@ -335,9 +908,10 @@ JNI_FUNC(jlong, PdfiumCore, nativeOpenMemDocument)(JNI_ARGS, jbyteArray data, js
 
     jbyte *cData = env->GetByteArrayElements(data, NULL);
     int size = (int) env->GetArrayLength(data);
-    jbyte *cDataCopy = new jbyte[size];
-    memcpy(cDataCopy, cData, size);
-    FPDF_DOCUMENT document = FPDF_LoadMemDocument(reinterpret_cast<const void *>(cDataCopy),
+    docFile->fileSize = (size_t) size;
+    docFile->dataCopy = new jbyte[size];
+    memcpy(docFile->dataCopy, cData, size);
+    FPDF_DOCUMENT document = FPDF_LoadMemDocument(reinterpret_cast<const void *>(docFile->dataCopy),
                                                   size, cpassword);
     env->ReleaseByteArrayElements(data, cData, JNI_ABORT);
 
@@ -477,9 +1051,42 @@ JNI_FUNC(jobject, PdfiumCore, nativeGetPageSizeByIndex)(JNI_ARGS, jlong docPtr,
     jint widthInt = (jint) (width * dpi / 72);
     jint heightInt = (jint) (height * dpi / 72);
 
-    jclass clazz = env->FindClass("com/shockwave/pdfium/util/Size");
-    jmethodID constructorID = env->GetMethodID(clazz, "<init>", "(II)V");
-    return env->NewObject(clazz, constructorID, widthInt, heightInt);
+    return env->NewObject(sJni.sizeClass, sJni.sizeInit, widthInt, heightInt);
+}
+
+JNI_FUNC(jintArray, PdfiumCore, nativeGetPageSizesByIndex)(JNI_ARGS, jlong docPtr,
+                                                            jintArray pageIndexes, jint dpi) {
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
+    if (doc == NULL) {
+        LOGE("Document is null");
+
+        jniThrowException(env, "java/lang/IllegalStateException",
+                          "Document is null");
+        return NULL;
+    }
+
+    jsize count = env->GetArrayLength(pageIndexes);
+    std::vector<jint> indexes(count);
+    std::vector<jint> sizes(count * 2);
+    if (count > 0) {
+        env->GetIntArrayRegion(pageIndexes, 0, count, &indexes[0]);
+    }
+
+    for (jsize i = 0; i < count; i++) {
+        double width, height;
+        if (!FPDF_GetPageSizeByIndex(doc->pdfDocument, indexes[i], &width, &height)) {
+            width = 0;
+            height = 0;
+        }
+        sizes[i * 2] = (jint) (width * dpi / 72);
+        sizes[i * 2 + 1] = (jint) (height * dpi / 72);
+    }
+
+    jintArray result = env->NewIntArray(count * 2);
+    if (result != NULL && count > 0) {
+        env->SetIntArrayRegion(result, 0, count * 2, &sizes[0]);
+    }
+    return result;
 }
 
 static void renderPageInternal(FPDF_PAGE page,
@@ -566,23 +1173,53 @@ JNI_FUNC(void, PdfiumCore, nativeRenderPage)(JNI_ARGS, jlong pagePtr, jobject ob
     ANativeWindow_release(nativeWindow);
 }
 
-JNI_FUNC(void, PdfiumCore, nativeRenderPageBitmap)(JNI_ARGS, jlong pagePtr, jobject bitmap,
-                                                   jint dpi, jint startX, jint startY,
-                                                   jint drawSizeHor, jint drawSizeVer,
-                                                   jboolean renderAnnot) {
+/**
+ * Pause callback of progressive renders. Pdfium pauses when the Java RenderControl is
+ * cancelled, or when a progress update of the partially rendered bitmap is due.
+ */
+struct RenderPause : IFSDK_PAUSE {
+    JNIEnv *env;
+    jobject control;
+    jlong progressIntervalMs;
+    jlong nextProgressMs;
+};
 
-    FPDF_PAGE page = reinterpret_cast<FPDF_PAGE>(pagePtr);
+static jlong monotonicMillis() {
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return (jlong) now.tv_sec * 1000 + now.tv_nsec / 1000000;
+}
 
+static FPDF_BOOL needToPauseNow(IFSDK_PAUSE *pThis) {
+    RenderPause *pause = static_cast<RenderPause *>(pThis);
+    if (pause->env->GetBooleanField(pause->control, sJni.renderControlCancelled)) {
+        return 1;
+    }
+    return pause->nextProgressMs > 0 && monotonicMillis() >= pause->nextProgressMs;
+}
+
+/**
+ * Render a page fragment into an Android bitmap.
+ *
+ * @param backgroundColor Android ARGB color of the page area
+ * @param control RenderControl to render progressively, or NULL for a blocking render
+ * @return false if the render failed or was cancelled through the control
+ */
+static bool renderPageBitmapInternal(JNIEnv *env, FPDF_PAGE page, jobject bitmap,
+                                     jint startX, jint startY,
+                                     jint drawSizeHor, jint drawSizeVer,
+                                     jboolean renderAnnot, jint backgroundColor,
+                                     jobject control) {
     if (page == NULL || bitmap == NULL) {
         LOGE("Render page pointers invalid");
-        return;
+        return false;
     }
 
     AndroidBitmapInfo info;
     int ret;
     if ((ret = AndroidBitmap_getInfo(env, bitmap, &info)) < 0) {
         LOGE("Fetching bitmap info failed: %s", strerror(ret * -1));
-        return;
+        return false;
     }
 
     int canvasHorSize = info.width;
@@ -591,20 +1228,26 @@ JNI_FUNC(void, PdfiumCore, nativeRenderPageBitmap)(JNI_ARGS, jlong pagePtr, jobj
     if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888 &&
         info.format != ANDROID_BITMAP_FORMAT_RGB_565) {
         LOGE("Bitmap format must be RGBA_8888 or RGB_565");
-        return;
+        return false;
     }
 
     void *addr;
     if ((ret = AndroidBitmap_lockPixels(env, bitmap, &addr)) != 0) {
         LOGE("Locking bitmap failed: %s", strerror(ret * -1));
-        return;
+        return false;
     }
 
     void *tmp;
     int format;
     int sourceStride;
     if (info.format == ANDROID_BITMAP_FORMAT_RGB_565) {
+        // pdfium has no 565 format, render to packed RGB and convert
         tmp = malloc(canvasVerSize * canvasHorSize * sizeof(rgb));
+        if (tmp == NULL) {
+            LOGE("Allocating render buffer failed");
+            AndroidBitmap_unlockPixels(env, bitmap);
+            return false;
+        }
         sourceStride = canvasHorSize * sizeof(rgb);
         format = FPDFBitmap_BGR;
     } else {
@@ -638,20 +1281,91 @@ JNI_FUNC(void, PdfiumCore, nativeRenderPageBitmap)(JNI_ARGS, jlong pagePtr, jobj
         flags |= FPDF_ANNOT;
     }
 
+    // pdfium fills in BGR order and the pixels are read as RGB, swap red and blue
+    uint32_t color = (uint32_t) backgroundColor;
     FPDFBitmap_FillRect(pdfBitmap, baseX, baseY, baseHorSize, baseVerSize,
-                        0xFFFFFFFF); //White
+                        (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16));
+
+    bool completed = true;
+    if (control == NULL) {
+        FPDF_RenderPageBitmap(pdfBitmap, page,
+                              startX, startY,
+                              (int) drawSizeHor, (int) drawSizeVer,
+                              0, flags);
+    } else {
+        RenderPause pause;
+        pause.version = 1;
+        pause.NeedToPauseNow = needToPauseNow;
+        pause.user = NULL;
+        pause.env = env;
+        pause.control = control;
+        pause.progressIntervalMs = env->GetLongField(control, sJni.renderControlProgressIntervalMs);
+        pause.nextProgressMs = pause.progressIntervalMs > 0
+                               ? monotonicMillis() + pause.progressIntervalMs : 0;
+
+        int status = FPDF_RenderPageBitmap_Start(pdfBitmap, page,
+                                                 startX, startY,
+                                                 (int) drawSizeHor, (int) drawSizeVer,
+                                                 0, flags, &pause);
+        while (status == FPDF_RENDER_TOBECONTINUED) {
+            if (env->GetBooleanField(control, sJni.renderControlCancelled)) {
+                completed = false;
+                break;
+            }
+            // paused for a progress update, publish what is rendered so far
+            if (info.format == ANDROID_BITMAP_FORMAT_RGB_565) {
+                rgbBitmapTo565(tmp, sourceStride, addr, &info);
+            }
+            env->CallVoidMethod(control, sJni.renderControlOnProgress, bitmap);
+            if (env->ExceptionCheck()) {
+                completed = false;
+                break;
+            }
+            pause.nextProgressMs = monotonicMillis() + pause.progressIntervalMs;
+            status = FPDF_RenderPage_Continue(page, &pause);
+        }
+        if (status == FPDF_RENDER_FAILED) {
+            completed = false;
+        }
+        FPDF_RenderPage_Close(page);
+    }
 
-    FPDF_RenderPageBitmap(pdfBitmap, page,
-                          startX, startY,
-                          (int) drawSizeHor, (int) drawSizeVer,
-                          0, flags);
+    FPDFBitmap_Destroy(pdfBitmap);
 
     if (info.format == ANDROID_BITMAP_FORMAT_RGB_565) {
-        rgbBitmapTo565(tmp, sourceStride, addr, &info);
+        if (completed) {
+            rgbBitmapTo565(tmp, sourceStride, addr, &info);
+        }
         free(tmp);
     }
 
     AndroidBitmap_unlockPixels(env, bitmap);
+    return completed;
+}
+
+JNI_FUNC(void, PdfiumCore, nativeRenderPageBitmap)(JNI_ARGS, jlong pagePtr, jobject bitmap,
+                                                   jint dpi, jint startX, jint startY,
+                                                   jint drawSizeHor, jint drawSizeVer,
+                                                   jboolean renderAnnot) {
+    renderPageBitmapInternal(env, reinterpret_cast<FPDF_PAGE>(pagePtr), bitmap,
+                             startX, startY, drawSizeHor, drawSizeVer, renderAnnot,
+                             (jint) 0xFFFFFFFF, NULL);
+}
+
+JNI_FUNC(jboolean, PdfiumCore, nativeRenderPageBitmapProgressive)(JNI_ARGS, jlong pagePtr,
+                                                                  jobject bitmap,
+                                                                  jint startX, jint startY,
+                                                                  jint drawSizeHor,
+                                                                  jint drawSizeVer,
+                                                                  jboolean renderAnnot,
+                                                                  jint backgroundColor,
+                                                                  jobject control) {
+    if (!resolveRenderControl(env)) {
+        return JNI_FALSE;
+    }
+    return (jboolean) renderPageBitmapInternal(env, reinterpret_cast<FPDF_PAGE>(pagePtr), bitmap,
+                                               startX, startY, drawSizeHor, drawSizeVer,
+                                               renderAnnot, backgroundColor, control);
 }
 
 JNI_FUNC(jstring, PdfiumCore, nativeGetDocumentMetaText)(JNI_ARGS, jlong docPtr, jstring tag) {
@@ -678,10 +1392,7 @@ JNI_FUNC(jobject, PdfiumCore, nativeGetFirstChildBookmark)(JNI_ARGS, jlong docPt
     if (bookmarkPtr == NULL) {
         parent = NULL;
     } else {
-        jclass longClass = env->GetObjectClass(bookmarkPtr);
-        jmethodID longValueMethod = env->GetMethodID(longClass, "longValue", "()J");
-
-        jlong ptr = env->CallLongMethod(bookmarkPtr, longValueMethod);
+        jlong ptr = env->CallLongMethod(bookmarkPtr, sJni.longValue);
         parent = reinterpret_cast<FPDF_BOOKMARK>(ptr);
     }
     FPDF_BOOKMARK bookmark = FPDFBookmark_GetFirstChild(doc->pdfDocument, parent);
@@ -773,9 +1484,7 @@ JNI_FUNC(jobject, PdfiumCore, nativeGetLinkRect)(JNI_ARGS, jlong linkPtr) {
         return NULL;
     }
 
-    jclass clazz = env->FindClass("android/graphics/RectF");
-    jmethodID constructorID = env->GetMethodID(clazz, "<init>", "(FFFF)V");
-    return env->NewObject(clazz, constructorID, fsRectF.left, fsRectF.top, fsRectF.right,
+    return env->NewObject(sJni.rectFClass, sJni.rectFInit, fsRectF.left, fsRectF.top, fsRectF.right,
                           fsRectF.bottom);
 }
 
@@ -788,9 +1497,7 @@ JNI_FUNC(jobject, PdfiumCore, nativePageCoordsToDevice)(JNI_ARGS, jlong pagePtr,
 
     FPDF_PageToDevice(page, startX, startY, sizeX, sizeY, rotate, pageX, pageY, &deviceX, &deviceY);
 
-    jclass clazz = env->FindClass("android/graphics/Point");
-    jmethodID constructorID = env->GetMethodID(clazz, "<init>", "(II)V");
-    return env->NewObject(clazz, constructorID, deviceX, deviceY);
+    return env->NewObject(sJni.pointClass, sJni.pointInit, deviceX, deviceY);
 }
 
 //-------------------- used for -----------------------
@@ -803,17 +1510,34 @@ JNI_FUNC(jobject, PdfiumCore, nativeDeviceCoordsToPage)(JNI_ARGS, jlong pagePtr,
 
     FPDF_DeviceToPage(page, startX, startY, sizeX, sizeY, rotate, deviceX, deviceY, &pageX, &pageY);
 
-    jclass clazz = env->FindClass("android/graphics/PointF");
-    jmethodID constructorID = env->GetMethodID(clazz, "<init>", "(FF)V");
-    return env->NewObject(clazz, constructorID, (float) pageX, (float) pageY);
+    return env->NewObject(sJni.pointFClass, sJni.pointFInit, (float) pageX, (float) pageY);
 }
 
 }//extern C
 
 //------------------------------------------------------------------------------------
 
+/** Bytes written between two SaveControl.onProgress calls */
+static const jlong SAVE_PROGRESS_STEP = 256 * 1024;
+
+/** Size of the Java array used to pass data to an OutputStream */
+static const jsize SAVE_CHUNK_SIZE = 64 * 1024;
+
+/**
+ * Writes pdfium output to a file descriptor, or to an OutputStream when stream is set.
+ * The first skipBytes bytes are dropped, and a SaveControl can cancel and follow the save.
+ */
 struct PdfToFdWriter : FPDF_FILEWRITE {
-    int dstFd;
+    int dstFd = -1;
+    JNIEnv *env = NULL;
+    jobject stream = NULL;
+    jbyteArray chunk = NULL;
+    jobject control = NULL;
+    unsigned long skipBytes = 0;
+    jlong written = 0;
+    jlong reported = 0;
+    /** Exception thrown by the stream, rethrown once pdfium returns */
+    jthrowable error = NULL;
 };
 
 static bool writeAllBytes(const int fd, const void *buffer, const size_t byteCount) {
@@ -834,16 +1558,85 @@ static bool writeAllBytes(const int fd, const void *buffer, const size_t byteCou
     return true;
 }
 
+static bool writeToStream(PdfToFdWriter *writer, const char *data, unsigned long size) {
+    JNIEnv *env = writer->env;
+    while (size > 0) {
+        jsize count = (jsize) std::min<unsigned long>(size, (unsigned long) SAVE_CHUNK_SIZE);
+        env->SetByteArrayRegion(writer->chunk, 0, count, reinterpret_cast<const jbyte *>(data));
+        env->CallVoidMethod(writer->stream, sJni.outputStreamWrite, writer->chunk, 0, count);
+        if (env->ExceptionCheck()) {
+            writer->error = env->ExceptionOccurred();
+            env->ExceptionClear();
+            return false;
+        }
+        data += count;
+        size -= count;
+    }
+    return true;
+}
+
 static int writeBlock(FPDF_FILEWRITE *owner, const void *buffer, unsigned long size) {
-    const PdfToFdWriter *writer = reinterpret_cast<PdfToFdWriter *>(owner);
-    const bool success = writeAllBytes(writer->dstFd, buffer, size);
-    if (success < 0) {
+    PdfToFdWriter *writer = static_cast<PdfToFdWriter *>(owner);
+    JNIEnv *env = writer->env;
+    if (writer->control != NULL
+        && env->GetBooleanField(writer->control, sJni.saveControlCancelled)) {
+        return 0;
+    }
+
+    const char *data = static_cast<const char *>(buffer);
+    if (writer->skipBytes > 0) {
+        unsigned long skipped = std::min(size, writer->skipBytes);
+        writer->skipBytes -= skipped;
+        data += skipped;
+        size -= skipped;
+        if (size == 0) {
+            return 1;
+        }
+    }
+
+    const bool success = writer->stream != NULL ? writeToStream(writer, data, size)
+                                                : writeAllBytes(writer->dstFd, data, size);
+    if (!success) {
         LOGE("Cannot write to file descriptor. Error:%d", errno);
         return 0;
     }
+    writer->written += size;
+
+    if (writer->control != NULL && writer->written - writer->reported >= SAVE_PROGRESS_STEP) {
+        writer->reported = writer->written;
+        env->CallVoidMethod(writer->control, sJni.saveControlOnProgress, writer->written);
+        if (env->ExceptionCheck()) {
+            writer->error = env->ExceptionOccurred();
+            env->ExceptionClear();
+            return 0;
+        }
+    }
     return 1;
 }
 
+/**
+ * Report the final size, rethrow a stream error or throw for a failed save
+ * @return true if the save completed, false if it was cancelled
+ */
+static jboolean finishSave(JNIEnv *env, PdfToFdWriter *writer, FPDF_BOOL success) {
+    if (writer->error != NULL) {
+        env->Throw(writer->error);
+        return JNI_FALSE;
+    }
+    if (writer->control != NULL && env->GetBooleanField(writer->control, sJni.saveControlCancelled)) {
+        return JNI_FALSE;
+    }
+    if (!success) {
+        jniThrowExceptionFmt(env, "java/io/IOException",
+                             "cannot write to fd. Error: %d", errno);
+        return JNI_FALSE;
+    }
+    if (writer->control != NULL && writer->written != writer->reported) {
+        env->CallVoidMethod(writer->control, sJni.saveControlOnProgress, writer->written);
+    }
+    return JNI_TRUE;
+}
+
 extern "C"
 JNIEXPORT void JNICALL
 Java_com_shockwave_pdfium_PdfiumCore_nSavePdf(JNIEnv *env, jobject thiz, jlong docPtr,
@@ -858,6 +1651,8 @@ Java_com_shockwave_pdfium_PdfiumCore_nSavePdf(JNIEnv *env, jobject thiz, jlong d
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
 
     PdfToFdWriter writer;
+    writer.version = 1;
+    writer.env = env;
     writer.dstFd = fileno(pFile);
     writer.WriteBlock = &writeBlock;
     FPDF_BOOL success = FPDF_SaveAsCopy(doc->pdfDocument, &writer, flags);
@@ -870,17 +1665,86 @@ Java_com_shockwave_pdfium_PdfiumCore_nSavePdf(JNIEnv *env, jobject thiz, jlong d
         env->ReleaseStringUTFChars(path, str);
     }
 }
+
+extern "C"
+JNIEXPORT jboolean JNICALL
+Java_com_shockwave_pdfium_PdfiumCore_nativeSaveToStream(JNIEnv *env, jobject thiz, jlong docPtr,
+                                                        jobject stream, jint flags, jobject control) {
+    if (!resolveSaveControl(env)) {
+        return JNI_FALSE;
+    }
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
+
+    PdfToFdWriter writer;
+    writer.version = 1;
+    writer.env = env;
+    writer.stream = stream;
+    writer.control = control;
+    writer.chunk = env->NewByteArray(SAVE_CHUNK_SIZE);
+    if (writer.chunk == NULL) {
+        return JNI_FALSE;
+    }
+    writer.WriteBlock = &writeBlock;
+    FPDF_BOOL success = FPDF_SaveAsCopy(doc->pdfDocument, &writer, flags);
+    env->DeleteLocalRef(writer.chunk);
+    return finishSave(env, &writer, success);
+}
+
+/**
+ * Append an incremental update to the file the document was opened from. pdfium writes the
+ * original bytes followed by the update, only the update is written, over any update saved
+ * before since the new one contains all changes since opening.
+ */
+extern "C"
+JNIEXPORT jboolean JNICALL
+Java_com_shockwave_pdfium_PdfiumCore_nativeSaveIncremental(JNIEnv *env, jobject thiz, jlong docPtr,
+                                                           jint fd, jobject control) {
+    if (!resolveSaveControl(env)) {
+        return JNI_FALSE;
+    }
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
+    off_t originalSize = (off_t) doc->fileSize;
+    if (originalSize <= 0 || getFileSize(fd) < originalSize) {
+        jniThrowException(env, "java/io/IOException",
+                          "File is not the one the document was opened from");
+        return JNI_FALSE;
+    }
+    if (lseek(fd, originalSize, SEEK_SET) != originalSize) {
+        jniThrowExceptionFmt(env, "java/io/IOException",
+                             "cannot seek fd. Error: %d", errno);
+        return JNI_FALSE;
+    }
+
+    PdfToFdWriter writer;
+    writer.version = 1;
+    writer.env = env;
+    writer.dstFd = fd;
+    writer.control = control;
+    writer.skipBytes = (unsigned long) originalSize;
+    writer.WriteBlock = &writeBlock;
+    FPDF_BOOL success = FPDF_SaveAsCopy(doc->pdfDocument, &writer, FPDF_INCREMENTAL);
+
+    // drop a partial update, or the tail of a longer previous one
+    off_t end = success ? originalSize + (off_t) writer.written : originalSize;
+    if (ftruncate(fd, end) != 0) {
+        LOGE("Cannot truncate file descriptor. Error:%d", errno);
+    }
+    return finishSave(env, &writer, success);
+}
+
 extern "C"
 JNIEXPORT jint JNICALL
 Java_com_shockwave_pdfium_PdfiumCore_nGetPageRotation(JNIEnv *env, jclass jc, jlong doc_ptr,
                                                       jint page_index) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, page_index);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
     if (page == NULL) {
         LOGE("nGetPageRotation: Loaded page is null");
         return -1;
     }
-    return FPDFPage_GetRotation(page);
+    int rotation = FPDFPage_GetRotation(page);
+    doc->releaseCachedPage(page_index);
+    return rotation;
 }
 //--------------------------------------------
 
@@ -889,30 +1753,30 @@ JNIEXPORT jlong JNICALL
 Java_com_heaven7_android_pdf_PdfAnnotManager_nCreateAnnot(JNIEnv *env, jclass clazz, jlong docPtr,
                                                           jint pageIndex) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(docPtr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, pageIndex);
+    FPDF_PAGE page = doc->getCachedPage(pageIndex);
     if (page == NULL) {
-        LOGE("nInsertImage: Loaded page is null");
+        LOGE("nCreateAnnot: Loaded page is null");
         return 0;
     }
-    return reinterpret_cast<jlong>(FPDFPage_CreateAnnot(page, FPDF_ANNOT_STAMP));
+    FPDF_ANNOTATION anno = FPDFPage_CreateAnnot(page, FPDF_ANNOT_STAMP);
+    if (anno != NULL) {
+        doc->keepAnnot(pageIndex, anno);
+    } else {
+        doc->releaseCachedPage(pageIndex);
+    }
+    return reinterpret_cast<jlong>(anno);
 }
 
-extern "C"
-JNIEXPORT jlong JNICALL
-Java_com_heaven7_android_pdf_PdfAnnotManager_nAddImage(JNIEnv *env, jclass clazz, jlong doc_ptr,
-                                                       jint page_index, jlong anno_ptr,
-                                                       jobject bitmap, jfloat left, jfloat top,
-                                                       jint width, jint height, jboolean topAsBottom) {
-    DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, page_index);
-    if (page == NULL) {
-        LOGE("nAddImage: Loaded page is null");
-        return 0;
-    }
-    FPDF_ANNOTATION anno = reinterpret_cast<FPDF_ANNOTATION>(anno_ptr);
+/**
+ * Put a bitmap into an annotation, its appearance stream is regenerated once here
+ * @return the image object, NULL on error
+ */
+static FPDF_PAGEOBJECT appendImage(JNIEnv *env, DocumentFile *doc, FPDF_PAGE page,
+                                   FPDF_ANNOTATION anno, jobject bitmap, float left, float top,
+                                   int width, int height, bool topAsBottom) {
     FPDF_BITMAP pdfBitmap = convertBitmap(env, bitmap);
     if(pdfBitmap == nullptr){
-        return 0;
+        return NULL;
     }
 
     FS_RECTF rect;
@@ -945,7 +1809,104 @@ Java_com_heaven7_android_pdf_PdfAnnotManager_nAddImage(JNIEnv *env, jclass clazz
     FPDFBitmap_Destroy(pdfBitmap);
     //FPDFPage_CloseAnnot(anno);
 
-    return reinterpret_cast<jlong>(image_object);
+    return image_object;
+}
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_heaven7_android_pdf_PdfAnnotManager_nAddImage(JNIEnv *env, jclass clazz, jlong doc_ptr,
+                                                       jint page_index, jlong anno_ptr,
+                                                       jobject bitmap, jfloat left, jfloat top,
+                                                       jint width, jint height, jboolean topAsBottom) {
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
+    if (page == NULL) {
+        LOGE("nAddImage: Loaded page is null");
+        return 0;
+    }
+    FPDF_ANNOTATION anno = reinterpret_cast<FPDF_ANNOTATION>(anno_ptr);
+    if (!doc->hasLiveAnnot(page_index, anno)) {
+        doc->releaseCachedPage(page_index);
+        return 0;
+    }
+    return reinterpret_cast<jlong>(appendImage(env, doc, page, anno, bitmap, left, top,
+                                               width, height, topAsBottom));
+}
+
+/**
+ * Apply the removals then the additions of a batch to one page in a single call.
+ * positions hold (left, top) and sizes (width, height) of each added bitmap.
+ * @return (annotation, image) pointer pairs of the added bitmaps, 0 for failed ones
+ */
+extern "C"
+JNIEXPORT jlongArray JNICALL
+Java_com_heaven7_android_pdf_PdfAnnotManager_nApplyBatch(JNIEnv *env, jclass clazz, jlong doc_ptr,
+                                                         jint page_index, jlongArray removed,
+                                                         jobjectArray bitmaps, jfloatArray positions,
+                                                         jintArray sizes, jbooleanArray topAsBottom) {
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
+    jsize addCount = env->GetArrayLength(bitmaps);
+    std::vector<jlong> result(addCount * 2, 0);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
+    if (page == NULL) {
+        LOGE("nApplyBatch: Loaded page is null");
+        return NULL;
+    }
+
+    jsize removeCount = env->GetArrayLength(removed);
+    if (removeCount > 0) {
+        std::vector<jlong> annots(removeCount);
+        env->GetLongArrayRegion(removed, 0, removeCount, &annots[0]);
+        for (jsize i = 0; i < removeCount; i++) {
+            FPDF_ANNOTATION anno = reinterpret_cast<FPDF_ANNOTATION>(annots[i]);
+            if (!doc->hasLiveAnnot(page_index, anno)) {
+                continue;
+            }
+            auto index = FPDFPage_GetAnnotIndex(page, anno);
+            doc->closeAnnot(page_index, anno);
+            if (index != -1) {
+                FPDFPage_RemoveAnnot(page, index);
+            }
+        }
+    }
+
+    if (addCount > 0) {
+        std::vector<jfloat> pos(addCount * 2);
+        std::vector<jint> dims(addCount * 2);
+        std::vector<jboolean> flags(addCount);
+        env->GetFloatArrayRegion(positions, 0, addCount * 2, &pos[0]);
+        env->GetIntArrayRegion(sizes, 0, addCount * 2, &dims[0]);
+        env->GetBooleanArrayRegion(topAsBottom, 0, addCount, &flags[0]);
+        for (jsize i = 0; i < addCount; i++) {
+            FPDF_ANNOTATION anno = FPDFPage_CreateAnnot(page, FPDF_ANNOT_STAMP);
+            if (anno == NULL) {
+                continue;
+            }
+            doc->keepAnnot(page_index, anno);
+            jobject bitmap = env->GetObjectArrayElement(bitmaps, i);
+            FPDF_PAGEOBJECT image = appendImage(env, doc, page, anno, bitmap, pos[i * 2], pos[i * 2 + 1],
+                                                dims[i * 2], dims[i * 2 + 1], flags[i]);
+            env->DeleteLocalRef(bitmap);
+            if (image == NULL) {
+                // no half built annotation is left in the page, the result stays 0
+                auto index = FPDFPage_GetAnnotIndex(page, anno);
+                doc->closeAnnot(page_index, anno);
+                if (index != -1) {
+                    FPDFPage_RemoveAnnot(page, index);
+                }
+                continue;
+            }
+            result[i * 2] = reinterpret_cast<jlong>(anno);
+            result[i * 2 + 1] = reinterpret_cast<jlong>(image);
+        }
+    }
+
+    doc->releaseCachedPage(page_index);
+    jlongArray array = env->NewLongArray(addCount * 2);
+    if (array != NULL && addCount > 0) {
+        env->SetLongArrayRegion(array, 0, addCount * 2, &result[0]);
+    }
+    return array;
 }
 
 extern "C"
@@ -953,18 +1914,26 @@ JNIEXPORT jboolean JNICALL
 Java_com_heaven7_android_pdf_PdfAnnotManager_nRemoveAnnot(JNIEnv *env, jclass clazz, jlong doc_ptr,
                                                           jint page_index, jlong anno_ptr) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, page_index);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
     if (page == NULL) {
         LOGE("nRemoveAnnot: Loaded page is null");
         return JNI_FALSE;
     }
     FPDF_ANNOTATION anno = reinterpret_cast<FPDF_ANNOTATION>(anno_ptr);
+    if (!doc->hasLiveAnnot(page_index, anno)) {
+        doc->releaseCachedPage(page_index);
+        return JNI_FALSE;
+    }
 
     auto index = FPDFPage_GetAnnotIndex(page, anno);
+    // the handle refers to the removed annotation, close it first
+    doc->closeAnnot(page_index, anno);
+    jboolean removed = JNI_FALSE;
     if(index != -1){
-        return static_cast<jboolean>(FPDFPage_RemoveAnnot(page, index));
+        removed = static_cast<jboolean>(FPDFPage_RemoveAnnot(page, index));
     }
-    return JNI_FALSE;
+    doc->releaseCachedPage(page_index);
+    return removed;
 }
 
 extern "C"
@@ -973,13 +1942,17 @@ Java_com_heaven7_android_pdf_PdfAnnotManager_nRemoveImage(JNIEnv *env, jclass cl
                                                           jint page_index, jlong anno_ptr,
                                                           jlong img_ptr) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, page_index);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
     if (page == NULL) {
         LOGE("nRemoveImage: Loaded page is null");
         return JNI_FALSE;
     }
     FPDF_ANNOTATION anno = reinterpret_cast<FPDF_ANNOTATION>(anno_ptr);
     FPDF_PAGEOBJECT image_object = reinterpret_cast<FPDF_PAGEOBJECT>(img_ptr);
+    if (!doc->hasLiveAnnot(page_index, anno)) {
+        doc->releaseCachedPage(page_index);
+        return JNI_FALSE;
+    }
 
     //need SetAP first. or else cause crash
     FPDFAnnot_SetAP(anno, FPDF_ANNOT_APPEARANCEMODE_NORMAL, 0);
@@ -999,16 +1972,36 @@ Java_com_heaven7_android_pdf_PdfAnnotManager_nRemoveImage(JNIEnv *env, jclass cl
     return JNI_FALSE;
 }
 
-static void readAllImpl(JNIEnv *env, jlong doc_ptr, jint page_index, jmethodID mid,jobject cb){
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_heaven7_android_pdf_PdfAnnotManager_nReadPage(JNIEnv *env, jclass clazz, jlong doc_ptr,
+                                                       jint page_index, jobject cb) {
+    if (!resolveNativeCallback(env)) {
+        return;
+    }
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    FPDF_PAGE page = FPDF_LoadPage(doc->pdfDocument, page_index);
+    FPDF_PAGE page = doc->getCachedPage(page_index);
     if (page == NULL) {
-        LOGE("readAllImpl: Loaded page is null");
+        LOGE("nReadPage: Loaded page is null");
         return;
     }
+    // annotations Java holds a handle of already are not reported again
+    std::vector<int> known;
+    std::map<int, std::vector<FPDF_ANNOTATION> >::iterator live = doc->liveAnnots.find(page_index);
+    if (live != doc->liveAnnots.end()) {
+        for (size_t i = 0; i < live->second.size(); i++) {
+            known.push_back(FPDFPage_GetAnnotIndex(page, live->second[i]));
+        }
+    }
     auto c = FPDFPage_GetAnnotCount(page);
     for (int i = 0; i < c; ++i) {
+        if (std::find(known.begin(), known.end(), i) != known.end()) {
+            continue;
+        }
         auto anno = FPDFPage_GetAnnot(page, i);
+        if (anno == NULL) {
+            continue;
+        }
 
         //need SetAP first. or else cause crash
         FPDFAnnot_SetAP(anno, FPDF_ANNOT_APPEARANCEMODE_NORMAL, 0);
@@ -1018,25 +2011,29 @@ static void readAllImpl(JNIEnv *env, jlong doc_ptr, jint page_index, jmethodID m
         if(oc > 0){
             auto pT = FPDFAnnot_GetObject(anno, 0);
             if(FPDFPageObj_GetType(pT) == FPDF_PAGEOBJ_IMAGE){
-                env->CallVoidMethod(cb, mid, page_index, (jlong)anno, (jlong)pT);
+                doc->keepAnnot(page_index, anno);
+                env->CallVoidMethod(cb, sJni.onGotImageAnnotation, page_index, (jlong)anno, (jlong)pT);
+                continue;
             }
         }
+        // not handed to Java
+        FPDFPage_CloseAnnot(anno);
     }
+    // pages without image annotations are not kept open
+    doc->releaseCachedPage(page_index);
 }
 
 extern "C"
 JNIEXPORT void JNICALL
-Java_com_heaven7_android_pdf_PdfAnnotManager_nReadAll(JNIEnv *env, jclass clazz, jlong doc_ptr,
-                                                           jobject cb) {
+Java_com_heaven7_android_pdf_PdfAnnotManager_nCloseAnnots(JNIEnv *env, jclass clazz, jlong doc_ptr,
+                                                          jint page_index) {
     DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
-    auto pageCount = (jint) FPDF_GetPageCount(doc->pdfDocument);
-
-    auto cb_class = env->FindClass("com/heaven7/android/pdf/PdfAnnotManager$NativeCallback");
-    auto mid = env->GetMethodID(cb_class, "onGotImageAnnotation", "(IJJ)V");
-
-    for (int i = 0; i < pageCount; ++i) {
-        readAllImpl(env, doc_ptr, i, mid, cb);
-    }
+    doc->closeAnnots(page_index);
+}
 
-    env->DeleteLocalRef(cb_class);
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_heaven7_android_pdf_PdfAnnotManager_nGetPageCount(JNIEnv *env, jclass clazz, jlong doc_ptr) {
+    DocumentFile *doc = reinterpret_cast<DocumentFile *>(doc_ptr);
+    return (jint) FPDF_GetPageCount(doc->pdfDocument);
 }
@@ -0,0 +1,33 @@
+#ifndef _RGB565_HPP_
+#define _RGB565_HPP_
+
+#include <stdint.h>
+
+/**
+ * Convert one row of packed RGB pixels. Plain indexed loads and stores on restrict pointers,
+ * so the compiler can vectorize it with interleaved loads (NEON vld3, SSE shuffles).
+ */
+static inline void rgbRowTo565(const uint8_t *__restrict src, uint16_t *__restrict dst, int width) {
+    for (int x = 0; x < width; x++) {
+        uint16_t red = src[x * 3];
+        uint16_t green = src[x * 3 + 1];
+        uint16_t blue = src[x * 3 + 2];
+        dst[x] = (uint16_t) (((red & 0xF8) << 8) | ((green & 0xFC) << 3) | (blue >> 3));
+    }
+}
+
+/**
+ * Convert packed RGB pixels to RGB_565, strides are in bytes
+ */
+static inline void rgbPixelsTo565(const void *source, int sourceStride, void *dest, int destStride,
+                                  int width, int height) {
+    const uint8_t *srcLine = (const uint8_t *) source;
+    uint8_t *dstLine = (uint8_t *) dest;
+    for (int y = 0; y < height; y++) {
+        rgbRowTo565(srcLine, (uint16_t *) dstLine, width);
+        srcLine += sourceStride;
+        dstLine += destStride;
+    }
+}
+
+#endif
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.os.Process;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+
+/**
+ * Polls a progressively loaded document for pages whose data has arrived and reports them to
+ * {@link PDFView#onPagesAvailable(int[])}. Each poll checks the visible pages still missing and
+ * a few other missing pages in turn, so its cost does not grow with the page count. Terminates
+ * once every page is available.
+ */
+class AvailabilityWatcher extends Thread {
+
+    private final PDFView pdfView;
+
+    private final PdfFile pdfFile;
+
+    /** Range of visible pages, set from the UI thread */
+    private volatile int firstVisiblePage;
+
+    private volatile int lastVisiblePage = -1;
+
+    AvailabilityWatcher(PDFView pdfView, PdfFile pdfFile) {
+        super("PDF availability watcher");
+        this.pdfView = pdfView;
+        this.pdfFile = pdfFile;
+    }
+
+    /**
+     * Set the pages checked at each poll, they are checked before the other missing pages
+     */
+    void setVisiblePages(int first, int last) {
+        firstVisiblePage = first;
+        lastVisiblePage = last;
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        int pagesCount = pdfFile.getPagesCount();
+        boolean[] reported = new boolean[pagesCount];
+        // missing pages in page order, the poll goes on from the cursor
+        int[] missing = new int[pagesCount];
+        for (int i = 0; i < pagesCount; i++) {
+            missing[i] = i;
+        }
+        int missingCount = pagesCount;
+        int cursor = 0;
+        int[] arrived = new int[pagesCount];
+        while (missingCount > 0 && !isInterrupted()) {
+            int arrivedCount = 0;
+            int last = Math.min(lastVisiblePage, pagesCount - 1);
+            for (int i = Math.max(firstVisiblePage, 0); i <= last && !isInterrupted(); i++) {
+                if (!reported[i] && pdfFile.isPageAvailable(i)) {
+                    reported[i] = true;
+                    arrived[arrivedCount++] = i;
+                }
+            }
+            int polled = Math.min(Constants.AVAILABILITY_POLL_PAGES, missingCount);
+            for (int n = 0; n < polled && !isInterrupted(); n++) {
+                int page = missing[cursor];
+                cursor = (cursor + 1) % missingCount;
+                if (!reported[page] && pdfFile.isPageAvailable(page)) {
+                    reported[page] = true;
+                    arrived[arrivedCount++] = page;
+                }
+            }
+            if (arrivedCount > 0) {
+                int kept = 0;
+                int keptBeforeCursor = 0;
+                for (int i = 0; i < missingCount; i++) {
+                    if (!reported[missing[i]]) {
+                        if (i < cursor) {
+                            keptBeforeCursor++;
+                        }
+                        missing[kept++] = missing[i];
+                    }
+                }
+                missingCount = kept;
+                cursor = missingCount == 0 ? 0 : keptBeforeCursor % missingCount;
+
+                final int[] pages = new int[arrivedCount];
+                System.arraycopy(arrived, 0, pages, 0, arrivedCount);
+                pdfView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pdfView.onPagesAvailable(pages);
+                    }
+                });
+            }
+            try {
+                Thread.sleep(Constants.AVAILABILITY_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop polling, the watcher cannot be restarted afterwards
+     */
+    void quit() {
+        interrupt();
+    }
+}
@@ -16,73 +16,202 @@
 package com.github.barteksc.pdfviewer;
 
 import android.graphics.RectF;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.BitmapPool;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.TreeSet;
 
-import static com.github.barteksc.pdfviewer.util.Constants.Cache.CACHE_SIZE;
 import static com.github.barteksc.pdfviewer.util.Constants.Cache.THUMBNAILS_CACHE_SIZE;
 
+/**
+ * Cache of rendered parts. Parts are indexed by {@link TileKey} for constant time lookup,
+ * passive and active parts are kept in sets ordered by cache order for eviction.
+ */
 class CacheManager {
 
-    private final PriorityQueue<PagePart> passiveCache;
+    private final TreeSet<Entry> passiveCache;
+
+    private final TreeSet<Entry> activeCache;
+
+    private final Map<TileKey, Entry> index = new HashMap<>();
 
-    private final PriorityQueue<PagePart> activeCache;
+    /** Spatial index of the cached parts of each page, for viewport queries */
+    private final SparseArray<PageGrid> pageGrids = new SparseArray<>();
+
+    /** Identifies the current query, entries already collected by it carry the same stamp */
+    private int queryStamp;
+
+    /** Reused for lookups, guarded by passiveActiveLock */
+    private final TileKey lookupKey = new TileKey();
 
     private final List<PagePart> thumbnails;
 
+    /** Pages whose thumbnail must be rendered again, guarded by thumbnails */
+    private final SparseBooleanArray staleThumbnails = new SparseBooleanArray();
+
     private final Object passiveActiveLock = new Object();
 
-    private final PagePartComparator orderComparator = new PagePartComparator();
+    private final EntryComparator orderComparator = new EntryComparator();
+
+    /** Bitmaps of removed parts are returned here to be reused by new renders */
+    private final BitmapPool bitmapPool;
 
-    public CacheManager() {
-        activeCache = new PriorityQueue<>(CACHE_SIZE, orderComparator);
-        passiveCache = new PriorityQueue<>(CACHE_SIZE, orderComparator);
+    /** Maximum bytes of bitmaps held by page parts, thumbnails are not counted */
+    private long maxBytes;
+
+    /** Bytes of bitmaps held by passive and active parts */
+    private long currentBytes;
+
+    /** Breaks cache order ties, parts of older sets share cache orders */
+    private long sequence;
+
+    /** Entries found by a query before they are sorted, guarded by passiveActiveLock */
+    private final ArrayList<Entry> queryEntries = new ArrayList<>();
+
+    public CacheManager(BitmapPool bitmapPool, long maxBytes) {
+        this.bitmapPool = bitmapPool;
+        this.maxBytes = maxBytes;
+        activeCache = new TreeSet<>(orderComparator);
+        passiveCache = new TreeSet<>(orderComparator);
         thumbnails = new ArrayList<>();
     }
 
     public void cachePart(PagePart part) {
+        cachePart(part, false);
+    }
+
+    /**
+     * @param partial true for the partial result of a part still being rendered, such a part
+     *                is drawn but not reported by {@link #upPartIfContained(int, RectF, int, int)}
+     */
+    public void cachePart(PagePart part, boolean partial) {
+        long bytes = BitmapPool.getBitmapBytes(part.getRenderedBitmap());
         synchronized (passiveActiveLock) {
+            // A part rendered again replaces the cached one
+            Entry old = index.get(lookupKey.set(part.getPage(), part.getPageRelativeBounds(),
+                    part.getZoomBucket(), false));
+            if (old != null && old.stale && !old.partial && partial) {
+                // keep showing the complete stale part, a partial render would flicker
+                bitmapPool.release(part.getRenderedBitmap());
+                return;
+            }
+            if (old != null) {
+                index.remove(old.key);
+                (old.active ? activeCache : passiveCache).remove(old);
+                removeFromPageGrid(old);
+                currentBytes -= release(old.part);
+            }
+
             // If cache too big, remove and recycle
-            makeAFreeSpace();
+            makeAFreeSpace(bytes);
 
             // Then add part
-            activeCache.offer(part);
+            Entry entry = new Entry(new TileKey(part.getPage(), part.getPageRelativeBounds(),
+                    part.getZoomBucket(), false), part, sequence++);
+            entry.active = true;
+            entry.partial = partial;
+            index.put(entry.key, entry);
+            activeCache.add(entry);
+            addToPageGrid(entry);
+            currentBytes += bytes;
+        }
+    }
+
+    /**
+     * Set the maximum bytes of bitmaps held by page parts, parts over the budget are evicted
+     */
+    public void setMaxBytes(long maxBytes) {
+        synchronized (passiveActiveLock) {
+            this.maxBytes = maxBytes;
+            makeAFreeSpace(0);
+        }
+    }
+
+    public long getMaxBytes() {
+        synchronized (passiveActiveLock) {
+            return maxBytes;
+        }
+    }
+
+    /** @return bytes of bitmaps currently held by page parts */
+    public long getCurrentBytes() {
+        synchronized (passiveActiveLock) {
+            return currentBytes;
         }
     }
 
     public void makeANewSet() {
         synchronized (passiveActiveLock) {
+            for (Entry entry : activeCache) {
+                entry.active = false;
+            }
             passiveCache.addAll(activeCache);
             activeCache.clear();
         }
     }
 
-    private void makeAFreeSpace() {
+    /**
+     * Evict parts until the given bytes fit in the budget, passive parts go first
+     */
+    private void makeAFreeSpace(long neededBytes) {
         synchronized (passiveActiveLock) {
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
-                    !passiveCache.isEmpty()) {
-                PagePart part = passiveCache.poll();
-                part.getRenderedBitmap().recycle();
+            while (currentBytes + neededBytes > maxBytes && !passiveCache.isEmpty()) {
+                evict(passiveCache.pollFirst());
             }
 
-            while ((activeCache.size() + passiveCache.size()) >= CACHE_SIZE &&
-                    !activeCache.isEmpty()) {
-                activeCache.poll().getRenderedBitmap().recycle();
+            while (currentBytes + neededBytes > maxBytes && !activeCache.isEmpty()) {
+                evict(activeCache.pollFirst());
             }
         }
     }
 
+    /**
+     * Drop an entry already removed from its ordered set
+     */
+    private void evict(Entry entry) {
+        index.remove(entry.key);
+        removeFromPageGrid(entry);
+        currentBytes -= release(entry.part);
+    }
+
+    /**
+     * Return the bitmap of the part to the pool
+     *
+     * @return bytes of the released bitmap
+     */
+    private long release(PagePart part) {
+        long bytes = BitmapPool.getBitmapBytes(part.getRenderedBitmap());
+        bitmapPool.release(part.getRenderedBitmap());
+        return bytes;
+    }
+
     public void cacheThumbnail(PagePart part) {
         synchronized (thumbnails) {
+            if (staleThumbnails.get(part.getPage())) {
+                staleThumbnails.delete(part.getPage());
+                Iterator<PagePart> it = thumbnails.iterator();
+                while (it.hasNext()) {
+                    PagePart old = it.next();
+                    if (old.equals(part)) {
+                        it.remove();
+                        bitmapPool.release(old.getRenderedBitmap());
+                    }
+                }
+            }
+
             // If cache too big, remove and recycle
             while (thumbnails.size() >= THUMBNAILS_CACHE_SIZE) {
-                thumbnails.remove(0).getRenderedBitmap().recycle();
+                bitmapPool.release(thumbnails.remove(0).getRenderedBitmap());
             }
 
             // Then add thumbnail
@@ -91,19 +220,64 @@ class CacheManager {
 
     }
 
-    public boolean upPartIfContained(int page, RectF pageRelativeBounds, int toOrder) {
-        PagePart fakePart = new PagePart(page, null, pageRelativeBounds, false, 0);
-
-        PagePart found;
+    /**
+     * Keep the part rendered for the bounds at the zoom bucket, see {@link TileKey#zoomBucket(float)}
+     *
+     * @return true if the part is cached, complete and up to date
+     */
+    public boolean upPartIfContained(int page, RectF pageRelativeBounds, int zoomBucket, int toOrder) {
         synchronized (passiveActiveLock) {
-            if ((found = find(passiveCache, fakePart)) != null) {
+            Entry found = index.get(lookupKey.set(page, pageRelativeBounds, zoomBucket, false));
+            if (found == null) {
+                return false;
+            }
+            if (!found.active) {
                 passiveCache.remove(found);
-                found.setCacheOrder(toOrder);
-                activeCache.offer(found);
-                return true;
+                found.part.setCacheOrder(toOrder);
+                found.active = true;
+                activeCache.add(found);
+            }
+            return !found.partial && !found.stale;
+        }
+    }
+
+    /**
+     * Mark the parts of a page intersecting a page relative rectangle, and the page thumbnail,
+     * as stale. Stale parts are still drawn, but are reported missing so they are rendered again,
+     * and each one is replaced when its new render arrives.
+     *
+     * @return number of parts marked
+     */
+    public int markStale(int page, RectF pageRelativeRect) {
+        int count;
+        synchronized (passiveActiveLock) {
+            PageGrid grid = pageGrids.get(page);
+            count = grid == null ? 0 : grid.markStale(pageRelativeRect.left, pageRelativeRect.top,
+                    pageRelativeRect.right, pageRelativeRect.bottom);
+        }
+        synchronized (thumbnails) {
+            for (PagePart part : thumbnails) {
+                if (part.getPage() == page) {
+                    staleThumbnails.put(page, true);
+                    break;
+                }
             }
+        }
+        return count;
+    }
 
-            return find(activeCache, fakePart) != null;
+    /**
+     * Remove the partial result of a part whose render was cancelled, a complete part is kept
+     */
+    public void removePartialPart(int page, RectF pageRelativeBounds, int zoomBucket) {
+        synchronized (passiveActiveLock) {
+            Entry entry = index.get(lookupKey.set(page, pageRelativeBounds, zoomBucket, false));
+            if (entry != null && entry.partial) {
+                index.remove(entry.key);
+                (entry.active ? activeCache : passiveCache).remove(entry);
+                removeFromPageGrid(entry);
+                currentBytes -= release(entry.part);
+            }
         }
     }
 
@@ -113,6 +287,9 @@ class CacheManager {
     public boolean containsThumbnail(int page, RectF pageRelativeBounds) {
         PagePart fakePart = new PagePart(page, null, pageRelativeBounds, true, 0);
         synchronized (thumbnails) {
+            if (staleThumbnails.get(page)) {
+                return false;
+            }
             for (PagePart part : thumbnails) {
                 if (part.equals(fakePart)) {
                     return true;
@@ -123,32 +300,71 @@ class CacheManager {
     }
 
     /**
-     * Add part if it doesn't exist, recycle bitmap otherwise
+     * Add part if it doesn't exist, release bitmap to the pool otherwise
      */
     private void addWithoutDuplicates(Collection<PagePart> collection, PagePart newPart) {
         for (PagePart part : collection) {
             if (part.equals(newPart)) {
-                newPart.getRenderedBitmap().recycle();
+                bitmapPool.release(newPart.getRenderedBitmap());
                 return;
             }
         }
         collection.add(newPart);
     }
 
-    private static PagePart find(PriorityQueue<PagePart> vector, PagePart fakePart) {
-        for (PagePart part : vector) {
-            if (part.equals(fakePart)) {
-                return part;
+    /**
+     * Append the cached parts of a page intersecting the given page relative rectangle in draw
+     * order: passive parts first, then active ones, each by cache order. A sharper part is thus
+     * drawn over a stale lower resolution one. Cost depends on the parts near the rectangle,
+     * not on the size of the cache.
+     */
+    public void collectParts(int page, float left, float top, float right, float bottom, List<PagePart> out) {
+        synchronized (passiveActiveLock) {
+            PageGrid grid = pageGrids.get(page);
+            if (grid == null) {
+                return;
             }
+            collectSorted(grid, left, top, right, bottom, false, out);
+            collectSorted(grid, left, top, right, bottom, true, out);
         }
-        return null;
     }
 
-    public List<PagePart> getPageParts() {
-        synchronized (passiveActiveLock) {
-            List<PagePart> parts = new ArrayList<>(passiveCache);
-            parts.addAll(activeCache);
-            return parts;
+    /** Caller must hold passiveActiveLock */
+    private void collectSorted(PageGrid grid, float left, float top, float right, float bottom,
+                               boolean active, List<PagePart> out) {
+        ArrayList<Entry> entries = queryEntries;
+        grid.collect(left, top, right, bottom, active, ++queryStamp, entries);
+        // insertion sort, few parts are visible and it does not allocate
+        for (int i = 1, size = entries.size(); i < size; i++) {
+            Entry entry = entries.get(i);
+            int j = i - 1;
+            while (j >= 0 && orderComparator.compare(entries.get(j), entry) > 0) {
+                entries.set(j + 1, entries.get(j));
+                j--;
+            }
+            entries.set(j + 1, entry);
+        }
+        for (int i = 0, size = entries.size(); i < size; i++) {
+            out.add(entries.get(i).part);
+        }
+        entries.clear();
+    }
+
+    private void addToPageGrid(Entry entry) {
+        int page = entry.part.getPage();
+        PageGrid grid = pageGrids.get(page);
+        if (grid == null) {
+            grid = new PageGrid();
+            pageGrids.put(page, grid);
+        }
+        grid.add(entry);
+    }
+
+    private void removeFromPageGrid(Entry entry) {
+        int page = entry.part.getPage();
+        PageGrid grid = pageGrids.get(page);
+        if (grid != null && grid.remove(entry)) {
+            pageGrids.remove(page);
         }
     }
 
@@ -162,59 +378,198 @@ class CacheManager {
      * @since 10.0.7
      */
     public void recycle(List<Integer> pages){
-        ArrayList<PagePart> parts;
         synchronized (passiveActiveLock) {
-            parts = new ArrayList<>(passiveCache);
-            for (PagePart part : parts) {
-                if (pages.contains(part.getPage())) {
-                    passiveCache.remove(part);
-                }
-            }
-            parts.clear();
-            parts.addAll(activeCache);
-            for (PagePart part : parts) {
-                if (pages.contains(part.getPage())) {
-                    activeCache.remove(part);
+            Iterator<Entry> it = index.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (pages.contains(entry.key.getPage())) {
+                    it.remove();
+                    (entry.active ? activeCache : passiveCache).remove(entry);
+                    removeFromPageGrid(entry);
+                    currentBytes -= release(entry.part);
                 }
             }
         }
         synchronized (thumbnails) {
-            parts.clear();
-            parts.addAll(thumbnails);
+            ArrayList<PagePart> parts = new ArrayList<>(thumbnails);
             for (PagePart part : parts) {
                 if (pages.contains(part.getPage())) {
                     thumbnails.remove(part);
+                    bitmapPool.release(part.getRenderedBitmap());
                 }
             }
+            for (Integer page : pages) {
+                staleThumbnails.delete(page);
+            }
         }
     }
 
+    /**
+     * Remove all parts, their bitmaps go back to the pool
+     */
     public void recycle() {
         synchronized (passiveActiveLock) {
-            for (PagePart part : passiveCache) {
-                part.getRenderedBitmap().recycle();
+            for (Entry entry : index.values()) {
+                bitmapPool.release(entry.part.getRenderedBitmap());
             }
+            index.clear();
+            pageGrids.clear();
             passiveCache.clear();
-            for (PagePart part : activeCache) {
-                part.getRenderedBitmap().recycle();
-            }
             activeCache.clear();
+            currentBytes = 0;
         }
         synchronized (thumbnails) {
             for (PagePart part : thumbnails) {
-                part.getRenderedBitmap().recycle();
+                bitmapPool.release(part.getRenderedBitmap());
             }
             thumbnails.clear();
+            staleThumbnails.clear();
         }
     }
 
-    static final class PagePartComparator implements Comparator<PagePart> {
+    private static final class Entry {
+        final TileKey key;
+        final PagePart part;
+        final long sequence;
+        /** In activeCache when true, in passiveCache otherwise */
+        boolean active;
+        /** Partial result of a part still being rendered */
+        boolean partial;
+        /** Content changed since the render, drawn until it is rendered again */
+        boolean stale;
+        /** Last query which collected this entry, see {@link PageGrid#collect} */
+        int stamp;
+
+        Entry(TileKey key, PagePart part, long sequence) {
+            this.key = key;
+            this.part = part;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Uniform grid over the page relative space of one page. An entry is referenced from
+     * every cell its bounds overlap, queries deduplicate entries with a per query stamp.
+     */
+    private static final class PageGrid {
+
+        private static final int SIZE = 8;
+
+        @SuppressWarnings("unchecked")
+        private final ArrayList<Entry>[] cells = new ArrayList[SIZE * SIZE];
+
+        private int count;
+
+        void add(Entry entry) {
+            RectF bounds = entry.part.getPageRelativeBounds();
+            int lastRow = cell(bounds.bottom, true);
+            int lastCol = cell(bounds.right, true);
+            for (int row = cell(bounds.top, false); row <= lastRow; row++) {
+                for (int col = cell(bounds.left, false); col <= lastCol; col++) {
+                    ArrayList<Entry> entries = cells[row * SIZE + col];
+                    if (entries == null) {
+                        entries = new ArrayList<>(4);
+                        cells[row * SIZE + col] = entries;
+                    }
+                    entries.add(entry);
+                }
+            }
+            count++;
+        }
+
+        /**
+         * @return true if the grid became empty
+         */
+        boolean remove(Entry entry) {
+            RectF bounds = entry.part.getPageRelativeBounds();
+            int lastRow = cell(bounds.bottom, true);
+            int lastCol = cell(bounds.right, true);
+            for (int row = cell(bounds.top, false); row <= lastRow; row++) {
+                for (int col = cell(bounds.left, false); col <= lastCol; col++) {
+                    ArrayList<Entry> entries = cells[row * SIZE + col];
+                    if (entries != null) {
+                        entries.remove(entry);
+                    }
+                }
+            }
+            return --count <= 0;
+        }
+
+        void collect(float left, float top, float right, float bottom, boolean active, int stamp, List<Entry> out) {
+            int lastRow = cell(bottom, true);
+            int lastCol = cell(right, true);
+            for (int row = cell(top, false); row <= lastRow; row++) {
+                for (int col = cell(left, false); col <= lastCol; col++) {
+                    ArrayList<Entry> entries = cells[row * SIZE + col];
+                    if (entries == null) {
+                        continue;
+                    }
+                    for (int i = 0, size = entries.size(); i < size; i++) {
+                        Entry entry = entries.get(i);
+                        if (entry.active != active || entry.stamp == stamp) {
+                            continue;
+                        }
+                        entry.stamp = stamp;
+                        RectF bounds = entry.part.getPageRelativeBounds();
+                        if (bounds.left < right && left < bounds.right && bounds.top < bottom && top < bounds.bottom) {
+                            out.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Mark the entries intersecting the rectangle as stale
+         *
+         * @return number of entries newly marked
+         */
+        int markStale(float left, float top, float right, float bottom) {
+            int marked = 0;
+            int lastRow = cell(bottom, true);
+            int lastCol = cell(right, true);
+            for (int row = cell(top, false); row <= lastRow; row++) {
+                for (int col = cell(left, false); col <= lastCol; col++) {
+                    ArrayList<Entry> entries = cells[row * SIZE + col];
+                    if (entries == null) {
+                        continue;
+                    }
+                    for (int i = 0, size = entries.size(); i < size; i++) {
+                        Entry entry = entries.get(i);
+                        RectF bounds = entry.part.getPageRelativeBounds();
+                        if (!entry.stale && bounds.left < right && left < bounds.right
+                                && bounds.top < bottom && top < bounds.bottom) {
+                            entry.stale = true;
+                            marked++;
+                        }
+                    }
+                }
+            }
+            return marked;
+        }
+
+        /**
+         * @param end true for the end edge of a range, an edge lying on a cell border belongs to the previous cell
+         */
+        private static int cell(float position, boolean end) {
+            float scaled = position * SIZE;
+            int cell = end ? (int) Math.ceil(scaled) - 1 : (int) Math.floor(scaled);
+            return Math.max(0, Math.min(SIZE - 1, cell));
+        }
+    }
+
+    /**
+     * By cache order, then by insertion. The cache order of an entry must not change while it is in a set.
+     */
+    private static final class EntryComparator implements Comparator<Entry> {
         @Override
-        public int compare(PagePart part1, PagePart part2) {
-            if (part1.getCacheOrder() == part2.getCacheOrder()) {
-                return 0;
+        public int compare(Entry entry1, Entry entry2) {
+            int order1 = entry1.part.getCacheOrder();
+            int order2 = entry2.part.getCacheOrder();
+            if (order1 != order2) {
+                return order1 > order2 ? 1 : -1;
             }
-            return part1.getCacheOrder() > part2.getCacheOrder() ? 1 : -1;
+            return entry1.sequence < entry2.sequence ? -1 : (entry1.sequence == entry2.sequence ? 0 : 1);
         }
     }
 
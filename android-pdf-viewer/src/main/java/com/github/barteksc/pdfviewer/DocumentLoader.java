@@ -0,0 +1,347 @@
+/**
+ * Copyright 2016 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.barteksc.pdfviewer.source.DocumentSource;
+import com.github.barteksc.pdfviewer.util.FitPolicy;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens documents and lays out their pages into a {@link PdfFile} on an {@link Executor}.
+ * Loads can be cancelled: the running thread is interrupted and cancellation is checked
+ * between opening, page count, page sizes and layout, and the document is closed if it was
+ * already opened. A file prepared without a view can later be shown with
+ * {@link PDFView#fromPdfFile(PdfFile)}.
+ * @since 10.1.5
+ */
+public class DocumentLoader {
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static Executor defaultExecutor;
+
+    private final Context context;
+
+    private final PdfiumCore pdfiumCore;
+
+    private final Executor executor;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public DocumentLoader(Context context, PdfiumCore pdfiumCore) {
+        this(context, pdfiumCore, getDefaultExecutor());
+    }
+
+    public DocumentLoader(Context context, PdfiumCore pdfiumCore, Executor executor) {
+        this.context = context.getApplicationContext();
+        this.pdfiumCore = pdfiumCore;
+        this.executor = executor;
+    }
+
+    /**
+     * Shared executor used when none is given, its threads only load documents
+     */
+    public static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "PDF loader #" + count.getAndIncrement());
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            defaultExecutor = executor;
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Start loading a document
+     *
+     * @param callback called on the main thread unless the load is cancelled before, may be null
+     * @return handle to cancel or wait for the load
+     */
+    public LoadHandle load(Request request, Callback callback) {
+        LoadHandle handle = new LoadHandle(request, callback);
+        executor.execute(handle);
+        return handle;
+    }
+
+    public interface Callback {
+
+        /**
+         * The document is loaded, the receiver owns the file and must {@link PdfFile#dispose()} it
+         */
+        void onLoaded(PdfFile pdfFile);
+
+        void onError(Throwable t);
+    }
+
+    /**
+     * What to load and how to lay out its pages
+     */
+    public static class Request {
+
+        private final DocumentSource documentSource;
+        private String password;
+        private int[] userPages;
+        private Size viewSize = new Size(0, 0);
+        private FitPolicy pageFitPolicy = FitPolicy.WIDTH;
+        private boolean swipeVertical = true;
+        private int spacingPx;
+        private boolean autoSpacing;
+        private boolean fitEachPage;
+
+        public Request(DocumentSource documentSource) {
+            this.documentSource = documentSource;
+        }
+
+        public Request password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Request pages(int... userPages) {
+            this.userPages = userPages;
+            return this;
+        }
+
+        public Request viewSize(int width, int height) {
+            this.viewSize = new Size(width, height);
+            return this;
+        }
+
+        public Request pageFitPolicy(FitPolicy pageFitPolicy) {
+            this.pageFitPolicy = pageFitPolicy;
+            return this;
+        }
+
+        public Request swipeHorizontal(boolean swipeHorizontal) {
+            this.swipeVertical = !swipeHorizontal;
+            return this;
+        }
+
+        public Request spacing(int spacingPx) {
+            this.spacingPx = spacingPx;
+            return this;
+        }
+
+        public Request autoSpacing(boolean autoSpacing) {
+            this.autoSpacing = autoSpacing;
+            return this;
+        }
+
+        public Request fitEachPage(boolean fitEachPage) {
+            this.fitEachPage = fitEachPage;
+            return this;
+        }
+    }
+
+    /**
+     * A running or finished load, {@link #get()} waits for the result
+     */
+    public class LoadHandle implements Future<PdfFile>, Runnable {
+
+        private final Request request;
+
+        private final Callback callback;
+
+        private Thread thread;
+
+        private boolean cancelled;
+
+        private boolean done;
+
+        private PdfFile result;
+
+        private Throwable error;
+
+        LoadHandle(Request request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                thread = Thread.currentThread();
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            PdfFile pdfFile = null;
+            Throwable t = null;
+            try {
+                pdfFile = loadFile();
+            } catch (Throwable e) {
+                t = e;
+            }
+            synchronized (this) {
+                thread = null;
+                // clears a cancellation interrupt that arrived after the load completed
+                Thread.interrupted();
+                if (cancelled) {
+                    if (pdfFile != null) {
+                        pdfFile.dispose();
+                    }
+                    return;
+                }
+                result = pdfFile;
+                error = t;
+                done = true;
+                notifyAll();
+            }
+            if (callback != null) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver();
+                    }
+                });
+            }
+        }
+
+        private PdfFile loadFile() throws Exception {
+            PdfDocument pdfDocument = request.documentSource.createDocument(context, pdfiumCore, request.password);
+            try {
+                checkCancelled();
+                return new PdfFile(pdfiumCore, pdfDocument, request.pageFitPolicy, request.viewSize,
+                        request.userPages, request.swipeVertical, request.spacingPx, request.autoSpacing,
+                        request.fitEachPage, this);
+            } catch (Throwable t) {
+                pdfiumCore.closeDocument(pdfDocument);
+                throw t;
+            }
+        }
+
+        private void checkCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+        }
+
+        private void deliver() {
+            PdfFile pdfFile;
+            Throwable t;
+            synchronized (this) {
+                if (cancelled) {
+                    // cancelled after completion, the callback never took ownership
+                    if (result != null) {
+                        result.dispose();
+                        result = null;
+                    }
+                    return;
+                }
+                pdfFile = result;
+                t = error;
+            }
+            if (t != null) {
+                callback.onError(t);
+            } else {
+                callback.onLoaded(pdfFile);
+            }
+        }
+
+        /**
+         * Cancel the load. A file completed but not yet delivered to the callback is disposed.
+         *
+         * @return false if the result was already delivered or the load cancelled
+         */
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            if (mayInterruptIfRunning && thread != null) {
+                thread.interrupt();
+            }
+            notifyAll();
+            return true;
+        }
+
+        public boolean cancel() {
+            return cancel(true);
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return done || cancelled;
+        }
+
+        /**
+         * Wait for the file. When a callback is set it also receives the file and owns it.
+         */
+        @Override
+        public synchronized PdfFile get() throws InterruptedException, ExecutionException {
+            while (!done && !cancelled) {
+                wait();
+            }
+            return getResult();
+        }
+
+        @Override
+        public synchronized PdfFile get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!done && !cancelled) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return getResult();
+        }
+
+        private PdfFile getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return result;
+        }
+    }
+}
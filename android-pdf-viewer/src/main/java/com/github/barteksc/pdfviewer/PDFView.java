@@ -15,6 +15,7 @@
  */
 package com.github.barteksc.pdfviewer;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -29,9 +30,6 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.Build;
-import android.os.HandlerThread;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
@@ -47,18 +45,24 @@ import com.github.barteksc.pdfviewer.listener.OnErrorListener;
 import com.github.barteksc.pdfviewer.listener.OnLoadCompleteListener;
 import com.github.barteksc.pdfviewer.listener.OnLongPressListener;
 import com.github.barteksc.pdfviewer.listener.OnPageChangeListener;
+import com.github.barteksc.pdfviewer.listener.OnPageAvailableListener;
 import com.github.barteksc.pdfviewer.listener.OnPageErrorListener;
 import com.github.barteksc.pdfviewer.listener.OnPageScrollListener;
 import com.github.barteksc.pdfviewer.listener.OnRenderListener;
 import com.github.barteksc.pdfviewer.listener.OnTapListener;
 import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.model.RenderingStats;
 import com.github.barteksc.pdfviewer.scroll.ScrollHandle;
 import com.github.barteksc.pdfviewer.source.AssetSource;
 import com.github.barteksc.pdfviewer.source.ByteArraySource;
+import com.github.barteksc.pdfviewer.source.ByteBufferSource;
+import com.github.barteksc.pdfviewer.source.ChannelSource;
 import com.github.barteksc.pdfviewer.source.DocumentSource;
 import com.github.barteksc.pdfviewer.source.FileSource;
 import com.github.barteksc.pdfviewer.source.InputStreamSource;
+import com.github.barteksc.pdfviewer.source.ProgressiveSource;
 import com.github.barteksc.pdfviewer.source.UriSource;
+import com.github.barteksc.pdfviewer.util.BitmapPool;
 import com.github.barteksc.pdfviewer.util.Constants;
 import com.github.barteksc.pdfviewer.util.FitPolicy;
 import com.github.barteksc.pdfviewer.util.MathUtils;
@@ -70,11 +74,16 @@ import com.shockwave.pdfium.util.Size;
 import com.shockwave.pdfium.util.SizeF;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * It supports animations, zoom, cache, and swipe.
@@ -117,9 +126,16 @@ public class PDFView extends RelativeLayout {
 
     private ScrollDir scrollDir = ScrollDir.NONE;
 
+    ScrollDir getScrollDir() {
+        return scrollDir;
+    }
+
     /** Rendered parts go to the cache manager */
     CacheManager cacheManager;
 
+    /** Bitmaps shared by the render workers and the cache manager */
+    private final BitmapPool bitmapPool = new BitmapPool(Constants.Cache.BITMAP_POOL_SIZE);
+
     /** Animation manager manage all offset and zoom animation */
     private AnimationManager animationManager;
 
@@ -154,14 +170,24 @@ public class PDFView extends RelativeLayout {
     /** Current state of the view */
     private State state = State.DEFAULT;
 
-    /** Async task used during the loading phase to decode a PDF document */
-    private DecodingAsyncTask decodingAsyncTask;
+    /** Load of the document being opened, cancelled on recycle */
+    private DocumentLoader.LoadHandle loadHandle;
 
-    /** The thread {@link #renderingHandler} will run on */
-    private HandlerThread renderingHandlerThread;
-    /** Handler always waiting in the background and rendering tasks */
+    /** Executor opening documents, null for {@link DocumentLoader#getDefaultExecutor()} */
+    private Executor loadExecutor;
+
+    /** Pool of render workers, alive while a document is loaded */
     RenderingHandler renderingHandler;
 
+    /** Reports arriving pages of a progressively loaded document */
+    private AvailabilityWatcher availabilityWatcher;
+
+    /** Number of render workers started for each loaded document */
+    private int renderThreadCount = Constants.RENDER_THREADS;
+
+    /** Maximum native page handles kept open for each loaded document */
+    private int openPagesLimit = PdfDocument.DEFAULT_OPEN_PAGES_LIMIT;
+
     private PagesLoader pagesLoader;
 
     Callbacks callbacks = new Callbacks();
@@ -235,8 +261,16 @@ public class PDFView extends RelativeLayout {
     /** Fling a single page at a time */
     private boolean pageFling = true;
 
-    /** Pages numbers used when calling onDrawAllListener */
-    private List<Integer> onDrawPagesNums = new ArrayList<>(10);
+    /** Pages numbers used when calling onDrawAllListener, the first onDrawPagesCount are valid */
+    private int[] onDrawPages = new int[10];
+    private int onDrawPagesCount = 0;
+
+    /** Parts drawn in the current frame, filled by collectVisibleParts */
+    private final List<PagePart> visibleParts = new ArrayList<>();
+
+    /** Scratch rectangles of drawPart, reused to keep onDraw allocation free */
+    private final Rect srcRect = new Rect();
+    private final RectF dstRect = new RectF();
 
     /** Holds info whether view has been added to layout and has width and height */
     private boolean hasSize = false;
@@ -248,13 +282,11 @@ public class PDFView extends RelativeLayout {
     public PDFView(Context context, AttributeSet set) {
         super(context, set);
 
-        renderingHandlerThread = new HandlerThread("PDF renderer");
-
         if (isInEditMode()) {
             return;
         }
 
-        cacheManager = new CacheManager();
+        cacheManager = new CacheManager(bitmapPool, getDefaultCacheSize(context));
         animationManager = new AnimationManager(this);
         dragPinchManager = new DragPinchManager(this, animationManager);
         pagesLoader = new PagesLoader(this);
@@ -279,8 +311,69 @@ public class PDFView extends RelativeLayout {
 
         recycled = false;
         // Start decoding document
-        decodingAsyncTask = new DecodingAsyncTask(docSource, password, userPages, this, pdfiumCore);
-        decodingAsyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        DocumentLoader loader = new DocumentLoader(getContext(), pdfiumCore,
+                loadExecutor != null ? loadExecutor : DocumentLoader.getDefaultExecutor());
+        DocumentLoader.Request request = new DocumentLoader.Request(docSource)
+                .password(password)
+                .pages(userPages)
+                .viewSize(getWidth(), getHeight())
+                .pageFitPolicy(pageFitPolicy)
+                .swipeHorizontal(!swipeVertical)
+                .spacing(spacingPx)
+                .autoSpacing(autoSpacing)
+                .fitEachPage(fitEachPage);
+        loadHandle = loader.load(request, new ViewLoadCallback(this));
+    }
+
+    /**
+     * Show a file prepared with {@link DocumentLoader}, its layout settings are kept and
+     * replace the ones of the view, which scrolls and snaps with them
+     */
+    private void load(PdfFile pdfFile) {
+        if (!recycled) {
+            throw new IllegalStateException("Don't call load on a PDF View without recycling it first.");
+        }
+
+        recycled = false;
+        swipeVertical = pdfFile.isVertical();
+        spacingPx = pdfFile.getSpacingPx();
+        autoSpacing = pdfFile.isAutoSpacing();
+        pageFitPolicy = pdfFile.getPageFitPolicy();
+        fitEachPage = pdfFile.isFitEachPage();
+        pdfFile.recalculatePageSizes(new Size(getWidth(), getHeight()));
+        loadComplete(pdfFile);
+    }
+
+    /**
+     * Delivers a load result to the view unless it was garbage collected meanwhile
+     */
+    private static class ViewLoadCallback implements DocumentLoader.Callback {
+
+        private final WeakReference<PDFView> pdfViewReference;
+
+        ViewLoadCallback(PDFView pdfView) {
+            this.pdfViewReference = new WeakReference<>(pdfView);
+        }
+
+        @Override
+        public void onLoaded(PdfFile pdfFile) {
+            PDFView pdfView = pdfViewReference.get();
+            if (pdfView == null) {
+                pdfFile.dispose();
+                return;
+            }
+            pdfView.loadHandle = null;
+            pdfView.loadComplete(pdfFile);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            PDFView pdfView = pdfViewReference.get();
+            if (pdfView != null) {
+                pdfView.loadHandle = null;
+                pdfView.loadError(t);
+            }
+        }
     }
 
     /**
@@ -421,6 +514,27 @@ public class PDFView extends RelativeLayout {
         return doubletapEnabled;
     }
 
+    /** Called when pages of a progressively loaded document have arrived */
+    void onPagesAvailable(int[] pages) {
+        if (pdfFile == null) {
+            return;
+        }
+        // pages laid out with a placeholder size take their real size, the current page stays in place
+        float currentPageOffset = pdfFile.getPageOffset(currentPage, zoom);
+        if (pdfFile.updateArrivedPageSizes(pages, new Size(getWidth(), getHeight()))) {
+            float shift = pdfFile.getPageOffset(currentPage, zoom) - currentPageOffset;
+            if (swipeVertical) {
+                moveTo(currentXOffset, currentYOffset - shift);
+            } else {
+                moveTo(currentXOffset - shift, currentYOffset);
+            }
+        }
+        for (int page : pages) {
+            callbacks.callOnPageAvailable(page);
+        }
+        loadPages();
+    }
+
     void onPageError(PageRenderingException ex) {
         if (!callbacks.callOnPageError(ex.getPage(), ex.getCause())) {
             Log.e(TAG, "Cannot open page " + ex.getPage(), ex.getCause());
@@ -435,11 +549,15 @@ public class PDFView extends RelativeLayout {
 
         // Stop tasks
         if (renderingHandler != null) {
-            renderingHandler.stop();
-            renderingHandler.removeMessages(RenderingHandler.MSG_RENDER_TASK);
+            renderingHandler.quit();
         }
-        if (decodingAsyncTask != null) {
-            decodingAsyncTask.cancel(true);
+        if (loadHandle != null) {
+            loadHandle.cancel(true);
+            loadHandle = null;
+        }
+        if (availabilityWatcher != null) {
+            availabilityWatcher.quit();
+            availabilityWatcher = null;
         }
 
         // Clear caches
@@ -481,14 +599,7 @@ public class PDFView extends RelativeLayout {
     @Override
     protected void onDetachedFromWindow() {
         recycle();
-        if (renderingHandlerThread != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                renderingHandlerThread.quitSafely();
-            } else {
-                renderingHandlerThread.quit();
-            }
-            renderingHandlerThread = null;
-        }
+        bitmapPool.clear();
         super.onDetachedFromWindow();
     }
 
@@ -635,25 +746,28 @@ public class PDFView extends RelativeLayout {
         float currentYOffset = this.currentYOffset;
         canvas.translate(currentXOffset, currentYOffset);
 
-        // Draws thumbnails
-        for (PagePart part : cacheManager.getThumbnails()) {
-            drawPart(canvas, part);
-
+        // Draws thumbnails, indexed loops keep the frame free of iterator allocations
+        List<PagePart> thumbnails = cacheManager.getThumbnails();
+        for (int i = 0, size = thumbnails.size(); i < size; i++) {
+            drawPart(canvas, thumbnails.get(i));
         }
 
-        // Draws parts
-        for (PagePart part : cacheManager.getPageParts()) {
+        // Draws parts of the visible pages which intersect the viewport
+        OnDrawListener onDrawAllListener = callbacks.getOnDrawAll();
+        List<PagePart> parts = collectVisibleParts();
+        for (int i = 0, size = parts.size(); i < size; i++) {
+            PagePart part = parts.get(i);
             drawPart(canvas, part);
-            if (callbacks.getOnDrawAll() != null
-                    && !onDrawPagesNums.contains(part.getPage())) {
-                onDrawPagesNums.add(part.getPage());
+            if (onDrawAllListener != null) {
+                addOnDrawPage(part.getPage());
             }
         }
 
-        for (Integer page : onDrawPagesNums) {
-            drawWithListener(canvas, page, callbacks.getOnDrawAll());
+        for (int i = 0; i < onDrawPagesCount; i++) {
+            drawWithListener(canvas, onDrawPages[i], onDrawAllListener);
         }
-        onDrawPagesNums.clear();
+        onDrawPagesCount = 0;
+        visibleParts.clear();
 
         drawWithListener(canvas, currentPage, callbacks.getOnDraw());
 
@@ -700,6 +814,35 @@ public class PDFView extends RelativeLayout {
         loadPages();
     }
 
+    /**
+     * Re-render the area of a page covered by a rectangle, e.g. after adding or removing an image.
+     * Only the parts intersecting it are rendered again, and they stay on screen until their
+     * new render replaces them. Arguments are the ones given to {@link PdfFile#addImage(int, Bitmap, float, float, int, int)}.
+     *
+     * @param page        the page
+     * @param left        left of the rectangle in points
+     * @param top         top of the rectangle in points, see topAsBottom
+     * @param width       width in points
+     * @param height      height in points
+     * @param topAsBottom true if top is the distance of the rectangle bottom from the page bottom,
+     *                    as pdf coordinates, false if it is the distance from the page top
+     * @since 10.1.5
+     */
+    public void redrawPageRect(int page, float left, float top, float width, float height, boolean topAsBottom) {
+        if (pdfFile == null) {
+            return;
+        }
+        RectF pageRelativeRect = pdfFile.getPageRelativeRect(page, left, top, width, height, topAsBottom);
+        if (pageRelativeRect == null) {
+            return;
+        }
+        cacheManager.markStale(page, pageRelativeRect);
+        if (renderingHandler != null) {
+            renderingHandler.cancelRunningTasks(page, pageRelativeRect);
+        }
+        loadPages();
+    }
+
     /**
      * redraw all pages
      * @since 10.1.3
@@ -723,6 +866,7 @@ public class PDFView extends RelativeLayout {
             canvas.translate(translateX, translateY);
             if(listener instanceof OnDrawListener2){
                 ((OnDrawListener2) listener).reportTranslates(translateX, translateY);
+                ((OnDrawListener2) listener).reportZoom(zoom);
             }
             SizeF size = pdfFile.getPageSize(page);
             listener.onLayerDrawn(canvas,
@@ -734,6 +878,57 @@ public class PDFView extends RelativeLayout {
         }
     }
 
+    /**
+     * Query the cache for the parts intersecting the viewport, page by page
+     *
+     * @return {@link #visibleParts}, cleared after the frame is drawn
+     */
+    private List<PagePart> collectVisibleParts() {
+        float viewLeft = -currentXOffset;
+        float viewTop = -currentYOffset;
+        float viewRight = viewLeft + getWidth();
+        float viewBottom = viewTop + getHeight();
+        int firstPage = pdfFile.getPageAtOffset(swipeVertical ? viewTop : viewLeft, zoom);
+        int lastPage = pdfFile.getPageAtOffset(swipeVertical ? viewBottom : viewRight, zoom);
+
+        for (int page = firstPage; page <= lastPage; page++) {
+            SizeF size = pdfFile.getPageSize(page);
+            float pageWidth = toCurrentScale(size.getWidth());
+            float pageHeight = toCurrentScale(size.getHeight());
+            if (pageWidth <= 0 || pageHeight <= 0) {
+                continue;
+            }
+            float pageX, pageY;
+            if (swipeVertical) {
+                pageX = pdfFile.getSecondaryPageOffset(page, zoom);
+                pageY = pdfFile.getPageOffset(page, zoom);
+            } else {
+                pageX = pdfFile.getPageOffset(page, zoom);
+                pageY = pdfFile.getSecondaryPageOffset(page, zoom);
+            }
+            cacheManager.collectParts(page,
+                    (viewLeft - pageX) / pageWidth, (viewTop - pageY) / pageHeight,
+                    (viewRight - pageX) / pageWidth, (viewBottom - pageY) / pageHeight,
+                    visibleParts);
+        }
+        return visibleParts;
+    }
+
+    /**
+     * Add a page to the pages drawn with the onDrawAll listener in this frame, without boxing
+     */
+    private void addOnDrawPage(int page) {
+        for (int i = 0; i < onDrawPagesCount; i++) {
+            if (onDrawPages[i] == page) {
+                return;
+            }
+        }
+        if (onDrawPagesCount == onDrawPages.length) {
+            onDrawPages = Arrays.copyOf(onDrawPages, onDrawPagesCount * 2);
+        }
+        onDrawPages[onDrawPagesCount++] = page;
+    }
+
     /** Draw a given PagePart on the canvas */
     private void drawPart(Canvas canvas, PagePart part) {
         // Can seem strange, but avoid lot of calls
@@ -760,7 +955,7 @@ public class PDFView extends RelativeLayout {
         }
         canvas.translate(localTranslationX, localTranslationY);
 
-        Rect srcRect = new Rect(0, 0, renderedBitmap.getWidth(),
+        srcRect.set(0, 0, renderedBitmap.getWidth(),
                 renderedBitmap.getHeight());
 
         float offsetX = toCurrentScale(pageRelativeBounds.left * size.getWidth());
@@ -771,7 +966,7 @@ public class PDFView extends RelativeLayout {
         // If we use float values for this rectangle, there will be
         // a possible gap between page parts, especially when
         // the zoom level is high.
-        RectF dstRect = new RectF((int) offsetX, (int) offsetY,
+        dstRect.set((int) offsetX, (int) offsetY,
                 (int) (offsetX + width),
                 (int) (offsetY + height));
 
@@ -818,11 +1013,18 @@ public class PDFView extends RelativeLayout {
             return;
         }
 
-        // Cancel all current tasks
-        renderingHandler.removeMessages(RenderingHandler.MSG_RENDER_TASK);
+        // Queued tasks still needed get a new priority, the others are cancelled
+        renderingHandler.beginPass();
         cacheManager.makeANewSet();
 
         pagesLoader.loadPages();
+        renderingHandler.cancelStaleTasks();
+        if (availabilityWatcher != null) {
+            float start = swipeVertical ? -currentYOffset : -currentXOffset;
+            float end = start + (swipeVertical ? getHeight() : getWidth());
+            availabilityWatcher.setVisiblePages(pdfFile.getPageAtOffset(start, zoom),
+                    pdfFile.getPageAtOffset(end, zoom));
+        }
         redraw();
     }
 
@@ -831,13 +1033,16 @@ public class PDFView extends RelativeLayout {
         state = State.LOADED;
 
         this.pdfFile = pdfFile;
+        pdfFile.setOpenPagesLimit(openPagesLimit);
 
-        if (!renderingHandlerThread.isAlive()) {
-            renderingHandlerThread.start();
-        }
-        renderingHandler = new RenderingHandler(renderingHandlerThread.getLooper(), this);
+        renderingHandler = new RenderingHandler(this, pdfFile, bitmapPool, renderThreadCount);
         renderingHandler.start();
 
+        if (pdfFile.isProgressive()) {
+            availabilityWatcher = new AvailabilityWatcher(this, pdfFile);
+            availabilityWatcher.start();
+        }
+
         if (scrollHandle != null) {
             scrollHandle.setupLayout(this);
             isScrollHandleInit = true;
@@ -888,6 +1093,18 @@ public class PDFView extends RelativeLayout {
         redraw();
     }
 
+    /**
+     * Show the partial render of a slow part, replaced when the part is complete
+     */
+    void onPartialBitmapRendered(PagePart part) {
+        if (state == State.LOADED) {
+            state = State.SHOWN;
+            callbacks.callOnRender(pdfFile.getPagesCount());
+        }
+        cacheManager.cachePart(part, true);
+        redraw();
+    }
+
     public void moveTo(float offsetX, float offsetY) {
         moveTo(offsetX, offsetY, true);
     }
@@ -1269,6 +1486,74 @@ public class PDFView extends RelativeLayout {
         return bestQuality;
     }
 
+    /**
+     * Set the maximum bytes of rendered page parts kept in memory, thumbnails are not counted.
+     * @param cacheSize size in bytes, or 0 to derive it from the app memory class
+     * @since 10.1.5
+     */
+    public void setCacheSize(long cacheSize) {
+        cacheManager.setMaxBytes(cacheSize > 0 ? cacheSize : getDefaultCacheSize(getContext()));
+    }
+
+    public long getCacheSize() {
+        return cacheManager.getMaxBytes();
+    }
+
+    private static long getDefaultCacheSize(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return (long) (activityManager.getMemoryClass() * 1024L * 1024L * Constants.Cache.CACHE_MEMORY_RATIO);
+    }
+
+    /**
+     * Set how many native pages stay open, least recently used pages are closed beyond it
+     * and reopened when needed.
+     * @param openPagesLimit maximum open pages, at least 1
+     * @since 10.1.5
+     */
+    public void setOpenPagesLimit(int openPagesLimit) {
+        this.openPagesLimit = Math.max(1, openPagesLimit);
+        if (pdfFile != null) {
+            pdfFile.setOpenPagesLimit(this.openPagesLimit);
+        }
+    }
+
+    public int getOpenPagesLimit() {
+        return openPagesLimit;
+    }
+
+    /**
+     * Set the number of render workers. Takes effect for the next loaded document.
+     * @param renderThreadCount the worker count, at least 1
+     * @since 10.1.5
+     */
+    public void setRenderThreadCount(int renderThreadCount) {
+        this.renderThreadCount = Math.max(1, renderThreadCount);
+    }
+
+    public int getRenderThreadCount() {
+        return renderThreadCount;
+    }
+
+    /**
+     * Get the render scheduler counters of the loaded document.
+     * @return the counters, or null if no document is loaded
+     * @since 10.1.5
+     */
+    public RenderingStats getRenderingStats() {
+        if (renderingHandler == null) {
+            return null;
+        }
+        return renderingHandler.getStats();
+    }
+
+    /**
+     * Get the pool of bitmaps reused for rendered parts, e.g. to read its hit and miss counters.
+     * @since 10.1.5
+     */
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
     public boolean isSwipeVertical() {
         return swipeVertical;
     }
@@ -1397,11 +1682,35 @@ public class PDFView extends RelativeLayout {
         return new Configurator(new ByteArraySource(bytes));
     }
 
-    /** Use stream as the pdf source. Stream will be written to bytearray, because native code does not support Java Streams */
+    /** Use a direct or memory mapped buffer as the pdf source, it is read in place */
+    public Configurator fromByteBuffer(ByteBuffer buffer) {
+        return new Configurator(new ByteBufferSource(buffer));
+    }
+
+    /** Use stream as the pdf source. Streams other than FileInputStream are copied to a temporary file, the document is read on demand */
     public Configurator fromStream(InputStream stream) {
         return new Configurator(new InputStreamSource(stream));
     }
 
+    /** Use a channel as the pdf source, the document is read on demand and the channel closed with it */
+    public Configurator fromChannel(FileChannel channel) throws IOException {
+        return new Configurator(new ChannelSource(channel));
+    }
+
+    /** Use a file still being written, e.g. downloaded, as the pdf source, pages show as they arrive */
+    public Configurator fromGrowingFile(File file, long size) {
+        return new Configurator(new ProgressiveSource(file, size));
+    }
+
+    /**
+     * Show a file prepared off-view with {@link DocumentLoader}, the view takes ownership of it.
+     * Page fit policy, fit each page, spacing, auto spacing and swipe direction are the ones used
+     * to prepare it, the values given to the configurator for them are ignored.
+     */
+    public Configurator fromPdfFile(PdfFile pdfFile) {
+        return new Configurator(pdfFile);
+    }
+
     /** Use custom source as pdf source */
     public Configurator fromSource(DocumentSource docSource) {
         return new Configurator(docSource);
@@ -1413,8 +1722,12 @@ public class PDFView extends RelativeLayout {
 
         private final DocumentSource documentSource;
 
+        private final PdfFile pdfFile;
+
         private int[] pageNumbers = null;
 
+        private Executor loadExecutor;
+
         private boolean enableSwipe = true;
 
         private boolean enableDoubletap = true;
@@ -1439,6 +1752,8 @@ public class PDFView extends RelativeLayout {
 
         private OnPageErrorListener onPageErrorListener;
 
+        private OnPageAvailableListener onPageAvailableListener;
+
         private LinkHandler linkHandler = new DefaultLinkHandler(PDFView.this);
 
         private int defaultPage = 0;
@@ -1467,7 +1782,19 @@ public class PDFView extends RelativeLayout {
 
         private boolean nightMode = false;
 
+        private int renderThreads = Constants.RENDER_THREADS;
+
+        private long cacheSize = 0;
+
+        private int openPagesLimit = PdfDocument.DEFAULT_OPEN_PAGES_LIMIT;
+
+        private Configurator(PdfFile pdfFile) {
+            this.documentSource = null;
+            this.pdfFile = pdfFile;
+        }
+
         private Configurator(DocumentSource documentSource) {
+            this.pdfFile = null;
             this.documentSource = documentSource;
         }
 
@@ -1521,6 +1848,11 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        public Configurator onPageAvailable(OnPageAvailableListener onPageAvailableListener) {
+            this.onPageAvailableListener = onPageAvailableListener;
+            return this;
+        }
+
         public Configurator onPageChange(OnPageChangeListener onPageChangeListener) {
             this.onPageChangeListener = onPageChangeListener;
             return this;
@@ -1606,6 +1938,46 @@ public class PDFView extends RelativeLayout {
             return this;
         }
 
+        /**
+         * Number of worker threads rendering page parts. Pdfium renders one part at a time,
+         * additional workers prepare bitmaps meanwhile.
+         * @param renderThreads the worker count, at least 1
+         * @since 10.1.5
+         */
+        public Configurator renderThreads(int renderThreads) {
+            this.renderThreads = renderThreads;
+            return this;
+        }
+
+        /**
+         * Maximum bytes of rendered page parts kept in memory.
+         * @param cacheSize size in bytes, 0 derives it from the app memory class
+         * @since 10.1.5
+         */
+        public Configurator cacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * Maximum native pages kept open, least recently used pages are closed beyond it.
+         * @param openPagesLimit the limit, at least 1
+         * @since 10.1.5
+         */
+        public Configurator openPagesLimit(int openPagesLimit) {
+            this.openPagesLimit = openPagesLimit;
+            return this;
+        }
+
+        /**
+         * Executor opening the document, by default {@link DocumentLoader#getDefaultExecutor()}
+         * @since 10.1.5
+         */
+        public Configurator loadExecutor(Executor loadExecutor) {
+            this.loadExecutor = loadExecutor;
+            return this;
+        }
+
         public Configurator disableLongpress() {
             PDFView.this.dragPinchManager.disableLongpress();
             return this;
@@ -1627,6 +1999,7 @@ public class PDFView extends RelativeLayout {
             PDFView.this.callbacks.setOnTap(onTapListener);
             PDFView.this.callbacks.setOnLongPress(onLongPressListener);
             PDFView.this.callbacks.setOnPageError(onPageErrorListener);
+            PDFView.this.callbacks.setOnPageAvailable(onPageAvailableListener);
             PDFView.this.callbacks.setLinkHandler(linkHandler);
             PDFView.this.setSwipeEnabled(enableSwipe);
             PDFView.this.setNightMode(nightMode);
@@ -1642,8 +2015,15 @@ public class PDFView extends RelativeLayout {
             PDFView.this.setFitEachPage(fitEachPage);
             PDFView.this.setPageSnap(pageSnap);
             PDFView.this.setPageFling(pageFling);
+            PDFView.this.setRenderThreadCount(renderThreads);
+            PDFView.this.setCacheSize(cacheSize);
+            PDFView.this.setOpenPagesLimit(openPagesLimit);
+
+            PDFView.this.loadExecutor = loadExecutor;
 
-            if (pageNumbers != null) {
+            if (pdfFile != null) {
+                PDFView.this.load(pdfFile);
+            } else if (pageNumbers != null) {
                 PDFView.this.load(documentSource, password, pageNumbers);
             } else {
                 PDFView.this.load(documentSource, password);
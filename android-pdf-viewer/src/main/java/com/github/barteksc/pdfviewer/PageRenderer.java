@@ -0,0 +1,365 @@
+/**
+ * Copyright 2016 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.RenderControl;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders pages to bitmaps without a {@link PDFView}, e.g. for thumbnails or export.
+ * Requests run on a fixed number of worker threads and can be submitted from any thread,
+ * document locking is done by {@link PdfiumCore}. Renders are cancelled through their
+ * {@link RenderControl}, workers are never interrupted: an interrupt during a read of a
+ * channel backed document closes the channel and breaks the document for every user.
+ * <p>
+ * Memory is bounded: bitmaps of results not yet {@link Result#release() released} count against
+ * the byte budget, and workers wait for budget before rendering. Released bitmaps are pooled
+ * for the next requests.
+ * @since 10.1.5
+ */
+public class PageRenderer {
+
+    private final PdfiumCore pdfiumCore;
+
+    private final PdfDocument pdfDocument;
+
+    private final BitmapPool bitmapPool;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Requests not done yet, cancelled by {@link #shutdown()} */
+    private final Set<RenderFuture> pending =
+            Collections.newSetFromMap(new ConcurrentHashMap<RenderFuture, Boolean>());
+
+    private final long maxBytes;
+
+    /** Bytes of bitmaps held by unreleased results, guarded by this */
+    private long usedBytes;
+
+    private boolean shutdown;
+
+    /**
+     * @param threads  number of render threads, pdfium renders one page of a document at a time
+     *                 so more than 2 rarely helps
+     * @param maxBytes maximum bytes of bitmaps held by unreleased results
+     */
+    public PageRenderer(PdfiumCore pdfiumCore, PdfDocument pdfDocument, int threads, long maxBytes) {
+        this.pdfiumCore = pdfiumCore;
+        this.pdfDocument = pdfDocument;
+        this.maxBytes = maxBytes;
+        this.bitmapPool = new BitmapPool(maxBytes / 2);
+        int threadCount = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "PDF page renderer #" + count.getAndIncrement());
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue a render
+     *
+     * @return future of the result, cancelling it stops the render in progress
+     */
+    public Future<Result> submit(Request request) {
+        return submit(request, null);
+    }
+
+    /**
+     * Queue a render and get the result on the main thread
+     *
+     * @param callback receives the result, which it must release, or the error
+     */
+    public Future<Result> submit(Request request, Callback callback) {
+        RenderFuture future = new RenderFuture(new RenderCall(request), callback);
+        pending.add(future);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Cancel pending requests and stop the workers once the running renders have aborted.
+     * Unreleased results stay valid, the document is not closed.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        executor.shutdown();
+        for (RenderFuture future : pending) {
+            future.cancel(false);
+        }
+    }
+
+    /** @return bytes of bitmaps held by results not yet released */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private synchronized void reserve(long bytes, RenderControl control) throws InterruptedException {
+        if (bytes > maxBytes) {
+            throw new IllegalArgumentException("Render of " + bytes + " bytes exceeds the limit of " + maxBytes);
+        }
+        while (usedBytes + bytes > maxBytes) {
+            if (shutdown || control.isCancelled()) {
+                throw new CancellationException();
+            }
+            wait();
+        }
+        usedBytes += bytes;
+    }
+
+    private synchronized void unreserve(long bytes) {
+        usedBytes -= bytes;
+        notifyAll();
+    }
+
+    public interface Callback {
+
+        void onRendered(Result result);
+
+        void onError(Throwable t);
+    }
+
+    /**
+     * A page region to render. Coordinates are in PostScript points (1/72 inch) from the
+     * top left corner of the page.
+     */
+    public static class Request {
+
+        private final int page;
+        private final float scale;
+        private RectF region;
+        private Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        private boolean renderAnnotations;
+        /** Color of the page area, pdfium fills it before rendering */
+        private int backgroundColor = Color.WHITE;
+
+        /**
+         * @param page  document page index
+         * @param scale bitmap pixels per point, 1 renders at 72 dpi
+         */
+        public Request(int page, float scale) {
+            this.page = page;
+            this.scale = scale;
+        }
+
+        /** Region of the page to render in points, the whole page by default */
+        public Request region(RectF region) {
+            this.region = region;
+            return this;
+        }
+
+        public Request config(Bitmap.Config config) {
+            this.config = config;
+            return this;
+        }
+
+        public Request renderAnnotations(boolean renderAnnotations) {
+            this.renderAnnotations = renderAnnotations;
+            return this;
+        }
+
+        public Request backgroundColor(int backgroundColor) {
+            this.backgroundColor = backgroundColor;
+            return this;
+        }
+    }
+
+    /**
+     * A rendered bitmap, call {@link #release()} once done with it
+     */
+    public class Result {
+
+        private final Request request;
+
+        private Bitmap bitmap;
+
+        private final long bytes;
+
+        Result(Request request, Bitmap bitmap, long bytes) {
+            this.request = request;
+            this.bitmap = bitmap;
+            this.bytes = bytes;
+        }
+
+        public Request getRequest() {
+            return request;
+        }
+
+        public int getPage() {
+            return request.page;
+        }
+
+        /** @return the bitmap, null after {@link #release()} */
+        public synchronized Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /**
+         * Give the bitmap back for reuse by later renders, it must not be used afterwards
+         */
+        public void release() {
+            Bitmap released;
+            synchronized (this) {
+                released = bitmap;
+                bitmap = null;
+            }
+            if (released != null) {
+                bitmapPool.release(released);
+                unreserve(bytes);
+            }
+        }
+    }
+
+    private class RenderCall implements Callable<Result> {
+
+        private final Request request;
+
+        private final RenderControl control = new RenderControl();
+
+        RenderCall(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public Result call() throws Exception {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            pdfiumCore.openPage(pdfDocument, request.page);
+            int pageWidth = Math.round(pdfiumCore.getPageWidthPoint(pdfDocument, request.page) * request.scale);
+            int pageHeight = Math.round(pdfiumCore.getPageHeightPoint(pdfDocument, request.page) * request.scale);
+            RectF region = request.region;
+            int left = region != null ? Math.round(region.left * request.scale) : 0;
+            int top = region != null ? Math.round(region.top * request.scale) : 0;
+            int width = region != null ? Math.round(region.width() * request.scale) : pageWidth;
+            int height = region != null ? Math.round(region.height() * request.scale) : pageHeight;
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Empty render of page " + request.page);
+            }
+
+            long bytes = (long) width * height * (request.config == Bitmap.Config.RGB_565 ? 2 : 4);
+            reserve(bytes, control);
+            Bitmap bitmap = null;
+            boolean completed = false;
+            try {
+                bitmap = bitmapPool.acquire(width, height, request.config);
+                completed = pdfiumCore.renderPageBitmap(pdfDocument, bitmap, request.page, -left, -top,
+                        pageWidth, pageHeight, request.renderAnnotations, request.backgroundColor, control);
+            } finally {
+                if (!completed) {
+                    bitmapPool.release(bitmap);
+                    unreserve(bytes);
+                }
+            }
+            if (!completed) {
+                if (control.isCancelled()) {
+                    throw new CancellationException();
+                }
+                throw new IllegalStateException("Cannot render page " + request.page);
+            }
+            return new Result(request, bitmap, bytes);
+        }
+    }
+
+    /**
+     * Cancelling stops the native render through the control, the worker is not interrupted
+     */
+    private class RenderFuture extends FutureTask<Result> {
+
+        private final RenderCall call;
+
+        private final Callback callback;
+
+        RenderFuture(RenderCall call, Callback callback) {
+            super(call);
+            this.call = call;
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            call.control.cancel();
+            synchronized (PageRenderer.this) {
+                // wake the render if it waits for budget
+                PageRenderer.this.notifyAll();
+            }
+            return super.cancel(false);
+        }
+
+        @Override
+        protected void set(Result result) {
+            super.set(result);
+            if (isCancelled()) {
+                // cancelled between the end of the render and completion
+                result.release();
+            }
+        }
+
+        @Override
+        protected void done() {
+            pending.remove(this);
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Result result;
+                    try {
+                        result = get();
+                    } catch (CancellationException e) {
+                        return;
+                    } catch (Exception e) {
+                        callback.onError(e.getCause() != null ? e.getCause() : e);
+                        return;
+                    }
+                    callback.onRendered(result);
+                }
+            });
+        }
+    }
+}
@@ -25,11 +25,15 @@ import com.shockwave.pdfium.util.SizeF;
 import java.util.LinkedList;
 import java.util.List;
 
-import static com.github.barteksc.pdfviewer.util.Constants.Cache.CACHE_SIZE;
 import static com.github.barteksc.pdfviewer.util.Constants.PRELOAD_OFFSET;
 
 class PagesLoader {
 
+    /** Distance multiplier of parts ahead of the scroll direction, they are needed first */
+    private static final float AHEAD_PRIORITY_FACTOR = 0.5f;
+    /** Distance multiplier of parts behind the scroll direction */
+    private static final float BEHIND_PRIORITY_FACTOR = 2f;
+
     private PDFView pdfView;
     private int cacheOrder;
     private float xOffset;
@@ -38,8 +42,14 @@ class PagesLoader {
     private float pageRelativePartHeight;
     private float partRenderWidth;
     private float partRenderHeight;
+    /** Zoom bucket of the current loading pass, see {@link TileKey#zoomBucket(float)} */
+    private int zoomBucket;
     private final RectF thumbnailRect = new RectF(0, 0, 1, 1);
     private final int preloadOffset;
+    /** Center of the view in document coordinates, used to prioritize render tasks */
+    private float viewCenterX;
+    private float viewCenterY;
+    private PDFView.ScrollDir scrollDir;
 
     private class Holder {
         int row;
@@ -225,7 +235,7 @@ class PagesLoader {
     }
 
     private void loadVisible() {
-        int parts = 0;
+        long remainingBytes = pdfView.cacheManager.getMaxBytes();
         float scaledPreloadOffset = preloadOffset;
         float firstXOffset = -xOffset + scaledPreloadOffset;
         float lastXOffset = -xOffset - pdfView.getWidth() - scaledPreloadOffset;
@@ -240,23 +250,25 @@ class PagesLoader {
 
         for (RenderRange range : rangeList) {
             calculatePartSize(range.gridSize);
-            parts += loadPage(range.page, range.leftTop.row, range.rightBottom.row, range.leftTop.col, range.rightBottom.col, CACHE_SIZE - parts);
-            if (parts >= CACHE_SIZE) {
+            remainingBytes -= loadPage(range.page, range.leftTop.row, range.rightBottom.row, range.leftTop.col, range.rightBottom.col, remainingBytes);
+            if (remainingBytes <= 0) {
                 break;
             }
         }
 
     }
 
-    private int loadPage(int page, int firstRow, int lastRow, int firstCol, int lastCol,
-                         int nbOfPartsLoadable) {
-        int loaded = 0;
+    /**
+     * @param loadableBytes bitmap bytes left in the cache budget
+     * @return bitmap bytes of the loaded parts
+     */
+    private long loadPage(int page, int firstRow, int lastRow, int firstCol, int lastCol,
+                          long loadableBytes) {
+        long loaded = 0;
         for (int row = firstRow; row <= lastRow; row++) {
             for (int col = firstCol; col <= lastCol; col++) {
-                if (loadCell(page, row, col, pageRelativePartWidth, pageRelativePartHeight)) {
-                    loaded++;
-                }
-                if (loaded >= nbOfPartsLoadable) {
+                loaded += loadCell(page, row, col, pageRelativePartWidth, pageRelativePartHeight);
+                if (loaded >= loadableBytes) {
                     return loaded;
                 }
             }
@@ -264,7 +276,10 @@ class PagesLoader {
         return loaded;
     }
 
-    private boolean loadCell(int page, int row, int col, float pageRelativePartWidth, float pageRelativePartHeight) {
+    /**
+     * @return estimated bitmap bytes of the part, 0 if nothing was loaded
+     */
+    private long loadCell(int page, int row, int col, float pageRelativePartWidth, float pageRelativePartHeight) {
 
         float relX = pageRelativePartWidth * col;
         float relY = pageRelativePartHeight * row;
@@ -284,16 +299,17 @@ class PagesLoader {
         RectF pageRelativeBounds = new RectF(relX, relY, relX + relWidth, relY + relHeight);
 
         if (renderWidth > 0 && renderHeight > 0) {
-            if (!pdfView.cacheManager.upPartIfContained(page, pageRelativeBounds, cacheOrder)) {
+            if (!pdfView.cacheManager.upPartIfContained(page, pageRelativeBounds, zoomBucket, cacheOrder)) {
                 pdfView.renderingHandler.addRenderingTask(page, renderWidth, renderHeight,
                         pageRelativeBounds, false, cacheOrder, pdfView.isBestQuality(),
-                        pdfView.isAnnotationRendering());
+                        pdfView.isAnnotationRendering(),
+                        getPriority(page, relX + relWidth / 2, relY + relHeight / 2), zoomBucket);
             }
 
             cacheOrder++;
-            return true;
+            return (long) Math.round(renderWidth) * Math.round(renderHeight) * (pdfView.isBestQuality() ? 4 : 2);
         }
-        return false;
+        return 0;
     }
 
     private void loadThumbnail(int page) {
@@ -303,14 +319,50 @@ class PagesLoader {
         if (!pdfView.cacheManager.containsThumbnail(page, thumbnailRect)) {
             pdfView.renderingHandler.addRenderingTask(page,
                     thumbnailWidth, thumbnailHeight, thumbnailRect,
-                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering());
+                    true, 0, pdfView.isBestQuality(), pdfView.isAnnotationRendering(),
+                    getPriority(page, 0.5f, 0.5f), zoomBucket);
+        }
+    }
+
+    /**
+     * Priority of a part is its distance from the view center, shortened for parts
+     * ahead of the scroll direction and stretched for parts behind it.
+     *
+     * @param relCenterX page relative x of the part center
+     * @param relCenterY page relative y of the part center
+     * @return priority, lower is rendered first
+     */
+    private float getPriority(int page, float relCenterX, float relCenterY) {
+        float zoom = pdfView.getZoom();
+        SizeF pageSize = pdfView.pdfFile.getPageSize(page);
+        float pageOffset = pdfView.pdfFile.getPageOffset(page, zoom);
+        float secondaryOffset = pdfView.pdfFile.getSecondaryPageOffset(page, zoom);
+
+        float primaryDelta, secondaryDelta;
+        if (pdfView.isSwipeVertical()) {
+            primaryDelta = pageOffset + relCenterY * pageSize.getHeight() * zoom - viewCenterY;
+            secondaryDelta = secondaryOffset + relCenterX * pageSize.getWidth() * zoom - viewCenterX;
+        } else {
+            primaryDelta = pageOffset + relCenterX * pageSize.getWidth() * zoom - viewCenterX;
+            secondaryDelta = secondaryOffset + relCenterY * pageSize.getHeight() * zoom - viewCenterY;
+        }
+
+        float distance = Math.abs(primaryDelta) + Math.abs(secondaryDelta);
+        if (scrollDir == PDFView.ScrollDir.NONE || primaryDelta == 0) {
+            return distance;
         }
+        boolean ahead = (scrollDir == PDFView.ScrollDir.END) == (primaryDelta > 0);
+        return distance * (ahead ? AHEAD_PRIORITY_FACTOR : BEHIND_PRIORITY_FACTOR);
     }
 
     void loadPages() {
         cacheOrder = 1;
+        zoomBucket = TileKey.zoomBucket(pdfView.getZoom());
         xOffset = -MathUtils.max(pdfView.getCurrentXOffset(), 0);
         yOffset = -MathUtils.max(pdfView.getCurrentYOffset(), 0);
+        viewCenterX = -pdfView.getCurrentXOffset() + pdfView.getWidth() / 2f;
+        viewCenterY = -pdfView.getCurrentYOffset() + pdfView.getHeight() / 2f;
+        scrollDir = pdfView.getScrollDir();
 
         loadVisible();
     }
@@ -20,6 +20,9 @@ import android.graphics.Matrix;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.util.SparseBooleanArray;
 
 import com.github.barteksc.pdfviewer.exception.PageRenderingException;
@@ -28,23 +31,32 @@ import com.github.barteksc.pdfviewer.util.PageSizeCalculator;
 import com.heaven7.android.pdf.PdfAnnotManager;
 import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.RenderControl;
+import com.shockwave.pdfium.SaveControl;
 import com.shockwave.pdfium.util.Size;
 import com.shockwave.pdfium.util.SizeF;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 
 public class PdfFile {
 
-    private static final Object lock = new Object();
-    private PdfDocument pdfDocument;
+    /** null once disposed, set under the lock of {@link #openedPages} */
+    private volatile PdfDocument pdfDocument;
     private PdfiumCore pdfiumCore;
     private int pagesCount = 0;
     /** Original page sizes */
     private List<Size> originalPageSizes = new ArrayList<>();
+    /** Pages of a progressive document laid out with a placeholder size until their data arrives */
+    private boolean[] placeholderPages = new boolean[0];
     /** Scaled page sizes */
     private List<SizeF> pageSizes = new ArrayList<>();
-    /** Opened pages with indicator whether opening was successful */
+    /** Opened pages with indicator whether opening was successful, also guards disposal */
     private SparseBooleanArray openedPages = new SparseBooleanArray();
     /** Page with maximum width */
     private Size originalMaxWidthPageSize = new Size(0, 0);
@@ -60,10 +72,10 @@ public class PdfFile {
     private int spacingPx;
     /** Calculate spacing automatically so each page fits on it's own in the center of the view */
     private boolean autoSpacing;
-    /** Calculated offsets for pages */
-    private List<Float> pageOffsets = new ArrayList<>();
+    /** Calculated offsets for pages, primitive to avoid unboxing on scroll */
+    private float[] pageOffsets = new float[0];
     /** Calculated auto spacing for pages */
-    private List<Float> pageSpacing = new ArrayList<>();
+    private float[] pageSpacing = new float[0];
     /** Calculated document length (width or height, depending on swipe mode) */
     private float documentLength = 0;
     private final FitPolicy pageFitPolicy;
@@ -82,6 +94,17 @@ public class PdfFile {
 
     PdfFile(PdfiumCore pdfiumCore, PdfDocument pdfDocument, FitPolicy pageFitPolicy, Size viewSize, int[] originalUserPages,
             boolean isVertical, int spacing, boolean autoSpacing, boolean fitEachPage) {
+        this(pdfiumCore, pdfDocument, pageFitPolicy, viewSize, originalUserPages, isVertical, spacing, autoSpacing,
+                fitEachPage, null);
+    }
+
+    /**
+     * @param loadHandle checked for cancellation between setup phases, may be null
+     * @throws CancellationException if the load was cancelled during setup
+     */
+    PdfFile(PdfiumCore pdfiumCore, PdfDocument pdfDocument, FitPolicy pageFitPolicy, Size viewSize, int[] originalUserPages,
+            boolean isVertical, int spacing, boolean autoSpacing, boolean fitEachPage,
+            DocumentLoader.LoadHandle loadHandle) {
         this.pdfiumCore = pdfiumCore;
         this.pdfDocument = pdfDocument;
         this.pageFitPolicy = pageFitPolicy;
@@ -91,7 +114,7 @@ public class PdfFile {
         this.autoSpacing = autoSpacing;
         this.fitEachPage = fitEachPage;
         this.mAnnotManager = new PdfAnnotManager(pdfDocument);
-        setup(viewSize);
+        setup(viewSize, loadHandle);
     }
 
     /**
@@ -134,7 +157,124 @@ public class PdfFile {
      * @since 10.0.7
      */
     public void savePdf(String path,int flags){
-        pdfiumCore.savePdf(pdfDocument, path, 0);
+        pdfiumCore.savePdf(pdfDocument, path, flags);
+    }
+
+    /**
+     * Write a copy of the document to a stream on the executor. The stream is closed when the
+     * save ends.
+     *
+     * @param flags    save flags, see {@link PdfiumCore#saveAsCopy(PdfDocument, OutputStream, int, SaveControl)}
+     * @param callback called on the main thread, may be null
+     * @return control to cancel the save
+     * @since 10.1.5
+     */
+    public SaveControl saveAsync(final OutputStream out, final int flags, Executor executor,
+                                 SaveCallback callback) {
+        return startSave(executor, callback, new SaveTask() {
+            @Override
+            public boolean save(SaveControl control) throws IOException {
+                try {
+                    return pdfiumCore.saveAsCopy(pdfDocument, out, flags, control);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Append the changes to the file the document was opened from on the executor, only the
+     * incremental update is written.
+     *
+     * @param original the file the document was opened from
+     * @param callback called on the main thread, may be null
+     * @return control to cancel the save
+     * @see PdfiumCore#saveIncremental(PdfDocument, ParcelFileDescriptor, SaveControl)
+     * @since 10.1.5
+     */
+    public SaveControl appendChangesAsync(final File original, Executor executor, SaveCallback callback) {
+        return startSave(executor, callback, new SaveTask() {
+            @Override
+            public boolean save(SaveControl control) throws IOException {
+                ParcelFileDescriptor pfd = ParcelFileDescriptor.open(original,
+                        ParcelFileDescriptor.MODE_READ_WRITE);
+                try {
+                    return pdfiumCore.saveIncremental(pdfDocument, pfd, control);
+                } finally {
+                    pfd.close();
+                }
+            }
+        });
+    }
+
+    private SaveControl startSave(Executor executor, final SaveCallback callback, final SaveTask task) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final SaveControl control = new SaveControl() {
+            @Override
+            protected void onProgress(final long bytesWritten) {
+                if (callback == null) {
+                    return;
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onSaveProgress(bytesWritten);
+                    }
+                });
+            }
+        };
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean completed = false;
+                Throwable error = null;
+                try {
+                    completed = task.save(control);
+                } catch (Throwable t) {
+                    error = t;
+                }
+                if (callback == null) {
+                    return;
+                }
+                final boolean result = completed;
+                final Throwable t = error;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (t != null) {
+                            callback.onSaveError(t);
+                        } else {
+                            callback.onSaveDone(result);
+                        }
+                    }
+                });
+            }
+        });
+        return control;
+    }
+
+    private interface SaveTask {
+        boolean save(SaveControl control) throws IOException;
+    }
+
+    /**
+     * Receives the progress and result of an asynchronous save on the main thread
+     * @since 10.1.5
+     */
+    public interface SaveCallback {
+
+        /**
+         * @param bytesWritten bytes written so far
+         */
+        void onSaveProgress(long bytesWritten);
+
+        /**
+         * @param completed true if everything was written, false if the save was cancelled
+         */
+        void onSaveDone(boolean completed);
+
+        void onSaveError(Throwable t);
     }
 
     /**
@@ -147,25 +287,108 @@ public class PdfFile {
         return pdfiumCore.getPageRotation(pdfDocument, pageIndex);
     }
 
-    private void setup(Size viewSize) {
+    private void setup(Size viewSize, DocumentLoader.LoadHandle loadHandle) {
         if (originalUserPages != null) {
             pagesCount = originalUserPages.length;
         } else {
             pagesCount = pdfiumCore.getPageCount(pdfDocument);
         }
+        checkCancelled(loadHandle);
+
+        int[] pageIndexes = new int[pagesCount];
+        for (int i = 0; i < pagesCount; i++) {
+            pageIndexes[i] = documentPage(i);
+        }
+        // one native call for all pages instead of one per page
+        int[] sizes = pdfiumCore.getPageSizes(pdfDocument, pageIndexes);
+        checkCancelled(loadHandle);
 
+        // pages of a progressive document which have not arrived yet take the first page size
+        Size placeholderSize = new Size(sizes.length > 0 ? sizes[0] : 0, sizes.length > 1 ? sizes[1] : 0);
+        placeholderPages = new boolean[pagesCount];
         for (int i = 0; i < pagesCount; i++) {
-            Size pageSize = pdfiumCore.getPageSize(pdfDocument, documentPage(i));
+            Size pageSize = new Size(sizes[i * 2], sizes[i * 2 + 1]);
+            if (pageSize.getWidth() == 0 && pageSize.getHeight() == 0 && pdfDocument.isProgressive()) {
+                pageSize = placeholderSize;
+                placeholderPages[i] = true;
+            }
+            originalPageSizes.add(pageSize);
+        }
+        updateOriginalMaxPageSizes();
+        checkCancelled(loadHandle);
+
+        recalculatePageSizes(viewSize);
+    }
+
+    private void updateOriginalMaxPageSizes() {
+        originalMaxWidthPageSize = new Size(0, 0);
+        originalMaxHeightPageSize = new Size(0, 0);
+        for (Size pageSize : originalPageSizes) {
             if (pageSize.getWidth() > originalMaxWidthPageSize.getWidth()) {
                 originalMaxWidthPageSize = pageSize;
             }
             if (pageSize.getHeight() > originalMaxHeightPageSize.getHeight()) {
                 originalMaxHeightPageSize = pageSize;
             }
-            originalPageSizes.add(pageSize);
         }
+    }
 
-        recalculatePageSizes(viewSize);
+    /**
+     * Replace the placeholder sizes of pages whose data arrived with their real sizes, and lay
+     * the pages out again if a size changed. Call from the thread using the layout.
+     *
+     * @param pages    pages which became available, see {@link #isPageAvailable(int)}
+     * @param viewSize current size of the view
+     * @return true if page sizes, offsets or the document length changed
+     * @since 10.1.5
+     */
+    public boolean updateArrivedPageSizes(int[] pages, Size viewSize) {
+        PdfDocument pdfDocument = this.pdfDocument;
+        if (pdfDocument == null) {
+            return false;
+        }
+        int count = 0;
+        for (int page : pages) {
+            if (page >= 0 && page < placeholderPages.length && placeholderPages[page]) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        int[] updated = new int[count];
+        int[] pageIndexes = new int[count];
+        count = 0;
+        for (int page : pages) {
+            if (page >= 0 && page < placeholderPages.length && placeholderPages[page]) {
+                updated[count] = page;
+                pageIndexes[count++] = documentPage(page);
+            }
+        }
+        int[] sizes = pdfiumCore.getPageSizes(pdfDocument, pageIndexes);
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            Size pageSize = new Size(sizes[i * 2], sizes[i * 2 + 1]);
+            if (pageSize.getWidth() == 0 && pageSize.getHeight() == 0) {
+                continue;
+            }
+            placeholderPages[updated[i]] = false;
+            if (!pageSize.equals(originalPageSizes.get(updated[i]))) {
+                originalPageSizes.set(updated[i], pageSize);
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateOriginalMaxPageSizes();
+            recalculatePageSizes(viewSize);
+        }
+        return changed;
+    }
+
+    private static void checkCancelled(DocumentLoader.LoadHandle loadHandle) {
+        if (loadHandle != null && loadHandle.isCancelled()) {
+            throw new CancellationException();
+        }
     }
 
     /**
@@ -202,6 +425,35 @@ public class PdfFile {
         return pageSizes.get(pageIndex);
     }
 
+    /**
+     * Convert a rectangle in page points to page relative bounds, extended by a point on each
+     * side for anti-aliased edges
+     *
+     * @param topAsBottom true if top is the distance of the rectangle bottom from the page bottom
+     * @return the bounds clamped to the page, null if the page is unknown
+     * @since 10.1.5
+     */
+    public RectF getPageRelativeRect(int pageIndex, float left, float top, float width, float height,
+                                     boolean topAsBottom) {
+        if (documentPage(pageIndex) < 0) {
+            return null;
+        }
+        Size size = originalPageSizes.get(pageIndex);
+        float pointsPerPixel = 72f / pdfiumCore.getCurrentDpi();
+        float pageWidth = size.getWidth() * pointsPerPixel;
+        float pageHeight = size.getHeight() * pointsPerPixel;
+        if (pageWidth <= 0 || pageHeight <= 0) {
+            return null;
+        }
+        if (topAsBottom) {
+            top = pageHeight - top - height;
+        }
+        return new RectF(Math.max(0, (left - 1) / pageWidth),
+                Math.max(0, (top - 1) / pageHeight),
+                Math.min(1, (left + width + 1) / pageWidth),
+                Math.min(1, (top + height + 1) / pageHeight));
+    }
+
     public SizeF getScaledPageSize(int pageIndex, float zoom) {
         SizeF size = getPageSize(pageIndex);
         return new SizeF(size.getWidth() * zoom, size.getHeight() * zoom);
@@ -224,8 +476,30 @@ public class PdfFile {
         return getMaxPageSize().getHeight();
     }
 
+    /** @return true if pages are laid out vertically */
+    public boolean isVertical() {
+        return isVertical;
+    }
+
+    /** @return fixed spacing between pages in pixels */
+    public int getSpacingPx() {
+        return spacingPx;
+    }
+
+    public boolean isAutoSpacing() {
+        return autoSpacing;
+    }
+
+    public FitPolicy getPageFitPolicy() {
+        return pageFitPolicy;
+    }
+
+    public boolean isFitEachPage() {
+        return fitEachPage;
+    }
+
     private void prepareAutoSpacing(Size viewSize) {
-        pageSpacing.clear();
+        pageSpacing = new float[getPagesCount()];
         for (int i = 0; i < getPagesCount(); i++) {
             SizeF pageSize = pageSizes.get(i);
             float spacing = Math.max(0, isVertical ? viewSize.getHeight() - pageSize.getHeight() :
@@ -233,7 +507,7 @@ public class PdfFile {
             if (i < getPagesCount() - 1) {
                 spacing += spacingPx;
             }
-            pageSpacing.add(spacing);
+            pageSpacing[i] = spacing;
         }
     }
 
@@ -243,7 +517,7 @@ public class PdfFile {
             SizeF pageSize = pageSizes.get(i);
             length += isVertical ? pageSize.getHeight() : pageSize.getWidth();
             if (autoSpacing) {
-                length += pageSpacing.get(i);
+                length += pageSpacing[i];
             } else if (i < getPagesCount() - 1) {
                 length += spacingPx;
             }
@@ -252,22 +526,22 @@ public class PdfFile {
     }
 
     private void preparePagesOffset() {
-        pageOffsets.clear();
+        pageOffsets = new float[getPagesCount()];
         float offset = 0;
         for (int i = 0; i < getPagesCount(); i++) {
             SizeF pageSize = pageSizes.get(i);
             float size = isVertical ? pageSize.getHeight() : pageSize.getWidth();
             if (autoSpacing) {
-                offset += pageSpacing.get(i) / 2f;
+                offset += pageSpacing[i] / 2f;
                 if (i == 0) {
                     offset -= spacingPx / 2f;
                 } else if (i == getPagesCount() - 1) {
                     offset += spacingPx / 2f;
                 }
-                pageOffsets.add(offset);
-                offset += size + pageSpacing.get(i) / 2f;
+                pageOffsets[i] = offset;
+                offset += size + pageSpacing[i] / 2f;
             } else {
-                pageOffsets.add(offset);
+                pageOffsets[i] = offset;
                 offset += size + spacingPx;
             }
         }
@@ -286,7 +560,7 @@ public class PdfFile {
     }
 
     public float getPageSpacing(int pageIndex, float zoom) {
-        float spacing = autoSpacing ? pageSpacing.get(pageIndex) : spacingPx;
+        float spacing = autoSpacing ? pageSpacing[pageIndex] : spacingPx;
         return spacing * zoom;
     }
 
@@ -296,7 +570,7 @@ public class PdfFile {
         if (docPage < 0) {
             return 0;
         }
-        return pageOffsets.get(pageIndex) * zoom;
+        return pageOffsets[pageIndex] * zoom;
     }
 
     /** Get secondary page offset, that is X for vertical scroll and Y for horizontal scroll */
@@ -311,29 +585,82 @@ public class PdfFile {
         }
     }
 
+    /**
+     * Get the page at the given primary offset. Page starts, shifted back by half of their spacing,
+     * never decrease, so the page is found by binary search.
+     */
     public int getPageAtOffset(float offset, float zoom) {
-        int currentPage = 0;
-        for (int i = 0; i < getPagesCount(); i++) {
-            float off = pageOffsets.get(i) * zoom - getPageSpacing(i, zoom) / 2f;
+        return findPageAtOffset(pageOffsets, autoSpacing ? pageSpacing : null, spacingPx,
+                getPagesCount(), offset, zoom);
+    }
+
+    /**
+     * Binary search of {@link #getPageAtOffset(float, float)}
+     *
+     * @param pageSpacing spacing of each page, or null if all pages have the given spacing
+     */
+    static int findPageAtOffset(float[] pageOffsets, float[] pageSpacing, float spacing,
+                                int pagesCount, float offset, float zoom) {
+        // find the first page starting at or after the offset
+        int low = 0;
+        int high = pagesCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            float pageSpacingPx = (pageSpacing != null ? pageSpacing[mid] : spacing) * zoom;
+            float off = pageOffsets[mid] * zoom - pageSpacingPx / 2f;
             if (off >= offset) {
-                break;
+                high = mid;
+            } else {
+                low = mid + 1;
             }
-            currentPage++;
         }
-        return --currentPage >= 0 ? currentPage : 0;
+        return low > 0 ? low - 1 : 0;
+    }
+
+    /**
+     * @return true if the page data is available, see {@link PdfiumCore#isPageAvailable(PdfDocument, int)}
+     * @since 10.1.5
+     */
+    public boolean isPageAvailable(int pageIndex) {
+        int docPage = documentPage(pageIndex);
+        PdfDocument pdfDocument = this.pdfDocument;
+        if (docPage < 0 || pdfDocument == null) {
+            return false;
+        }
+        return pdfiumCore.isPageAvailable(pdfDocument, docPage);
     }
 
+    /**
+     * @return true if pages may still be missing, see {@link #isPageAvailable(int)}
+     * @since 10.1.5
+     */
+    public boolean isProgressive() {
+        PdfDocument pdfDocument = this.pdfDocument;
+        return pdfDocument != null && pdfDocument.isProgressive();
+    }
+
+    /**
+     * Open a page if it was never opened. Nothing is opened once the file is disposed.
+     *
+     * @return true if the page was opened by this call
+     */
     public boolean openPage(int pageIndex) throws PageRenderingException {
         int docPage = documentPage(pageIndex);
         if (docPage < 0) {
             return false;
         }
 
-        synchronized (lock) {
+        synchronized (openedPages) {
+            if (pdfDocument == null) {
+                return false;
+            }
             if (openedPages.indexOfKey(docPage) < 0) {
                 try {
                     pdfiumCore.openPage(pdfDocument, docPage);
                     openedPages.put(docPage, true);
+                    if (mAnnotManager.isScanOnPageOpen()) {
+                        mAnnotManager.readAnnots(docPage);
+                    }
                     return true;
                 } catch (Exception e) {
                     openedPages.put(docPage, false);
@@ -346,15 +673,60 @@ public class PdfFile {
 
     public boolean pageHasError(int pageIndex) {
         int docPage = documentPage(pageIndex);
-        return !openedPages.get(docPage, false);
+        synchronized (openedPages) {
+            return !openedPages.get(docPage, false);
+        }
+    }
+
+    /**
+     * Render a page fragment progressively, see {@link PdfiumCore#renderPageBitmap(PdfDocument, Bitmap, int, int, int, int, int, boolean, RenderControl)}
+     *
+     * @return true if the fragment was fully rendered, false if it was cancelled or failed
+     * @since 10.1.5
+     */
+    public boolean renderPageBitmap(Bitmap bitmap, int pageIndex, Rect bounds, boolean annotationRendering,
+                                    RenderControl control) {
+        int docPage = documentPage(pageIndex);
+        PdfDocument pdfDocument = this.pdfDocument;
+        if (pdfDocument == null) {
+            return false;
+        }
+        return pdfiumCore.renderPageBitmap(pdfDocument, bitmap, docPage,
+                bounds.left, bounds.top, bounds.width(), bounds.height(), annotationRendering, control);
     }
 
     public void renderPageBitmap(Bitmap bitmap, int pageIndex, Rect bounds, boolean annotationRendering) {
         int docPage = documentPage(pageIndex);
+        PdfDocument pdfDocument = this.pdfDocument;
+        if (pdfDocument == null) {
+            return;
+        }
         pdfiumCore.renderPageBitmap(pdfDocument, bitmap, docPage,
                 bounds.left, bounds.top, bounds.width(), bounds.height(), annotationRendering);
     }
 
+    /**
+     * Set how many native page handles stay open, least recently used pages are closed beyond it
+     * and reopened when rendered again.
+     * @param limit maximum open pages, at least 1
+     * @since 10.1.5
+     */
+    public void setOpenPagesLimit(int limit) {
+        PdfDocument pdfDocument = this.pdfDocument;
+        if (pdfDocument != null) {
+            pdfiumCore.setOpenPagesLimit(pdfDocument, limit);
+        }
+    }
+
+    /**
+     * Get the underlying document, e.g. to read its open page counters.
+     * @return the document, or null after {@link #dispose()}
+     * @since 10.1.5
+     */
+    public PdfDocument getPdfDocument() {
+        return pdfDocument;
+    }
+
     public PdfDocument.Meta getMetaData() {
         if (pdfDocument == null) {
             return null;
@@ -425,12 +797,26 @@ public class PdfFile {
     }
 
     public void dispose() {
-        if (pdfiumCore != null && pdfDocument != null) {
-            pdfiumCore.closeDocument(pdfDocument);
+        mAnnotManager.stopPrefetch();
+        // under the lock of openPage, so a render worker never opens a page of the closed document
+        synchronized (openedPages) {
+            if (pdfiumCore != null && pdfDocument != null) {
+                pdfiumCore.closeDocument(pdfDocument);
+            }
+
+            pdfDocument = null;
+            originalUserPages = null;
         }
+    }
 
-        pdfDocument = null;
-        originalUserPages = null;
+    /**
+     * @return true once {@link #dispose()} was called
+     * @since 10.1.5
+     */
+    public boolean isDisposed() {
+        synchronized (openedPages) {
+            return pdfDocument == null;
+        }
     }
 
     /**
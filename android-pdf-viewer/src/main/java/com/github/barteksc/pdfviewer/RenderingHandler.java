@@ -1,161 +1,419 @@
-/**
- * Copyright 2016 Bartosz Schiller
- * <p/>
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- * <p/>
- * http://www.apache.org/licenses/LICENSE-2.0
- * <p/>
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package com.github.barteksc.pdfviewer;
-
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.RectF;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-import android.util.Log;
-
-import com.github.barteksc.pdfviewer.exception.PageRenderingException;
-import com.github.barteksc.pdfviewer.model.PagePart;
-
-/**
- * A {@link Handler} that will process incoming {@link RenderingTask} messages
- * and alert {@link PDFView#onBitmapRendered(PagePart)} when the portion of the
- * PDF is ready to render.
- */
-class RenderingHandler extends Handler {
-    /**
-     * {@link Message#what} kind of message this handler processes.
-     */
-    static final int MSG_RENDER_TASK = 1;
-
-    private static final String TAG = RenderingHandler.class.getName();
-
-    private PDFView pdfView;
-
-    private RectF renderBounds = new RectF();
-    private Rect roundedRenderBounds = new Rect();
-    private Matrix renderMatrix = new Matrix();
-    private boolean running = false;
-
-    RenderingHandler(Looper looper, PDFView pdfView) {
-        super(looper);
-        this.pdfView = pdfView;
-    }
-
-    void addRenderingTask(int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
-        RenderingTask task = new RenderingTask(width, height, bounds, page, thumbnail, cacheOrder, bestQuality, annotationRendering);
-        Message msg = obtainMessage(MSG_RENDER_TASK, task);
-        sendMessage(msg);
-    }
-
-    @Override
-    public void handleMessage(Message message) {
-        RenderingTask task = (RenderingTask) message.obj;
-        try {
-            final PagePart part = proceed(task);
-            if (part != null) {
-                if (running) {
-                    pdfView.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            pdfView.onBitmapRendered(part);
-                        }
-                    });
-                } else {
-                    part.getRenderedBitmap().recycle();
-                }
-            }
-        } catch (final PageRenderingException ex) {
-            pdfView.post(new Runnable() {
-                @Override
-                public void run() {
-                    pdfView.onPageError(ex);
-                }
-            });
-        }
-    }
-
-    private PagePart proceed(RenderingTask renderingTask) throws PageRenderingException {
-        PdfFile pdfFile = pdfView.pdfFile;
-        pdfFile.openPage(renderingTask.page);
-
-        int w = Math.round(renderingTask.width);
-        int h = Math.round(renderingTask.height);
-
-        if (w == 0 || h == 0 || pdfFile.pageHasError(renderingTask.page)) {
-            return null;
-        }
-
-        Bitmap render;
-        try {
-            render = Bitmap.createBitmap(w, h, renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
-        } catch (IllegalArgumentException e) {
-            Log.e(TAG, "Cannot create bitmap", e);
-            return null;
-        }
-        calculateBounds(w, h, renderingTask.bounds);
-
-        pdfFile.renderPageBitmap(render, renderingTask.page, roundedRenderBounds, renderingTask.annotationRendering);
-
-        return new PagePart(renderingTask.page, render,
-                renderingTask.bounds, renderingTask.thumbnail,
-                renderingTask.cacheOrder);
-    }
-
-    private void calculateBounds(int width, int height, RectF pageSliceBounds) {
-        renderMatrix.reset();
-        renderMatrix.postTranslate(-pageSliceBounds.left * width, -pageSliceBounds.top * height);
-        renderMatrix.postScale(1 / pageSliceBounds.width(), 1 / pageSliceBounds.height());
-
-        renderBounds.set(0, 0, width, height);
-        renderMatrix.mapRect(renderBounds);
-        renderBounds.round(roundedRenderBounds);
-    }
-
-    void stop() {
-        running = false;
-    }
-
-    void start() {
-        running = true;
-    }
-
-    private class RenderingTask {
-
-        float width, height;
-
-        RectF bounds;
-
-        int page;
-
-        boolean thumbnail;
-
-        int cacheOrder;
-
-        boolean bestQuality;
-
-        boolean annotationRendering;
-
-        RenderingTask(float width, float height, RectF bounds, int page, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
-            this.page = page;
-            this.width = width;
-            this.height = height;
-            this.bounds = bounds;
-            this.thumbnail = thumbnail;
-            this.cacheOrder = cacheOrder;
-            this.bestQuality = bestQuality;
-            this.annotationRendering = annotationRendering;
-        }
-    }
-}
+/**
+ * Copyright 2016 Bartosz Schiller
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Process;
+import android.util.Log;
+
+import com.github.barteksc.pdfviewer.exception.PageRenderingException;
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.model.RenderingStats;
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.shockwave.pdfium.RenderControl;
+
+/**
+ * A pool of render workers that take {@link RenderingTask}s from a shared {@link RenderingQueue}
+ * and alert {@link PDFView#onBitmapRendered(PagePart)} when the portion of the
+ * PDF is ready to render.
+ * <p>
+ * Pages are loaded and rendered under the document lock and then PdfiumCore's global lock,
+ * so one tile of any document renders at a time. Extra workers only overlap bitmap
+ * acquisition, erasing, partial result copies and hand-off with the native render of another
+ * tile, throughput beyond one worker is bounded by the global lock.
+ */
+class RenderingHandler {
+
+    private static final String TAG = RenderingHandler.class.getName();
+
+    private final PDFView pdfView;
+
+    private final PdfFile pdfFile;
+
+    private final BitmapPool bitmapPool;
+
+    private final RenderingQueue queue = new RenderingQueue();
+
+    private final Worker[] workers;
+
+    private volatile boolean running = false;
+
+    RenderingHandler(PDFView pdfView, PdfFile pdfFile, BitmapPool bitmapPool, int threadCount) {
+        this.pdfView = pdfView;
+        this.pdfFile = pdfFile;
+        this.bitmapPool = bitmapPool;
+        this.workers = new Worker[Math.max(1, threadCount)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("PDF renderer #" + i);
+        }
+    }
+
+    /**
+     * Queue a part for rendering, or update the priority of the same part if it is still queued
+     *
+     * @param priority lower values are rendered first
+     */
+    void addRenderingTask(int page, float width, float height, RectF bounds, boolean thumbnail, int cacheOrder,
+                          boolean bestQuality, boolean annotationRendering, float priority, int zoomBucket) {
+        RenderingTask task = new RenderingTask(width, height, bounds, page, thumbnail, cacheOrder, bestQuality, annotationRendering);
+        task.priority = priority;
+        task.zoomBucket = zoomBucket;
+        queue.offer(task);
+    }
+
+    /**
+     * Start a new loading pass, see {@link RenderingQueue#beginPass()}
+     */
+    void beginPass() {
+        queue.beginPass();
+    }
+
+    /**
+     * Drop queued tasks that were not requested again since {@link #beginPass()}
+     */
+    void cancelStaleTasks() {
+        queue.cancelStale();
+    }
+
+    /**
+     * Cancel the renders of a page running over a page relative rectangle, their result would
+     * predate a change of the content. The parts can be requested again right away.
+     */
+    void cancelRunningTasks(int page, RectF pageRelativeRect) {
+        queue.cancelRunning(page, pageRelativeRect);
+    }
+
+    /**
+     * Drop every task that has not been picked up by a worker yet
+     */
+    void removeTasks() {
+        queue.clear();
+    }
+
+    RenderingStats getStats() {
+        return queue.getStats();
+    }
+
+    int getThreadCount() {
+        return workers.length;
+    }
+
+    private void handleTask(Worker worker, RenderingTask task) {
+        try {
+            final PagePart part = proceed(worker, task);
+            if (part == null) {
+                return;
+            }
+            // cancelled since the render ended: stale, and maybe queued again already, or its
+            // content changed. Another render of the part may be posted, this one is dropped
+            if (running && !task.isCancelled()) {
+                pdfView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pdfView.onBitmapRendered(part);
+                    }
+                });
+            } else {
+                bitmapPool.release(part.getRenderedBitmap());
+            }
+        } catch (final PageRenderingException ex) {
+            pdfView.post(new Runnable() {
+                @Override
+                public void run() {
+                    pdfView.onPageError(ex);
+                }
+            });
+        } finally {
+            queue.finish(task);
+        }
+    }
+
+    private PagePart proceed(Worker worker, RenderingTask renderingTask) throws PageRenderingException {
+        // requested again by the loader once the page data has arrived
+        if (!pdfFile.isPageAvailable(renderingTask.page)) {
+            return null;
+        }
+        pdfFile.openPage(renderingTask.page);
+        // disposed when the view was recycled, the tasks still taken by workers end quietly
+        if (pdfFile.isDisposed()) {
+            return null;
+        }
+
+        int w = Math.round(renderingTask.width);
+        int h = Math.round(renderingTask.height);
+
+        if (w == 0 || h == 0 || pdfFile.pageHasError(renderingTask.page)) {
+            return null;
+        }
+
+        Bitmap render;
+        try {
+            render = bitmapPool.acquire(w, h, renderingTask.bestQuality ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Cannot create bitmap", e);
+            return null;
+        }
+        worker.calculateBounds(w, h, renderingTask.bounds);
+
+        if (!running) {
+            bitmapPool.release(render);
+            return null;
+        }
+        // pooled bitmaps still hold the previous part
+        render.eraseColor(Color.WHITE);
+        PartRenderControl control = new PartRenderControl(renderingTask,
+                renderingTask.thumbnail ? 0 : Constants.RENDER_PROGRESS_INTERVAL);
+        renderingTask.setControl(control);
+        boolean completed = pdfFile.renderPageBitmap(render, renderingTask.page, worker.roundedRenderBounds,
+                renderingTask.annotationRendering, control);
+        // a render which completes after a cancel is dropped as well
+        if (!completed || renderingTask.isCancelled()) {
+            bitmapPool.release(render);
+            if (control.published) {
+                removePartialPart(renderingTask);
+            }
+            return null;
+        }
+
+        return new PagePart(renderingTask.page, render,
+                renderingTask.bounds, renderingTask.thumbnail,
+                renderingTask.cacheOrder, renderingTask.zoomBucket);
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    void start() {
+        running = true;
+        for (Worker worker : workers) {
+            if (!worker.isAlive()) {
+                worker.start();
+            }
+        }
+    }
+
+    /**
+     * Stop rendering and let the workers terminate. The handler cannot be restarted afterwards.
+     */
+    void quit() {
+        running = false;
+        queue.clear();
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Remove the partial result of a task which did not complete, so the part is requested again
+     */
+    private void removePartialPart(final RenderingTask task) {
+        pdfView.post(new Runnable() {
+            @Override
+            public void run() {
+                pdfView.cacheManager.removePartialPart(task.page, task.bounds, task.zoomBucket);
+            }
+        });
+    }
+
+    /**
+     * Lets stale tasks abort mid-render, and shows a copy of the partial render of slow parts
+     */
+    private class PartRenderControl extends RenderControl {
+
+        private final RenderingTask task;
+
+        /** True once a partial result was handed to the view */
+        boolean published;
+
+        PartRenderControl(RenderingTask task, long progressIntervalMs) {
+            super(progressIntervalMs);
+            this.task = task;
+        }
+
+        @Override
+        protected void onProgress(Bitmap bitmap) {
+            if (!running || isCancelled()) {
+                return;
+            }
+            Bitmap copy;
+            try {
+                copy = bitmapPool.acquire(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Cannot create bitmap", e);
+                return;
+            }
+            new Canvas(copy).drawBitmap(bitmap, 0, 0, null);
+            final PagePart part = new PagePart(task.page, copy, task.bounds, false, task.cacheOrder, task.zoomBucket);
+            published = true;
+            pdfView.post(new Runnable() {
+                @Override
+                public void run() {
+                    pdfView.onPartialBitmapRendered(part);
+                }
+            });
+        }
+    }
+
+    /**
+     * A render thread. Geometry objects are per worker, so workers never share mutable state.
+     */
+    private class Worker extends Thread {
+
+        private final RectF renderBounds = new RectF();
+        private final Rect roundedRenderBounds = new Rect();
+        private final Matrix renderMatrix = new Matrix();
+
+        Worker(String name) {
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (!isInterrupted()) {
+                RenderingTask task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                handleTask(this, task);
+            }
+        }
+
+        private void calculateBounds(int width, int height, RectF pageSliceBounds) {
+            renderMatrix.reset();
+            renderMatrix.postTranslate(-pageSliceBounds.left * width, -pageSliceBounds.top * height);
+            renderMatrix.postScale(1 / pageSliceBounds.width(), 1 / pageSliceBounds.height());
+
+            renderBounds.set(0, 0, width, height);
+            renderMatrix.mapRect(renderBounds);
+            renderBounds.round(roundedRenderBounds);
+        }
+    }
+
+    static class RenderingTask {
+
+        float width, height;
+
+        RectF bounds;
+
+        int page;
+
+        boolean thumbnail;
+
+        int cacheOrder;
+
+        boolean bestQuality;
+
+        boolean annotationRendering;
+
+        /** Lower is rendered first */
+        float priority;
+
+        /** Zoom bucket the part is rendered for, see {@link TileKey#zoomBucket(float)} */
+        int zoomBucket;
+
+        /** Loading pass which last requested this task */
+        int pass;
+
+        /** Arrival order, breaks priority ties */
+        long sequence;
+
+        /** Control of the running render, guarded by this task */
+        private RenderControl control;
+
+        private boolean cancelled;
+
+        RenderingTask(float width, float height, RectF bounds, int page, boolean thumbnail, int cacheOrder, boolean bestQuality, boolean annotationRendering) {
+            this.page = page;
+            this.width = width;
+            this.height = height;
+            this.bounds = bounds;
+            this.thumbnail = thumbnail;
+            this.cacheOrder = cacheOrder;
+            this.bestQuality = bestQuality;
+            this.annotationRendering = annotationRendering;
+        }
+
+        synchronized void setControl(RenderControl control) {
+            this.control = control;
+            if (cancelled) {
+                control.cancel();
+            }
+        }
+
+        /**
+         * Abort the render of this task, now or as soon as it starts
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (control != null) {
+                control.cancel();
+            }
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Take the request parameters of a newer task describing the same part
+         */
+        void update(RenderingTask task) {
+            this.width = task.width;
+            this.height = task.height;
+            this.cacheOrder = task.cacheOrder;
+            this.bestQuality = task.bestQuality;
+            this.annotationRendering = task.annotationRendering;
+            this.priority = task.priority;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RenderingTask)) {
+                return false;
+            }
+            RenderingTask task = (RenderingTask) obj;
+            return task.page == page
+                    && task.thumbnail == thumbnail
+                    && task.zoomBucket == zoomBucket
+                    && task.bounds.left == bounds.left
+                    && task.bounds.top == bounds.top
+                    && task.bounds.right == bounds.right
+                    && task.bounds.bottom == bounds.bottom;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = page;
+            result = 31 * result + (thumbnail ? 1 : 0);
+            result = 31 * result + zoomBucket;
+            result = 31 * result + Float.floatToIntBits(bounds.left);
+            result = 31 * result + Float.floatToIntBits(bounds.top);
+            result = 31 * result + Float.floatToIntBits(bounds.right);
+            result = 31 * result + Float.floatToIntBits(bounds.bottom);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.RenderingHandler.RenderingTask;
+import com.github.barteksc.pdfviewer.model.RenderingStats;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Blocking priority queue of {@link RenderingTask}s shared by the render workers.
+ * <p>
+ * Tasks are identified by page and page relative bounds. Offering a task that is already
+ * queued updates its priority in place. Each {@link PDFView#loadPages()} opens a new pass,
+ * tasks that were not offered again during the pass left the preload window and are cancelled
+ * by {@link #cancelStale()}. Tasks being rendered are tracked too, a stale one is cancelled mid-render.
+ * @since 10.1.5
+ */
+class RenderingQueue {
+
+    private final TreeSet<RenderingTask> ordered = new TreeSet<>(new TaskComparator());
+
+    private final Map<RenderingTask, RenderingTask> index = new HashMap<>();
+
+    /** Tasks taken by a worker and not finished yet */
+    private final Map<RenderingTask, RenderingTask> inProgress = new HashMap<>();
+
+    private int pass;
+
+    private long sequence;
+
+    private long enqueued;
+    private long reprioritized;
+    private long cancelled;
+    private long executed;
+
+    /**
+     * Start a new pass, every task offered from now on belongs to it
+     */
+    synchronized void beginPass() {
+        pass++;
+    }
+
+    synchronized void offer(RenderingTask task) {
+        RenderingTask running = inProgress.get(task);
+        if (running != null) {
+            if (!running.isCancelled()) {
+                // still wanted, keep it from being cancelled as stale
+                running.pass = pass;
+                return;
+            }
+            // cancelled as stale but wanted again, its render ends without a result
+            inProgress.remove(running);
+        }
+        RenderingTask queued = index.get(task);
+        if (queued != null) {
+            ordered.remove(queued);
+            queued.update(task);
+            queued.pass = pass;
+            ordered.add(queued);
+            reprioritized++;
+            return;
+        }
+        task.pass = pass;
+        task.sequence = sequence++;
+        index.put(task, task);
+        ordered.add(task);
+        enqueued++;
+        notify();
+    }
+
+    /**
+     * Wait for the task with the best priority
+     */
+    synchronized RenderingTask take() throws InterruptedException {
+        while (ordered.isEmpty()) {
+            wait();
+        }
+        RenderingTask task = ordered.pollFirst();
+        index.remove(task);
+        inProgress.put(task, task);
+        executed++;
+        return task;
+    }
+
+    /**
+     * Called by the worker when a taken task is done, rendered or not
+     */
+    synchronized void finish(RenderingTask task) {
+        if (inProgress.get(task) == task) {
+            inProgress.remove(task);
+        }
+    }
+
+    /**
+     * Remove tasks which were not offered during the current pass,
+     * and cancel the render of such tasks already taken by a worker
+     *
+     * @return number of cancelled tasks
+     */
+    synchronized int cancelStale() {
+        int count = 0;
+        for (RenderingTask task : inProgress.values()) {
+            if (task.pass != pass && !task.isCancelled()) {
+                task.cancel();
+                count++;
+            }
+        }
+        Iterator<RenderingTask> it = ordered.iterator();
+        while (it.hasNext()) {
+            RenderingTask task = it.next();
+            if (task.pass != pass) {
+                it.remove();
+                index.remove(task);
+                count++;
+            }
+        }
+        cancelled += count;
+        return count;
+    }
+
+    /**
+     * Cancel the tasks of a page taken by a worker whose bounds intersect the rectangle, and stop
+     * tracking them so an offer of the same part queues a new task
+     */
+    synchronized void cancelRunning(int page, RectF pageRelativeRect) {
+        Iterator<RenderingTask> it = inProgress.values().iterator();
+        while (it.hasNext()) {
+            RenderingTask task = it.next();
+            if (task.page == page && RectF.intersects(task.bounds, pageRelativeRect)) {
+                task.cancel();
+                it.remove();
+                cancelled++;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        for (RenderingTask task : inProgress.values()) {
+            task.cancel();
+        }
+        cancelled += ordered.size();
+        ordered.clear();
+        index.clear();
+    }
+
+    synchronized RenderingStats getStats() {
+        return new RenderingStats(enqueued, reprioritized, cancelled, executed);
+    }
+
+    /**
+     * Thumbnails first, then by priority, then in arrival order
+     */
+    private static final class TaskComparator implements Comparator<RenderingTask> {
+        @Override
+        public int compare(RenderingTask task1, RenderingTask task2) {
+            if (task1.thumbnail != task2.thumbnail) {
+                return task1.thumbnail ? -1 : 1;
+            }
+            int result = Float.compare(task1.priority, task2.priority);
+            if (result != 0) {
+                return result;
+            }
+            return task1.sequence < task2.sequence ? -1 : (task1.sequence == task2.sequence ? 0 : 1);
+        }
+    }
+}
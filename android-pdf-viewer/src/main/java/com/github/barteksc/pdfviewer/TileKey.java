@@ -0,0 +1,96 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+
+/**
+ * Hash key of a rendered part: page, thumbnail flag, zoom bucket and page relative bounds
+ * quantized to 1/65536 of the page. The same bounds can be requested at different zooms,
+ * e.g. a page fitting in a single part, so a part is only found again at the zoom bucket it
+ * was rendered for. Keys are mutable to allow allocation free lookups, a key must not be
+ * changed while it is stored in a map.
+ * @since 10.1.5
+ */
+final class TileKey {
+
+    private static final float QUANTUM = 65536f;
+
+    /** Zoom buckets per doubling of the zoom, a bucket spans about 9% of zoom */
+    private static final int ZOOM_BUCKETS_PER_DOUBLING = 8;
+
+    private int page;
+    private boolean thumbnail;
+    private int zoomBucket;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    TileKey() {
+    }
+
+    TileKey(int page, RectF bounds, int zoomBucket, boolean thumbnail) {
+        set(page, bounds, zoomBucket, thumbnail);
+    }
+
+    /**
+     * Bucket of a zoom, zooms closer than a bucket share the rendered parts
+     */
+    static int zoomBucket(float zoom) {
+        return Math.round((float) (Math.log(zoom) / Math.log(2)) * ZOOM_BUCKETS_PER_DOUBLING);
+    }
+
+    TileKey set(int page, RectF bounds, int zoomBucket, boolean thumbnail) {
+        this.page = page;
+        this.thumbnail = thumbnail;
+        this.zoomBucket = zoomBucket;
+        this.left = Math.round(bounds.left * QUANTUM);
+        this.top = Math.round(bounds.top * QUANTUM);
+        this.right = Math.round(bounds.right * QUANTUM);
+        this.bottom = Math.round(bounds.bottom * QUANTUM);
+        return this;
+    }
+
+    int getPage() {
+        return page;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TileKey)) {
+            return false;
+        }
+        TileKey key = (TileKey) obj;
+        return key.page == page
+                && key.thumbnail == thumbnail
+                && key.zoomBucket == zoomBucket
+                && key.left == left
+                && key.top == top
+                && key.right == right
+                && key.bottom == bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = page;
+        result = 31 * result + (thumbnail ? 1 : 0);
+        result = 31 * result + zoomBucket;
+        result = 31 * result + left;
+        result = 31 * result + top;
+        result = 31 * result + right;
+        result = 31 * result + bottom;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TileKey{" +
+                "page=" + page +
+                ", thumbnail=" + thumbnail +
+                ", zoomBucket=" + zoomBucket +
+                ", left=" + left +
+                ", top=" + top +
+                ", right=" + right +
+                ", bottom=" + bottom +
+                '}';
+    }
+}
@@ -37,6 +37,11 @@ public class Callbacks {
      */
     private OnPageErrorListener onPageErrorListener;
 
+    /**
+     * Call back object to call when a page of a progressively loaded document arrives
+     */
+    private OnPageAvailableListener onPageAvailableListener;
+
     /**
      * Call back object to call when the document is initially rendered
      */
@@ -104,6 +109,16 @@ public class Callbacks {
         return false;
     }
 
+    public void setOnPageAvailable(OnPageAvailableListener onPageAvailableListener) {
+        this.onPageAvailableListener = onPageAvailableListener;
+    }
+
+    public void callOnPageAvailable(int page) {
+        if (onPageAvailableListener != null) {
+            onPageAvailableListener.onPageAvailable(page);
+        }
+    }
+
     public void setOnRender(OnRenderListener onRenderListener) {
         this.onRenderListener = onRenderListener;
     }
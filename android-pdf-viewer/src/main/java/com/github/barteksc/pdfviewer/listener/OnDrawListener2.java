@@ -7,16 +7,33 @@ public abstract class OnDrawListener2 implements OnDrawListener{
 
     private float translateX;
     private float translateY;
+    private float zoom = 1;
 
     public void reportTranslates(float transX, float tranxY){
         this.translateX = transX;
         this.translateY = tranxY;
     }
 
+    /**
+     * @since 10.1.5
+     */
+    public void reportZoom(float zoom){
+        this.zoom = zoom;
+    }
+
     public float getTranslateX() {
         return translateX;
     }
     public float getTranslateY() {
         return translateY;
     }
+
+    /**
+     * get the zoom of the drawn page
+     * @return the zoom
+     * @since 10.1.5
+     */
+    public float getZoom() {
+        return zoom;
+    }
 }
@@ -0,0 +1,29 @@
+/**
+ * Copyright 2017 Bartosz Schiller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.listener;
+
+/**
+ * Reports pages of a progressively loaded document as their data arrives,
+ * see {@link com.github.barteksc.pdfviewer.source.ProgressiveSource}
+ */
+public interface OnPageAvailableListener {
+
+    /**
+     * Called on the UI thread when all data of the page has arrived and it can be rendered
+     * @param page page index
+     */
+    void onPageAvailable(int page);
+}
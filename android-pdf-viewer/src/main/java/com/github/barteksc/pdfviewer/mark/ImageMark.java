@@ -1,10 +1,15 @@
 package com.github.barteksc.pdfviewer.mark;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 /**
  * @since 10.0.3
  */
 public class ImageMark {
+    private static final AtomicLong sNextId = new AtomicLong();
+
+    /** identifies this instance in caches, unlike equals() it does not change with the mark */
+    private final long id = sNextId.getAndIncrement();
     private int pageIndex;
     private float width; //result width
     private float height;
@@ -44,6 +49,10 @@ public class ImageMark {
         return Arrays.hashCode(values);
     }
 
+    long getId() {
+        return this.id;
+    }
+
     public int getPageIndex() {
         return this.pageIndex;
     }
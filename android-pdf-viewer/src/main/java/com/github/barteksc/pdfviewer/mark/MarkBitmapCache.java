@@ -0,0 +1,267 @@
+package com.github.barteksc.pdfviewer.mark;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache of the bitmaps drawn for image marks, keyed by mark id and zoom bucket, with a byte budget.
+ * A zoom bucket covers zooms up to a power of two, its bitmaps are sized for that zoom so they are
+ * at most twice the on-screen size. Missing bitmaps are produced on a background thread, the
+ * closest bucket already decoded is used meanwhile.
+ * <p>
+ * A {@link PdfMarkManager.SampledImageOwner} is asked for bitmaps of the bucket size on the background
+ * thread. A plain {@link PdfMarkManager.ImageOwner} is asked once per bucket on the UI thread, its
+ * bitmap is cached as is when it is drawn at its own size or is not larger than the bucket size,
+ * otherwise it is downsampled on the background thread.
+ * <p>
+ * Bitmaps may be the ones of the image owner, the cache never recycles them.
+ * Used from the UI thread only.
+ * @since 10.1.5
+ */
+class MarkBitmapCache {
+
+    private static final String TAG = MarkBitmapCache.class.getName();
+
+    /** Buckets looked at on each side for a replacement while a bitmap is decoded */
+    private static final int MAX_BUCKET_DISTANCE = 2;
+
+    /** Longest side of a decoded bitmap, protects from huge bitmaps at high zoom */
+    private static final int MAX_BITMAP_SIDE = 2048;
+
+    private static Executor sharedDecodeExecutor;
+
+    private final LruCache<Key, Bitmap> cache;
+
+    /** Decodes not delivered yet, a decode whose key was removed meanwhile is dropped */
+    private final Set<Key> pending = new HashSet<>();
+
+    /** Reused for lookups */
+    private final Key lookupKey = new Key();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final PdfMarkManager.ImageOwner owner;
+
+    private final Runnable onDecoded;
+
+    private final Executor decodeExecutor;
+
+    /** True if bitmaps are drawn at their own size, those of a plain owner are then never downsampled */
+    private boolean drawnAtBitmapSize = true;
+
+    /**
+     * @param onDecoded run on the UI thread when a bitmap was added, may be null
+     */
+    MarkBitmapCache(PdfMarkManager.ImageOwner owner, int maxBytes, Runnable onDecoded) {
+        this(owner, maxBytes, onDecoded, getDecodeExecutor());
+    }
+
+    MarkBitmapCache(PdfMarkManager.ImageOwner owner, int maxBytes, Runnable onDecoded, Executor decodeExecutor) {
+        this.owner = owner;
+        this.onDecoded = onDecoded;
+        this.decodeExecutor = decodeExecutor;
+        this.cache = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return (int) BitmapPool.getBitmapBytes(value);
+            }
+        };
+    }
+
+    private static synchronized Executor getDecodeExecutor() {
+        if (sharedDecodeExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sharedDecodeExecutor = executor;
+        }
+        return sharedDecodeExecutor;
+    }
+
+    /**
+     * Bucket of a zoom, the smallest power of two not below it
+     */
+    static int bucket(float zoom) {
+        return (int) Math.ceil(Math.log(zoom) / Math.log(2));
+    }
+
+    static float bucketZoom(int bucket) {
+        return (float) Math.pow(2, bucket);
+    }
+
+    /**
+     * Get the bitmap of a mark for a zoom bucket, and decode it if it is missing
+     *
+     * @return the bitmap, the one of the closest decoded bucket, or null if none is decoded yet
+     */
+    Bitmap get(ImageMark mark, int bucket) {
+        Bitmap bitmap = cache.get(lookupKey.set(mark, bucket));
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = decode(mark, bucket);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        for (int distance = 1; distance <= MAX_BUCKET_DISTANCE; distance++) {
+            // a sharper bitmap first
+            bitmap = cache.get(lookupKey.set(mark, bucket + distance));
+            if (bitmap == null) {
+                bitmap = cache.get(lookupKey.set(mark, bucket - distance));
+            }
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop the bitmaps of a mark, and its decodes in progress
+     */
+    void remove(ImageMark mark) {
+        List<Key> keys = new ArrayList<>();
+        for (Key key : cache.snapshot().keySet()) {
+            if (key.markId == mark.getId()) {
+                keys.add(key);
+            }
+        }
+        for (Key key : keys) {
+            cache.remove(key);
+        }
+        for (Key key : new ArrayList<>(pending)) {
+            if (key.markId == mark.getId()) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    void clear() {
+        cache.evictAll();
+        pending.clear();
+    }
+
+    /**
+     * Set if bitmaps are drawn at their own size rather than scaled to the mark size at the zoom,
+     * the cached bitmaps are dropped when it changes
+     */
+    void setDrawnAtBitmapSize(boolean drawnAtBitmapSize) {
+        if (this.drawnAtBitmapSize != drawnAtBitmapSize) {
+            this.drawnAtBitmapSize = drawnAtBitmapSize;
+            clear();
+        }
+    }
+
+    /**
+     * Start producing the bitmap of a mark for a bucket
+     *
+     * @return the bitmap if a plain owner gave one which needs no downsampling, it is cached
+     */
+    private Bitmap decode(final ImageMark mark, int bucket) {
+        final Key key = new Key().set(mark, bucket);
+        if (!pending.add(key)) {
+            return null;
+        }
+        float zoom = bucketZoom(bucket);
+        float width = PdfMarkManager.getImageWidth(mark) * zoom;
+        float height = PdfMarkManager.getImageHeight(mark) * zoom;
+        float scale = Math.min(1, MAX_BITMAP_SIDE / Math.max(width, height));
+        final int reqWidth = Math.max(1, Math.round(width * scale));
+        final int reqHeight = Math.max(1, Math.round(height * scale));
+
+        final Bitmap source;
+        if (owner instanceof PdfMarkManager.SampledImageOwner) {
+            source = null;
+        } else {
+            source = owner.getBitmap(mark);
+            if (source == null || drawnAtBitmapSize || !isLarger(source, reqWidth, reqHeight)) {
+                pending.remove(key);
+                if (source != null) {
+                    cache.put(key, source);
+                }
+                return source;
+            }
+        }
+
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                try {
+                    bitmap = source != null
+                            ? Bitmap.createScaledBitmap(source, reqWidth, reqHeight, true)
+                            : load(mark, reqWidth, reqHeight);
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "Cannot decode image mark", e);
+                }
+                final Bitmap result = bitmap;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!pending.remove(key) || result == null) {
+                            return;
+                        }
+                        cache.put(key, result);
+                        if (onDecoded != null) {
+                            onDecoded.run();
+                        }
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Get the bitmap of a sampled owner, downsampled when it is larger than requested
+     */
+    private Bitmap load(ImageMark mark, int reqWidth, int reqHeight) {
+        Bitmap bitmap = ((PdfMarkManager.SampledImageOwner) owner).getBitmap(mark, reqWidth, reqHeight);
+        if (bitmap != null && isLarger(bitmap, reqWidth, reqHeight)) {
+            bitmap = Bitmap.createScaledBitmap(bitmap, reqWidth, reqHeight, true);
+        }
+        return bitmap;
+    }
+
+    private static boolean isLarger(Bitmap bitmap, int width, int height) {
+        return bitmap.getWidth() > width || bitmap.getHeight() > height;
+    }
+
+    private static final class Key {
+        long markId;
+        int bucket;
+
+        Key set(ImageMark mark, int bucket) {
+            this.markId = mark.getId();
+            this.bucket = bucket;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return bucket == key.bucket && markId == key.markId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (markId ^ (markId >>> 32)) + bucket;
+        }
+    }
+}
@@ -2,23 +2,68 @@ package com.github.barteksc.pdfviewer.mark;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.SparseArray;
+import android.view.View;
 
 import com.github.barteksc.pdfviewer.listener.OnDrawListener2;
+import com.github.barteksc.pdfviewer.util.Constants;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Draws image marks over the pages. The bitmaps of the marks are cached by mark and zoom bucket.
+ * A plain {@link ImageOwner} is asked for the bitmap of a mark once per bucket, on the UI thread,
+ * and its bitmap is downsampled on a background thread when the marks scale with the zoom.
+ * The bitmaps of a {@link SampledImageOwner} are obtained on a background thread. A placeholder
+ * is drawn until a bitmap is ready. A mark must not be modified while it is added, remove and add
+ * it again to change its bitmap.
  * @since 10.0.3
  */
 public class PdfMarkManager extends OnDrawListener2 {
 
     private final SparseArray<List<ImageMark>> mImageMarks = new SparseArray<>();
-    private final ImageOwner mImageOwner;
+    private final MarkBitmapCache mBitmapCache;
+    private final Paint mPlaceholderPaint = new Paint();
+    private final RectF mDstRect = new RectF();
+    private boolean mScaleWithZoom;
 
     public PdfMarkManager(ImageOwner imageOwner) {
-        this.mImageOwner = imageOwner;
+        this(imageOwner, null);
+    }
+
+    /**
+     * @param imageOwner the image owner. a {@link SampledImageOwner} is called on a background thread
+     * @param view the view to redraw when a mark bitmap is ready, usually the PDFView. may be null
+     * @since 10.1.5
+     */
+    public PdfMarkManager(ImageOwner imageOwner, final View view) {
+        this.mBitmapCache = new MarkBitmapCache(imageOwner, Constants.Cache.MARK_CACHE_SIZE,
+                view == null ? null : new Runnable() {
+                    @Override
+                    public void run() {
+                        view.invalidate();
+                    }
+                });
+        mPlaceholderPaint.setColor(Color.argb(0x40, 0x80, 0x80, 0x80));
+    }
+
+    /**
+     * draw the marks at their size times the zoom, instead of the bitmap size. default is false.
+     * bitmaps are then cached per zoom bucket, at most twice the drawn size.
+     * @param scaleWithZoom true to scale the marks with the zoom
+     * @since 10.1.5
+     */
+    public void setScaleWithZoom(boolean scaleWithZoom){
+        this.mScaleWithZoom = scaleWithZoom;
+        mBitmapCache.setDrawnAtBitmapSize(!scaleWithZoom);
+    }
+
+    public boolean isScaleWithZoom(){
+        return mScaleWithZoom;
     }
     public boolean hasImageMark(ImageMark mark){
         List<ImageMark> marks = mImageMarks.get(mark.getPageIndex());
@@ -40,13 +85,29 @@ public class PdfMarkManager extends OnDrawListener2 {
         if(marks == null){
             return false;
         }
-        return marks.remove(mark);
+        int index = marks.indexOf(mark);
+        if(index < 0){
+            return false;
+        }
+        // the cache knows the added instance, which may not be the given one
+        ImageMark removed = marks.remove(index);
+        if(!marks.contains(removed)){
+            mBitmapCache.remove(removed);
+        }
+        return true;
     }
     public void clearImageMarks(int pageIndex){
         if(pageIndex < 0){
             mImageMarks.clear();
+            mBitmapCache.clear();
         }else {
+            List<ImageMark> marks = mImageMarks.get(pageIndex);
             mImageMarks.remove(pageIndex);
+            if(marks != null){
+                for (ImageMark mark : marks){
+                    mBitmapCache.remove(mark);
+                }
+            }
         }
     }
     public SparseArray<List<ImageMark>> getImageMarks(){
@@ -56,18 +117,88 @@ public class PdfMarkManager extends OnDrawListener2 {
     public void onLayerDrawn(Canvas canvas, float pageWidth, float pageHeight, int displayedPage) {
         List<ImageMark> marks = mImageMarks.get(displayedPage);
         if(marks != null){
+            int bucket = mScaleWithZoom ? MarkBitmapCache.bucket(getZoom()) : 0;
             for (ImageMark mark: marks){
-                Bitmap bitmap = mImageOwner.getBitmap(mark);
-                onDrawImageMark(canvas, mark, pageWidth, pageHeight, bitmap);
+                Bitmap bitmap = mBitmapCache.get(mark, bucket);
+                if(bitmap != null){
+                    onDrawImageMark(canvas, mark, pageWidth, pageHeight, bitmap);
+                }else {
+                    onDrawPlaceholder(canvas, mark, pageWidth, pageHeight);
+                }
             }
         }
     }
 
+    /**
+     * draw the bitmap of a mark, scaled to the size of the mark at the current zoom if {@link #isScaleWithZoom()}
+     */
     protected void onDrawImageMark(Canvas canvas, ImageMark mark, float pageWidth, float pageHeight, Bitmap bitmap){
-        canvas.drawBitmap(bitmap, mark.getLeft() - getTranslateX(), mark.getTop() - getTranslateY(), null);
+        if(mScaleWithZoom){
+            canvas.drawBitmap(bitmap, null, getDrawRect(mark), null);
+        }else {
+            canvas.drawBitmap(bitmap, mark.getLeft() - getTranslateX(), mark.getTop() - getTranslateY(), null);
+        }
+    }
+
+    /**
+     * draw the mark while its bitmap is decoded
+     * @since 10.1.5
+     */
+    protected void onDrawPlaceholder(Canvas canvas, ImageMark mark, float pageWidth, float pageHeight){
+        canvas.drawRect(getDrawRect(mark), mPlaceholderPaint);
+    }
+
+    /**
+     * get the rect the mark is drawn into, scaled with the zoom if {@link #isScaleWithZoom()}.
+     * the returned rect is reused by the next call.
+     * @param mark the mark
+     * @return the rect
+     * @since 10.1.5
+     */
+    protected RectF getDrawRect(ImageMark mark){
+        float left = mark.getLeft() - getTranslateX();
+        float top = mark.getTop() - getTranslateY();
+        float scale = mScaleWithZoom ? getZoom() : 1;
+        mDstRect.set(left, top, left + getImageWidth(mark) * scale, top + getImageHeight(mark) * scale);
+        return mDstRect;
+    }
+
+    /** width of the unrotated image, the mark size is the rotated one */
+    static float getImageWidth(ImageMark mark){
+        return isQuarterTurn(mark) ? mark.getHeight() : mark.getWidth();
+    }
+
+    static float getImageHeight(ImageMark mark){
+        return isQuarterTurn(mark) ? mark.getWidth() : mark.getHeight();
+    }
+
+    private static boolean isQuarterTurn(ImageMark mark){
+        int rotate = Math.abs((int) mark.getRotate()) % 180;
+        return rotate == 90;
     }
 
     public interface ImageOwner{
+        /**
+         * get the bitmap of a mark. called on the UI thread when the mark is first drawn at a zoom
+         * bucket, the bitmap is cached until the mark is removed. it is not recycled by the cache.
+         */
         Bitmap getBitmap(ImageMark mark);
     }
+
+    /**
+     * an image owner which can produce bitmaps of the requested size, e.g. by decoding with a sample size.
+     * its bitmaps are requested on a background thread and cached, {@link #getBitmap(ImageMark)} is not called.
+     * @since 10.1.5
+     */
+    public interface SampledImageOwner extends ImageOwner{
+        /**
+         * get the bitmap of a mark, called on a background thread. a bitmap larger than
+         * requested is downsampled
+         * @param mark the mark
+         * @param reqWidth the wanted width, the drawn width at the zoom of the cached bitmap
+         * @param reqHeight the wanted height
+         * @return the bitmap, not smaller than requested for best quality
+         */
+        Bitmap getBitmap(ImageMark mark, int reqWidth, int reqHeight);
+    }
 }
@@ -30,13 +30,25 @@ public class PagePart {
 
     private int cacheOrder;
 
+    private int zoomBucket;
+
     public PagePart(int page, Bitmap renderedBitmap, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder) {
+        this(page, renderedBitmap, pageRelativeBounds, thumbnail, cacheOrder, 0);
+    }
+
+    /**
+     * @param zoomBucket bucket of the zoom the part was rendered for, 0 is the bucket of zoom 1
+     * @since 10.1.5
+     */
+    public PagePart(int page, Bitmap renderedBitmap, RectF pageRelativeBounds, boolean thumbnail, int cacheOrder,
+                    int zoomBucket) {
         super();
         this.page = page;
         this.renderedBitmap = renderedBitmap;
         this.pageRelativeBounds = pageRelativeBounds;
         this.thumbnail = thumbnail;
         this.cacheOrder = cacheOrder;
+        this.zoomBucket = zoomBucket;
     }
 
     public int getCacheOrder() {
@@ -59,6 +71,13 @@ public class PagePart {
         return thumbnail;
     }
 
+    /**
+     * @since 10.1.5
+     */
+    public int getZoomBucket() {
+        return zoomBucket;
+    }
+
     public void setCacheOrder(int cacheOrder) {
         this.cacheOrder = cacheOrder;
     }
@@ -0,0 +1,50 @@
+package com.github.barteksc.pdfviewer.model;
+
+/**
+ * Counters of the render task scheduler, accumulated since the document was loaded.
+ * @since 10.1.5
+ */
+public class RenderingStats {
+
+    private final long enqueued;
+    private final long reprioritized;
+    private final long cancelled;
+    private final long executed;
+
+    public RenderingStats(long enqueued, long reprioritized, long cancelled, long executed) {
+        this.enqueued = enqueued;
+        this.reprioritized = reprioritized;
+        this.cancelled = cancelled;
+        this.executed = executed;
+    }
+
+    /** @return number of tasks added to the queue */
+    public long getEnqueued() {
+        return enqueued;
+    }
+
+    /** @return number of times a queued task got a new priority instead of being added again */
+    public long getReprioritized() {
+        return reprioritized;
+    }
+
+    /** @return number of queued tasks dropped before rendering */
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    /** @return number of tasks taken by the render workers */
+    public long getExecuted() {
+        return executed;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderingStats{" +
+                "enqueued=" + enqueued +
+                ", reprioritized=" + reprioritized +
+                ", cancelled=" + cancelled +
+                ", executed=" + executed +
+                '}';
+    }
+}
@@ -17,6 +17,7 @@ package com.github.barteksc.pdfviewer.source;
 
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.os.ParcelFileDescriptor;
 
 import com.github.barteksc.pdfviewer.util.FileUtils;
@@ -24,8 +25,14 @@ import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 
+/**
+ * Document stored in the app assets. Uncompressed assets are read in place from the APK,
+ * compressed ones are copied to the cache dir once and the copy is reused.
+ */
 public class AssetSource implements DocumentSource {
 
     private final String assetName;
@@ -36,6 +43,18 @@ public class AssetSource implements DocumentSource {
 
     @Override
     public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
+        AssetFileDescriptor afd = null;
+        try {
+            afd = context.getAssets().openFd(assetName);
+        } catch (FileNotFoundException e) {
+            // asset is compressed, it has no file range in the APK
+        }
+        if (afd != null) {
+            FileChannel channel = afd.createInputStream().getChannel();
+            return new ChannelSource(channel, afd.getStartOffset(), afd.getLength())
+                    .createDocument(context, core, password);
+        }
+
         File f = FileUtils.fileFromAsset(context, assetName);
         ParcelFileDescriptor pfd = ParcelFileDescriptor.open(f, ParcelFileDescriptor.MODE_READ_ONLY);
         return core.newDocument(pfd, password);
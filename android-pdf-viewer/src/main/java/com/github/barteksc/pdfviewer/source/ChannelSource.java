@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import android.content.Context;
+
+import com.shockwave.pdfium.ChannelReader;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Document read on demand from a channel, it is never loaded into memory.
+ * The channel is closed with the document.
+ */
+public class ChannelSource implements DocumentSource {
+
+    private FileChannel channel;
+    private long offset;
+    private long size;
+
+    public ChannelSource(FileChannel channel) throws IOException {
+        this(channel, 0, channel.size());
+    }
+
+    /**
+     * @param offset position of the document in the channel
+     * @param size   size of the document in bytes
+     */
+    public ChannelSource(FileChannel channel, long offset, long size) {
+        this.channel = channel;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
+        ChannelReader reader = new ChannelReader(channel, offset, size, ChannelReader.DEFAULT_BUFFER_SIZE);
+        try {
+            return core.newDocument(reader, password);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+}
@@ -17,13 +17,21 @@ package com.github.barteksc.pdfviewer.source;
 
 import android.content.Context;
 
-import com.github.barteksc.pdfviewer.util.Util;
+import com.github.barteksc.pdfviewer.util.FileUtils;
 import com.shockwave.pdfium.PdfDocument;
 import com.shockwave.pdfium.PdfiumCore;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
+/**
+ * Document read from a stream. A {@link FileInputStream} is read on demand through its channel,
+ * other streams are copied to a temporary file first, so the document is never held in memory.
+ */
 public class InputStreamSource implements DocumentSource {
 
     private InputStream inputStream;
@@ -34,6 +42,21 @@ public class InputStreamSource implements DocumentSource {
 
     @Override
     public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
-        return core.newDocument(Util.toByteArray(inputStream), password);
+        if (inputStream instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) inputStream).getChannel();
+            long position = channel.position();
+            return new ChannelSource(channel, position, channel.size() - position)
+                    .createDocument(context, core, password);
+        }
+
+        File file = File.createTempFile("pdfview", ".pdf", context.getCacheDir());
+        try {
+            FileUtils.copy(inputStream, file);
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            return new ChannelSource(channel).createDocument(context, core, password);
+        } finally {
+            // the open channel keeps the data readable until the document is closed
+            file.delete();
+        }
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Bartosz Schiller.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.barteksc.pdfviewer.source;
+
+import android.content.Context;
+
+import com.github.barteksc.pdfviewer.util.Constants;
+import com.shockwave.pdfium.ChannelReader;
+import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * Document whose data is still arriving, e.g. a file being downloaded. Loading completes as soon
+ * as the document structure is available, for a linearized document that is the first page,
+ * and other pages become renderable as their data arrives, see
+ * {@link com.github.barteksc.pdfviewer.listener.OnPageAvailableListener}.
+ * <p>
+ * The default reader considers available what the channel holds, override
+ * {@link #createReader()} to track arrived data differently.
+ */
+public class ProgressiveSource implements DocumentSource {
+
+    private File file;
+    private FileChannel channel;
+    private long size;
+
+    /**
+     * @param file file being written
+     * @param size final size of the document in bytes, e.g. the download content length
+     */
+    public ProgressiveSource(File file, long size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * @param channel channel of the document, closed with the document
+     * @param size    final size of the document in bytes
+     */
+    public ProgressiveSource(FileChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    protected ChannelReader createReader() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+        return new ChannelReader(channel, 0, size, ChannelReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public PdfDocument createDocument(Context context, PdfiumCore core, String password) throws IOException {
+        ChannelReader reader = createReader();
+        try {
+            return core.newDocumentProgressive(reader, password, Constants.AVAILABILITY_POLL_INTERVAL);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+}
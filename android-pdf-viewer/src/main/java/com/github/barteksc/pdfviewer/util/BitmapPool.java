@@ -0,0 +1,154 @@
+package com.github.barteksc.pdfviewer.util;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of mutable bitmaps keyed by width, height and config and bounded by bytes.
+ * Bitmaps of evicted page parts are returned here and borrowed again for new renders,
+ * so scrolling does not allocate a new bitmap for every part.
+ * <p>
+ * Thread-safe.
+ * @since 10.1.5
+ */
+public class BitmapPool {
+
+    private final long maxBytes;
+
+    /** Buckets of free bitmaps, there are only a few distinct part sizes so a list is enough */
+    private final List<Bucket> buckets = new ArrayList<>();
+
+    /** Free bitmaps in release order, the oldest is evicted first */
+    private final ArrayDeque<Bitmap> releaseOrder = new ArrayDeque<>();
+
+    private long currentBytes;
+
+    private long hits;
+    private long misses;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Borrow a bitmap from the pool, or create a new one if none matches. The content of a
+     * pooled bitmap is undefined, erase it before use.
+     *
+     * @throws IllegalArgumentException if width or height are not positive
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            Bucket bucket = findBucket(width, height, config);
+            if (bucket != null && !bucket.bitmaps.isEmpty()) {
+                Bitmap bitmap = bucket.bitmaps.pollLast();
+                releaseOrder.remove(bitmap);
+                currentBytes -= getBitmapBytes(bitmap);
+                hits++;
+                return bitmap;
+            }
+            misses++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Give a bitmap back to the pool. It must not be used by the caller afterwards.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        long bytes = getBitmapBytes(bitmap);
+        if (!bitmap.isMutable() || bytes > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            Bucket bucket = findBucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            if (bucket == null) {
+                bucket = new Bucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+                buckets.add(bucket);
+            }
+            bucket.bitmaps.addLast(bitmap);
+            releaseOrder.addLast(bitmap);
+            currentBytes += bytes;
+            trimToSize(maxBytes);
+        }
+    }
+
+    /**
+     * Recycle every pooled bitmap
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+        buckets.clear();
+    }
+
+    private void trimToSize(long size) {
+        while (currentBytes > size && !releaseOrder.isEmpty()) {
+            Bitmap bitmap = releaseOrder.pollFirst();
+            Bucket bucket = findBucket(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            if (bucket != null) {
+                bucket.bitmaps.remove(bitmap);
+            }
+            currentBytes -= getBitmapBytes(bitmap);
+            bitmap.recycle();
+        }
+    }
+
+    private Bucket findBucket(int width, int height, Bitmap.Config config) {
+        for (int i = 0, size = buckets.size(); i < size; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.width == width && bucket.height == height && bucket.config == config) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    /** @return number of {@link #acquire(int, int, Bitmap.Config)} calls served from the pool */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return number of {@link #acquire(int, int, Bitmap.Config)} calls which created a new bitmap */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** @return bytes held by pooled bitmaps */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return memory used by the bitmap pixels
+     */
+    public static long getBitmapBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static final class Bucket {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+        final ArrayDeque<Bitmap> bitmaps = new ArrayDeque<>();
+
+        Bucket(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+    }
+}
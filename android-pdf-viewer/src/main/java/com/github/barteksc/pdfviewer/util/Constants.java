@@ -32,12 +32,45 @@ public class Constants {
     /** Part of document above and below screen that should be preloaded, in dp */
     public static int PRELOAD_OFFSET = 20;
 
+    /**
+     * Number of threads rendering page parts (default 2).
+     * Pdfium renders one part at a time, across all documents, additional threads prepare bitmaps meanwhile
+     */
+    public static int RENDER_THREADS = 2;
+
+    /**
+     * Time in ms after which a slow part shows what is rendered so far, repeated each interval
+     * until it is complete (default 300). 0 disables partial results
+     */
+    public static long RENDER_PROGRESS_INTERVAL = 300;
+
+    /**
+     * Time in ms between two checks for newly arrived data of a progressively loaded
+     * document (default 250)
+     */
+    public static long AVAILABILITY_POLL_INTERVAL = 250;
+
+    /**
+     * Pages out of the screen checked for arrived data at each poll of a progressively loaded
+     * document, visible pages are always checked (default 16)
+     */
+    public static int AVAILABILITY_POLL_PAGES = 16;
+
     public static class Cache {
 
-        /** The size of the cache (number of bitmaps kept) */
-        public static int CACHE_SIZE = 120;
+        /**
+         * Part of the app memory class used for rendered bitmaps when no cache size is configured
+         * (default 0.125). See {@link android.app.ActivityManager#getMemoryClass()}
+         */
+        public static float CACHE_MEMORY_RATIO = 0.125f;
 
         public static int THUMBNAILS_CACHE_SIZE = 8;
+
+        /** Maximum bytes of free bitmaps kept for reuse by new renders (default 4MB) */
+        public static long BITMAP_POOL_SIZE = 4 * 1024 * 1024;
+
+        /** Maximum bytes of decoded image mark bitmaps, see PdfMarkManager (default 8MB) */
+        public static int MARK_CACHE_SIZE = 8 * 1024 * 1024;
     }
 
     public static class Pinch {
@@ -16,6 +16,7 @@
 package com.github.barteksc.pdfviewer.util;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -29,21 +30,57 @@ public class FileUtils {
         // Prevents instantiation
     }
 
+    /**
+     * Copy an asset to the cache dir. A copy left by a previous call is reused while it has the
+     * asset length and is newer than the last app update, which is when assets can change.
+     */
     public static File fileFromAsset(Context context, String assetName) throws IOException {
         File outFile = new File(context.getCacheDir(), assetName + "-pdfview.pdf");
         if (assetName.contains("/")) {
             outFile.getParentFile().mkdirs();
         }
-        copy(context.getAssets().open(assetName), outFile);
+        InputStream inputStream = context.getAssets().open(assetName);
+        if (outFile.length() == inputStream.available()
+                && outFile.lastModified() > getLastUpdateTime(context)) {
+            inputStream.close();
+            return outFile;
+        }
+        // copy to a temporary file of the same dir first, unique so concurrent copies do not mix,
+        // then rename it so an interrupted copy is never reused
+        File tmpFile;
+        try {
+            tmpFile = File.createTempFile(outFile.getName(), ".tmp", outFile.getParentFile());
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+        try {
+            copy(inputStream, tmpFile);
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        if (!tmpFile.renameTo(outFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename " + tmpFile + " to " + outFile);
+        }
         return outFile;
     }
 
+    private static long getLastUpdateTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
     public static void copy(InputStream inputStream, File output) throws IOException {
         OutputStream outputStream = null;
         try {
             outputStream = new FileOutputStream(output);
             int read = 0;
-            byte[] bytes = new byte[1024];
+            byte[] bytes = new byte[64 * 1024];
             while ((read = inputStream.read(bytes)) != -1) {
                 outputStream.write(bytes, 0, read);
             }
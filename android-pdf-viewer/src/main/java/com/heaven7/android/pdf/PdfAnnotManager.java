@@ -1,9 +1,12 @@
 package com.heaven7.android.pdf;
 
 import android.graphics.Bitmap;
+import android.os.Process;
 import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import com.shockwave.pdfium.PdfDocument;
+import com.shockwave.pdfium.PdfiumCore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -17,6 +20,10 @@ public final class PdfAnnotManager{
 
     private final PdfDocument document;
     private final SparseArray<List<AnnotPart>> mPageAnnoMap = new SparseArray<>();
+    /** pages whose annotations were read into mPageAnnoMap */
+    private final SparseBooleanArray mScannedPages = new SparseBooleanArray();
+    private volatile boolean mScanOnPageOpen;
+    private Thread mPrefetchThread;
 
     public PdfAnnotManager(PdfDocument docPtr) {
         this.document = docPtr;
@@ -26,23 +33,148 @@ public final class PdfAnnotManager{
         return document;
     }
     /**
-     * read annotations from pdf. this often called first.
-     * currently only support image.
+     * read annotations of all pages from pdf. currently only support image.
+     * pages are read one by one, prefer {@link #readAnnots(int)} or {@link #startPrefetch()} for large documents.
      * @since 10.1.2
      */
     public void readAnnots(){
-        NativeCallback cb = new NativeCallback() {
+        int count;
+        synchronized (document.getLock()) {
+            if(document.getNativePtr() == 0){
+                return;
+            }
+            count = nGetPageCount(document.getNativePtr());
+        }
+        for (int i = 0 ; i < count ; i ++){
+            readAnnots(i);
+        }
+    }
+
+    /**
+     * read annotations of one page, once. later calls return immediately.
+     * @param pageIndex the page index
+     * @since 10.1.5
+     */
+    public void readAnnots(int pageIndex){
+        synchronized (document.getLock()) {
+            // closed document
+            if(document.getNativePtr() == 0 || mScannedPages.get(pageIndex, false)){
+                return;
+            }
+            NativeCallback callback = new NativeCallback() {
+                @Override
+                public void onGotImageAnnotation(int pageIndex, long annoPtr, long imgPtr) {
+                    List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+                    if(parts == null){
+                        parts = new ArrayList<>();
+                        mPageAnnoMap.put(pageIndex, parts);
+                    }
+                    // annotations added before the page was read are known already
+                    for (AnnotPart part : parts){
+                        if(part.imgPtr == imgPtr){
+                            return;
+                        }
+                    }
+                    parts.add(new AnnotPart(annoPtr, imgPtr));
+                }
+            };
+            // reading loads the page, which uses pdfium's shared font state
+            synchronized (PdfiumCore.getGlobalLock()) {
+                nReadPage(document.getNativePtr(), pageIndex, callback);
+            }
+            mScannedPages.put(pageIndex, true);
+        }
+    }
+
+    /**
+     * get the image annotations of a page, reading them first if needed.
+     * @param pageIndex the page index
+     * @return the annot ptrs
+     * @since 10.1.5
+     */
+    public long[] getAnnots(int pageIndex){
+        synchronized (document.getLock()) {
+            if(document.getNativePtr() == 0){
+                return new long[0];
+            }
+            readAnnots(pageIndex);
+            List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+            if(parts == null){
+                return new long[0];
+            }
+            long[] result = new long[parts.size()];
+            for (int i = 0 ; i < result.length ; i ++){
+                result[i] = parts.get(i).annoPtr;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * read the annotations of each page when it is first opened for rendering. default is false.
+     * @param scanOnPageOpen true to read on page open
+     * @since 10.1.5
+     */
+    public void setScanOnPageOpen(boolean scanOnPageOpen){
+        this.mScanOnPageOpen = scanOnPageOpen;
+    }
+
+    public boolean isScanOnPageOpen(){
+        return mScanOnPageOpen;
+    }
+
+    /**
+     * read the annotations of all pages in page order on a low priority background thread.
+     * the document lock is taken per page, so rendering goes on meanwhile.
+     * @since 10.1.5
+     */
+    public synchronized void startPrefetch(){
+        if(mPrefetchThread != null){
+            return;
+        }
+        mPrefetchThread = new Thread("PDF annotation prefetch") {
             @Override
-            public void onGotImageAnnotation(int pageIndex, long annoPtr, long imgPtr) {
-                List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
-                if(parts == null){
-                    parts = new ArrayList<>();
-                    mPageAnnoMap.put(pageIndex, parts);
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                try {
+                    prefetch(this);
+                } finally {
+                    onPrefetchEnd(this);
                 }
-                parts.add(new AnnotPart(annoPtr, imgPtr));
             }
         };
-        nReadAll(document.getNativePtr(), cb);
+        mPrefetchThread.start();
+    }
+
+    private void prefetch(Thread thread){
+        int count;
+        synchronized (document.getLock()) {
+            if(document.getNativePtr() == 0){
+                return;
+            }
+            count = nGetPageCount(document.getNativePtr());
+        }
+        for (int i = 0 ; i < count && !thread.isInterrupted() ; i ++){
+            readAnnots(i);
+        }
+    }
+
+    /** a finished prefetch can be started again */
+    private synchronized void onPrefetchEnd(Thread thread){
+        if(mPrefetchThread == thread){
+            mPrefetchThread = null;
+        }
+    }
+
+    /**
+     * stop the prefetch started by {@link #startPrefetch()}. pages read so far stay cached.
+     * @since 10.1.5
+     */
+    public synchronized void stopPrefetch(){
+        if(mPrefetchThread != null){
+            mPrefetchThread.interrupt();
+            mPrefetchThread = null;
+        }
     }
     /**
      * add image to pdf. bitmap's with and height should be the times of @width @height.
@@ -68,7 +200,7 @@ public final class PdfAnnotManager{
      * @param topAsBottom use top as bottom. default is true. because pdf use left-bottom
      * @return the annot ptr.
      */
-    public synchronized long addImage(int pageIndex, Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom){
+    public long addImage(int pageIndex, Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom){
         return addAnnot(pageIndex, bitmap, left, top, width, height, topAsBottom);
     }
     /**
@@ -83,20 +215,37 @@ public final class PdfAnnotManager{
      * @return the annot ptr.
      * @since 10.1.2
      */
-    public synchronized long addAnnot(int pageIndex, Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom){
-        List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
-        if(parts == null){
-            parts = new ArrayList<>();
-            mPageAnnoMap.put(pageIndex, parts);
-        }
-        long annot = nCreateAnnot(document.getNativePtr(), pageIndex);
-        long imgPtr = nAddImage(document.getNativePtr(), pageIndex, annot, bitmap, left, top, width, height, topAsBottom);
-        if(imgPtr != 0){
-            parts.add(new AnnotPart(annot, imgPtr));
+    public long addAnnot(int pageIndex, Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom){
+        synchronized (document.getLock()) {
+            List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+            if(parts == null){
+                parts = new ArrayList<>();
+                mPageAnnoMap.put(pageIndex, parts);
+            }
+            long annot;
+            long imgPtr;
+            synchronized (PdfiumCore.getGlobalLock()) {
+                annot = nCreateAnnot(document.getNativePtr(), pageIndex);
+                imgPtr = nAddImage(document.getNativePtr(), pageIndex, annot, bitmap, left, top, width, height, topAsBottom);
+            }
+            if(imgPtr != 0){
+                parts.add(new AnnotPart(annot, imgPtr));
+            }
+            return annot;
         }
-        return annot;
     }
-    public synchronized boolean removeImage(int pageIndex, long annotPtr){
+    /**
+     * start a batch of annotation changes on one page. nothing is applied before {@link Batch#commit()},
+     * which applies all of them in a single native call.
+     * @param pageIndex the page index
+     * @return the batch
+     * @since 10.1.5
+     */
+    public Batch beginBatch(int pageIndex){
+        return new Batch(pageIndex);
+    }
+
+    public boolean removeImage(int pageIndex, long annotPtr){
         return removeAnnot(pageIndex, annotPtr);
     }
 
@@ -107,23 +256,27 @@ public final class PdfAnnotManager{
      * @return true if success
      * @since 10.1.2
      */
-    public synchronized boolean removeAnnot(int pageIndex, long annotPtr){
-        List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
-        if(parts == null){
-            return false;
-        }
-        AnnotPart old = null;
-        for (AnnotPart part: parts){
-            if(part.annoPtr == annotPtr){
-                old = part;
-                break;
+    public boolean removeAnnot(int pageIndex, long annotPtr){
+        synchronized (document.getLock()) {
+            List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+            if(parts == null){
+                return false;
             }
+            AnnotPart old = null;
+            for (AnnotPart part: parts){
+                if(part.annoPtr == annotPtr){
+                    old = part;
+                    break;
+                }
+            }
+            if(old != null){
+                parts.remove(old);
+                synchronized (PdfiumCore.getGlobalLock()) {
+                    return nRemoveAnnot(document.getNativePtr(), pageIndex, old.annoPtr);
+                }
+            }
+            return false;
         }
-        if(old != null){
-            parts.remove(old);
-            return nRemoveAnnot(document.getNativePtr(), pageIndex, old.annoPtr);
-        }
-        return false;
     }
 
     /**
@@ -131,13 +284,17 @@ public final class PdfAnnotManager{
      * @param pageIndex the page index
      * @since 10.1.2
      */
-    public synchronized void clearAnnots(int pageIndex){
-        List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
-        if(parts != null){
-            for (AnnotPart part: parts){
-                nRemoveAnnot(document.getNativePtr(), pageIndex, part.annoPtr);
+    public void clearAnnots(int pageIndex){
+        synchronized (document.getLock()) {
+            List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+            if(parts != null){
+                synchronized (PdfiumCore.getGlobalLock()) {
+                    for (AnnotPart part: parts){
+                        nRemoveAnnot(document.getNativePtr(), pageIndex, part.annoPtr);
+                    }
+                }
+                mPageAnnoMap.remove(pageIndex);
             }
-            mPageAnnoMap.remove(pageIndex);
         }
     }
 
@@ -145,26 +302,39 @@ public final class PdfAnnotManager{
      * clear all images for target pdf
      * @since 10.1.2
      */
-    public synchronized void clearAnnots(){
-        int size = mPageAnnoMap.size();
-        for (int i = 0 ; i < size ; i ++){
-            int pageIndex = mPageAnnoMap.keyAt(i);
-            List<AnnotPart> parts = mPageAnnoMap.valueAt(i);
-            if(parts != null){
-                for (AnnotPart part: parts){
-                    nRemoveAnnot(document.getNativePtr(), pageIndex, part.annoPtr);
+    public void clearAnnots(){
+        synchronized (document.getLock()) {
+            int size = mPageAnnoMap.size();
+            for (int i = 0 ; i < size ; i ++){
+                int pageIndex = mPageAnnoMap.keyAt(i);
+                List<AnnotPart> parts = mPageAnnoMap.valueAt(i);
+                if(parts != null){
+                    synchronized (PdfiumCore.getGlobalLock()) {
+                        for (AnnotPart part: parts){
+                            nRemoveAnnot(document.getNativePtr(), pageIndex, part.annoPtr);
+                        }
+                    }
                 }
             }
+            mPageAnnoMap.clear();
         }
-        mPageAnnoMap.clear();
     }
 
     /**
      * clear annotations lightly. that means: never clear the pdf's.
+     * the native annotation handles are closed, and their pages too.
      * @since 10.1.2
      */
-    public synchronized void clearAnnotsLightly(){
-        mPageAnnoMap.clear();
+    public void clearAnnotsLightly(){
+        synchronized (document.getLock()) {
+            mPageAnnoMap.clear();
+            mScannedPages.clear();
+            if(document.getNativePtr() != 0){
+                synchronized (PdfiumCore.getGlobalLock()) {
+                    nCloseAnnots(document.getNativePtr(), -1);
+                }
+            }
+        }
     }
 
     private static native boolean nRemoveAnnot(long docPtr, int pageIndex, long annoPtr);
@@ -174,7 +344,120 @@ public final class PdfAnnotManager{
     //add an image to annot and return image object. topAsBottom default is true. because pdf use left-bottom.
     private static native long nAddImage(long docPtr, int pageIndex, long annoPtr, Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom);
 
-    private static native void nReadAll(long docPtr, NativeCallback cb);
+    private static native long[] nApplyBatch(long docPtr, int pageIndex, long[] removed, Bitmap[] bitmaps,
+                                             float[] positions, int[] sizes, boolean[] topAsBottom);
+
+    private static native void nReadPage(long docPtr, int pageIndex, NativeCallback cb);
+
+    private static native int nGetPageCount(long docPtr);
+    //close the annotation handles of a page, or of all pages when pageIndex is negative
+    private static native void nCloseAnnots(long docPtr, int pageIndex);
+    /**
+     * annotation changes on one page, applied together by {@link #commit()}.
+     * the page is loaded once, removals are applied first, and each added image
+     * generates its annotation appearance once. the page content is not rewritten.
+     * @since 10.1.5
+     */
+    public final class Batch{
+        private final int pageIndex;
+        private final List<Long> removed = new ArrayList<>();
+        private final List<Bitmap> bitmaps = new ArrayList<>();
+        private final List<float[]> positions = new ArrayList<>();
+        private final List<int[]> sizes = new ArrayList<>();
+        private final List<Boolean> topAsBottom = new ArrayList<>();
+        private boolean committed;
+
+        private Batch(int pageIndex) {
+            this.pageIndex = pageIndex;
+        }
+
+        public Batch addImage(Bitmap bitmap, float left, float top, int width, int height){
+            return addImage(bitmap, left, top, width, height, true);
+        }
+
+        /**
+         * add an image annotation, see {@link PdfAnnotManager#addAnnot(int, Bitmap, float, float, int, int, boolean)}
+         */
+        public Batch addImage(Bitmap bitmap, float left, float top, int width, int height, boolean topAsBottom){
+            checkNotCommitted();
+            bitmaps.add(bitmap);
+            positions.add(new float[]{left, top});
+            sizes.add(new int[]{width, height});
+            this.topAsBottom.add(topAsBottom);
+            return this;
+        }
+
+        /**
+         * remove an annotation of this page
+         * @param annotPtr the annot ptr
+         */
+        public Batch removeAnnot(long annotPtr){
+            checkNotCommitted();
+            removed.add(annotPtr);
+            return this;
+        }
+
+        /**
+         * apply the changes
+         * @return the annot ptrs of the added images in order of addition, 0 for a failed one
+         */
+        public long[] commit(){
+            checkNotCommitted();
+            committed = true;
+            int count = bitmaps.size();
+            long[] removedPtrs = new long[removed.size()];
+            for (int i = 0 ; i < removedPtrs.length ; i ++){
+                removedPtrs[i] = removed.get(i);
+            }
+            float[] positionArray = new float[count * 2];
+            int[] sizeArray = new int[count * 2];
+            boolean[] topAsBottomArray = new boolean[count];
+            for (int i = 0 ; i < count ; i ++){
+                positionArray[i * 2] = positions.get(i)[0];
+                positionArray[i * 2 + 1] = positions.get(i)[1];
+                sizeArray[i * 2] = sizes.get(i)[0];
+                sizeArray[i * 2 + 1] = sizes.get(i)[1];
+                topAsBottomArray[i] = topAsBottom.get(i);
+            }
+
+            long[] annots = new long[count];
+            synchronized (document.getLock()) {
+                long[] pairs;
+                synchronized (PdfiumCore.getGlobalLock()) {
+                    pairs = nApplyBatch(document.getNativePtr(), pageIndex, removedPtrs,
+                            bitmaps.toArray(new Bitmap[count]), positionArray, sizeArray, topAsBottomArray);
+                }
+                List<AnnotPart> parts = mPageAnnoMap.get(pageIndex);
+                if(parts == null){
+                    parts = new ArrayList<>();
+                    mPageAnnoMap.put(pageIndex, parts);
+                }
+                for (long ptr : removedPtrs){
+                    for (int i = parts.size() - 1 ; i >= 0 ; i --){
+                        if(parts.get(i).annoPtr == ptr){
+                            parts.remove(i);
+                        }
+                    }
+                }
+                if(pairs != null){
+                    for (int i = 0 ; i < count ; i ++){
+                        annots[i] = pairs[i * 2];
+                        if(pairs[i * 2 + 1] != 0){
+                            parts.add(new AnnotPart(pairs[i * 2], pairs[i * 2 + 1]));
+                        }
+                    }
+                }
+            }
+            return annots;
+        }
+
+        private void checkNotCommitted(){
+            if(committed){
+                throw new IllegalStateException("batch already committed");
+            }
+        }
+    }
+
     //one annot -> one image
     private static class AnnotPart{
         private long annoPtr;
@@ -0,0 +1,111 @@
+package com.shockwave.pdfium;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Supplies document data to pdfium from a {@link FileChannel}, so the document does not
+ * have to be loaded into memory. Reads go through a direct read-ahead buffer which the native
+ * code copies from, memory use is the buffer size whatever the document size.
+ * <p>
+ * A reader exposes a range of the channel, which allows opening a document stored inside
+ * another file. It is used by the thread which holds the document lock only.
+ * @since 10.1.5
+ */
+public class ChannelReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long size;
+
+    /** Read-ahead buffer, the native code reads it directly */
+    /*package*/ final ByteBuffer buffer;
+
+    /** Position of the buffer content relative to {@link #offset}, -1 when empty */
+    private long bufferPosition = -1;
+
+    public ChannelReader(FileChannel channel) throws IOException {
+        this(channel, 0, channel.size(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel    channel to read, closed by {@link #close()}
+     * @param offset     position of the document in the channel
+     * @param size       size of the document in bytes
+     * @param bufferSize size of the read-ahead buffer
+     */
+    public ChannelReader(FileChannel channel, long offset, long size, int bufferSize) {
+        if (offset < 0 || size < 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid range or buffer size");
+        }
+        this.channel = channel;
+        this.offset = offset;
+        this.size = size;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Number of bytes from the document start which can be read now. By default this is what
+     * the channel holds, so a file still being written, e.g. a download, is read as it grows.
+     * Used by documents opened with {@link PdfiumCore#newDocumentProgressive(ChannelReader, String, long)}.
+     */
+    protected long getAvailableSize() throws IOException {
+        return Math.min(size, channel.size() - offset);
+    }
+
+    /**
+     * Called by the native code to check whether a range can be read yet
+     */
+    /*package*/ boolean isAvailable(long position, long length) throws IOException {
+        return position + length <= getAvailableSize();
+    }
+
+    /**
+     * Called by the native code: make {@link #buffer} contain the given range.
+     *
+     * @param position position relative to the document start
+     * @param length   number of bytes, not more than the buffer capacity
+     * @return offset of position in the buffer, -1 if the range is past the end of the document
+     */
+    /*package*/ int fill(long position, int length) throws IOException {
+        if (position < 0 || length > buffer.capacity() || position + length > size) {
+            return -1;
+        }
+        if (bufferPosition >= 0 && position >= bufferPosition
+                && position + length <= bufferPosition + buffer.limit()) {
+            return (int) (position - bufferPosition);
+        }
+
+        bufferPosition = -1;
+        buffer.clear();
+        long remaining = size - position;
+        if (remaining < buffer.capacity()) {
+            buffer.limit((int) remaining);
+        }
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        if (buffer.limit() < length) {
+            return -1;
+        }
+        bufferPosition = position;
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
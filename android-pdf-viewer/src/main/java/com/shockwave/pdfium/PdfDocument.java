@@ -5,10 +5,12 @@ import android.os.ParcelFileDescriptor;
 
 import com.heaven7.android.pdf.INativeOwner;
 
+import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 public class PdfDocument implements INativeOwner {
 
@@ -108,11 +110,85 @@ public class PdfDocument implements INativeOwner {
     /*package*/ long mNativeDocPtr;
     /*package*/ ParcelFileDescriptor parcelFileDescriptor;
 
-    /*package*/ final Map<Integer, Long> mNativePagesPtr = new HashMap<>();
+    /** Data source read lazily by pdfium, closed with the document */
+    /*package*/ Closeable source;
 
+    /** Default number of native page handles kept open, see {@link PdfiumCore#setOpenPagesLimit(PdfDocument, int)} */
+    public static final int DEFAULT_OPEN_PAGES_LIMIT = 16;
+
+    /** Open native pages in access order, the eldest is closed first when over {@link #openPagesLimit} */
+    /*package*/ final LinkedHashMap<Integer, Long> mNativePagesPtr = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Pages opened at least once, they are reopened on demand after being closed by the LRU */
+    /*package*/ final Set<Integer> mLoadedPages = new HashSet<>();
+
+    /*package*/ int openPagesLimit = DEFAULT_OPEN_PAGES_LIMIT;
+
+    /** True if opened before all data was available, pages must be checked before use */
+    /*package*/ boolean progressive;
+
+    /** Pages known to be fully available, availability never goes back */
+    /*package*/ final Set<Integer> mAvailablePages = new HashSet<>();
+
+    /*package*/ long pageOpenCount;
+    /*package*/ long pageCloseCount;
+
+    /** Serializes native calls on this document, pdfium is not thread-safe per document */
+    /*package*/ final Object lock = new Object();
+
+    /**
+     * @return true if the page was opened, its native handle may have been closed since and is
+     * reopened when needed
+     */
     public boolean hasPage(int index) {
-        return mNativePagesPtr.containsKey(index);
+        synchronized (lock) {
+            return mLoadedPages.contains(index);
+        }
+    }
+
+    /** @return number of native page handles currently open */
+    public int getOpenPageCount() {
+        synchronized (lock) {
+            return mNativePagesPtr.size();
+        }
     }
+
+    /** @return number of native pages opened since the document was created, reopens included */
+    public long getPageOpenCount() {
+        synchronized (lock) {
+            return pageOpenCount;
+        }
+    }
+
+    /** @return number of native pages closed since the document was created */
+    public long getPageCloseCount() {
+        synchronized (lock) {
+            return pageCloseCount;
+        }
+    }
+
+    /**
+     * @return true if the document was opened with
+     * {@link PdfiumCore#newDocumentProgressive(ChannelReader, String, long)}
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public int getOpenPagesLimit() {
+        synchronized (lock) {
+            return openPagesLimit;
+        }
+    }
+    /**
+     * Lock held by {@link PdfiumCore} around every native call on this document. Code calling
+     * native methods on the document directly must hold it too.
+     * @since 10.1.5
+     */
+    public Object getLock() {
+        return lock;
+    }
+
     public long getNativePtr(){
         return mNativeDocPtr;
     }
@@ -2,6 +2,7 @@ package com.shockwave.pdfium;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -14,15 +15,29 @@ import com.shockwave.pdfium.util.Size;
 
 import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public final class PdfiumCore {
     private static final String TAG = PdfiumCore.class.getName();
     private static final Class FD_CLASS = FileDescriptor.class;
     private static final String FD_FIELD_NAME = "descriptor";
 
+    /** Availability results of fpdf_dataavail.h */
+    private static final int DATA_ERROR = -1;
+    private static final int DATA_AVAIL = 1;
+
+    /** Save flags of fpdf_save.h */
+    public static final int SAVE_INCREMENTAL = 1;
+    public static final int SAVE_NO_INCREMENTAL = 2;
+    public static final int SAVE_REMOVE_SECURITY = 3;
+
     static {
         System.loadLibrary("c++_shared");
         System.loadLibrary("pdfium");
@@ -30,10 +45,55 @@ public final class PdfiumCore {
     }
     //return object ptr
     public long addImage(PdfDocument doc, int pageIndex, Bitmap bitmap, float left, float top, int width, int height){
-        return nInsertImage(doc.mNativeDocPtr, pageIndex, bitmap, left, top, width, height);
+        synchronized (doc.lock) {
+            synchronized (lock) {
+                return nInsertImage(doc.mNativeDocPtr, pageIndex, bitmap, left, top, width, height);
+            }
+        }
     }
     public void savePdf(PdfDocument doc, String path, int flags){
-        nSavePdf(doc.mNativeDocPtr, path, flags);
+        synchronized (doc.lock) {
+            nSavePdf(doc.mNativeDocPtr, path, flags);
+        }
+    }
+
+    /**
+     * Write a copy of the document to a stream. The stream is not closed.
+     *
+     * @param flags   0 or one of {@link #SAVE_INCREMENTAL}, {@link #SAVE_NO_INCREMENTAL},
+     *                {@link #SAVE_REMOVE_SECURITY}
+     * @param control cancels the save and receives progress, may be null
+     * @return true if the document was fully written, false if the save was cancelled
+     * @throws IOException if writing failed
+     * @since 10.1.5
+     */
+    public boolean saveAsCopy(PdfDocument doc, OutputStream out, int flags, SaveControl control)
+            throws IOException {
+        synchronized (doc.lock) {
+            return nativeSaveToStream(doc.mNativeDocPtr, out, flags, control);
+        }
+    }
+
+    /**
+     * Append the changes made since the document was opened to the file it was opened from.
+     * Only the incremental update is written, saving a large document after a small edit writes
+     * a few kilobytes. Saving again replaces the previously appended update, which the new one
+     * includes, and a cancelled or failed save truncates the file back to its original content.
+     * <p>
+     * The file must still start with the bytes the document was opened from, the document keeps
+     * reading them.
+     *
+     * @param original the opened file, in read-write mode
+     * @param control  cancels the save and receives progress, may be null
+     * @return true if the update was fully written, false if the save was cancelled
+     * @throws IOException if the file is not the opened one or writing failed
+     * @since 10.1.5
+     */
+    public boolean saveIncremental(PdfDocument doc, ParcelFileDescriptor original, SaveControl control)
+            throws IOException {
+        synchronized (doc.lock) {
+            return nativeSaveIncremental(doc.mNativeDocPtr, original.getFd(), control);
+        }
     }
 
     /**
@@ -44,11 +104,20 @@ public final class PdfiumCore {
      * @since 10.1.4
      */
     public int getPageRotation(PdfDocument doc, int pageIndex){
-        return nGetPageRotation(doc.mNativeDocPtr, pageIndex);
+        synchronized (doc.lock) {
+            synchronized (lock) {
+                return nGetPageRotation(doc.mNativeDocPtr, pageIndex);
+            }
+        }
     }
     private static native int nGetPageRotation(long docPtr, int pageIndex);
     private native void nSavePdf(long docPtr, String path, int flags);
 
+    private native boolean nativeSaveToStream(long docPtr, OutputStream out, int flags, SaveControl control)
+            throws IOException;
+
+    private native boolean nativeSaveIncremental(long docPtr, int fd, SaveControl control) throws IOException;
+
     //add a image to pdf
     private native long nInsertImage(long docPtr, int pageIndex, Bitmap bitmap, float left, float top, int width, int height);
 
@@ -56,6 +125,18 @@ public final class PdfiumCore {
 
     private native long nativeOpenMemDocument(byte[] data, String password);
 
+    private native long nativeOpenBufferDocument(ByteBuffer buffer, int offset, int length, String password);
+
+    private native long nativeCreateAvail(ChannelReader reader, ByteBuffer buffer, long size);
+
+    private native int nativeIsDocAvail(long docPtr);
+
+    private native int nativeIsPageAvail(long docPtr, int pageIndex);
+
+    private native void nativeLoadAvailDocument(long docPtr, String password);
+
+    private native long nativeOpenReaderDocument(ChannelReader reader, ByteBuffer buffer, long size, String password);
+
     private native void nativeCloseDocument(long docPtr);
 
     private native int nativeGetPageCount(long docPtr);
@@ -88,6 +169,12 @@ public final class PdfiumCore {
                                                int drawSizeHor, int drawSizeVer,
                                                boolean renderAnnot);
 
+    private native boolean nativeRenderPageBitmapProgressive(long pagePtr, Bitmap bitmap,
+                                                             int startX, int startY,
+                                                             int drawSizeHor, int drawSizeVer,
+                                                             boolean renderAnnot, int backgroundColor,
+                                                             RenderControl control);
+
     private native String nativeGetDocumentMetaText(long docPtr, String tag);
 
     private native Long nativeGetFirstChildBookmark(long docPtr, Long bookmarkPtr);
@@ -100,6 +187,8 @@ public final class PdfiumCore {
 
     private native Size nativeGetPageSizeByIndex(long docPtr, int pageIndex, int dpi);
 
+    private native int[] nativeGetPageSizesByIndex(long docPtr, int[] pageIndexes, int dpi);
+
     private native long[] nativeGetPageLinks(long pagePtr);
 
     private native Integer nativeGetDestPageIndex(long docPtr, long linkPtr);
@@ -114,11 +203,30 @@ public final class PdfiumCore {
     private native PointF nativeDeviceCoordsToPage(long pagePtr, int startX, int startY, int sizeX,
                                                    int sizeY, int rotate, int deviceX, int deviceY);
 
-    /* synchronize native methods */
+    /*
+     * Process wide section. Pdfium's font mapper, font cache and glyph cache are shared by all
+     * documents and not thread safe, they are used when a page is loaded, rendered or closed and
+     * when a document is closed. The error code read by FPDF_GetLastError after a failed open is
+     * global too. These calls hold this lock, taken after the document lock, so they run one at
+     * a time across documents: pages of two documents are never rendered at the same time.
+     * Calls which only read document structure (page count and sizes, links of an open page,
+     * metadata, bookmarks, saving) are serialized per document with PdfDocument#getLock(), so
+     * they do not wait for the renders of other documents.
+     */
     private static final Object lock = new Object();
     private static Field mFdField = null;
     private int mCurrentDpi;
 
+    /**
+     * Get the lock of pdfium's process wide state. Native calls which load, render or close pages
+     * must hold it, taken after {@link PdfDocument#getLock()}.
+     *
+     * @since 10.1.5
+     */
+    public static Object getGlobalLock() {
+        return lock;
+    }
+
     public static int getNumFd(ParcelFileDescriptor fdObj) {
         try {
             if (mFdField == null) {
@@ -145,6 +253,14 @@ public final class PdfiumCore {
         // Log.d(TAG, "Starting PdfiumAndroid " + BuildConfig.VERSION_NAME);
     }
 
+    /**
+     * Density used to convert page sizes between points and pixels
+     * @since 10.1.5
+     */
+    public int getCurrentDpi() {
+        return mCurrentDpi;
+    }
+
     /**
      * Create new document from file
      */
@@ -183,39 +299,170 @@ public final class PdfiumCore {
         return document;
     }
 
+    /**
+     * Create new document from a direct buffer
+     */
+    public PdfDocument newDocument(ByteBuffer buffer) throws IOException {
+        return newDocument(buffer, null);
+    }
+
+    /**
+     * Create new document from the remaining bytes of a direct buffer, for example a
+     * {@link java.nio.MappedByteBuffer}, with password. The buffer is read in place without copy,
+     * it must not be modified before the document is closed.
+     *
+     * @throws IllegalArgumentException if the buffer is not direct
+     */
+    public PdfDocument newDocument(ByteBuffer buffer, String password) throws IOException {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer must be direct");
+        }
+        PdfDocument document = new PdfDocument();
+        synchronized (lock) {
+            document.mNativeDocPtr = nativeOpenBufferDocument(buffer, buffer.position(), buffer.remaining(), password);
+        }
+        return document;
+    }
+
+    /**
+     * Create new document read on demand from a channel
+     */
+    public PdfDocument newDocument(ChannelReader reader) throws IOException {
+        return newDocument(reader, null);
+    }
+
+    /**
+     * Create new document read on demand from a channel with password. Only the read-ahead
+     * buffer of the reader is kept in memory, the reader is closed with the document.
+     */
+    public PdfDocument newDocument(ChannelReader reader, String password) throws IOException {
+        PdfDocument document = new PdfDocument();
+        document.source = reader;
+        synchronized (lock) {
+            document.mNativeDocPtr = nativeOpenReaderDocument(reader, reader.buffer, reader.getSize(), password);
+        }
+        return document;
+    }
+
+    /**
+     * Create new document from a channel whose data is still arriving, for example a file being
+     * downloaded. Blocks until the document structure is available, which for a linearized
+     * document is the first page and the hint tables, for other documents the whole file.
+     * Before rendering a page check it with {@link #isPageAvailable(PdfDocument, int)}.
+     *
+     * @param pollIntervalMs time to wait between two availability checks
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public PdfDocument newDocumentProgressive(ChannelReader reader, String password, long pollIntervalMs)
+            throws IOException {
+        long docPtr;
+        synchronized (lock) {
+            docPtr = nativeCreateAvail(reader, reader.buffer, reader.getSize());
+        }
+        try {
+            while (true) {
+                int status = nativeIsDocAvail(docPtr);
+                if (status == DATA_AVAIL) {
+                    break;
+                }
+                if (status == DATA_ERROR) {
+                    throw new IOException("cannot create document: data error");
+                }
+                Thread.sleep(pollIntervalMs);
+            }
+            synchronized (lock) {
+                nativeLoadAvailDocument(docPtr, password);
+            }
+        } catch (InterruptedException e) {
+            closeAvail(docPtr);
+            throw new InterruptedIOException("Document loading interrupted");
+        } catch (IOException | RuntimeException e) {
+            closeAvail(docPtr);
+            throw e;
+        }
+
+        PdfDocument document = new PdfDocument();
+        document.source = reader;
+        document.progressive = true;
+        document.mNativeDocPtr = docPtr;
+        return document;
+    }
+
+    private void closeAvail(long docPtr) {
+        synchronized (lock) {
+            nativeCloseDocument(docPtr);
+        }
+    }
+
+    /**
+     * Check if all data of a page has arrived, always true unless the document was opened with
+     * {@link #newDocumentProgressive(ChannelReader, String, long)}
+     */
+    public boolean isPageAvailable(PdfDocument doc, int pageIndex) {
+        if (!doc.progressive) {
+            return true;
+        }
+        synchronized (doc.lock) {
+            if (doc.mAvailablePages.contains(pageIndex)) {
+                return true;
+            }
+            if (doc.mNativeDocPtr == 0 || nativeIsPageAvail(doc.mNativeDocPtr, pageIndex) != DATA_AVAIL) {
+                return false;
+            }
+            doc.mAvailablePages.add(pageIndex);
+            return true;
+        }
+    }
+
     /**
      * Get total numer of pages in document
      */
     public int getPageCount(PdfDocument doc) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             return nativeGetPageCount(doc.mNativeDocPtr);
         }
     }
 
     /**
-     * Open page and store native pointer in {@link PdfDocument}
+     * Open page and store native pointer in {@link PdfDocument}. An already open page is reused.
+     * Only the most recently used pages stay open, see {@link #setOpenPagesLimit(PdfDocument, int)}.
      */
     public long openPage(PdfDocument doc, int pageIndex) {
-        long pagePtr;
-        synchronized (lock) {
-            pagePtr = nativeLoadPage(doc.mNativeDocPtr, pageIndex);
-            doc.mNativePagesPtr.put(pageIndex, pagePtr);
-            return pagePtr;
+        synchronized (doc.lock) {
+            Long pagePtr = doc.mNativePagesPtr.get(pageIndex);
+            if (pagePtr != null) {
+                return pagePtr;
+            }
+            long newPagePtr;
+            synchronized (lock) {
+                newPagePtr = nativeLoadPage(doc.mNativeDocPtr, pageIndex);
+            }
+            putPage(doc, pageIndex, newPagePtr);
+            return newPagePtr;
         }
 
     }
 
     /**
-     * Open range of pages and store native pointers in {@link PdfDocument}
+     * Open range of pages and store native pointers in {@link PdfDocument}.
+     * If the range is longer than the open pages limit, the first pages of the range are
+     * closed again before this method returns and their pointers must not be used.
      */
     public long[] openPage(PdfDocument doc, int fromIndex, int toIndex) {
         long[] pagesPtr;
-        synchronized (lock) {
-            pagesPtr = nativeLoadPages(doc.mNativeDocPtr, fromIndex, toIndex);
+        synchronized (doc.lock) {
+            synchronized (lock) {
+                pagesPtr = nativeLoadPages(doc.mNativeDocPtr, fromIndex, toIndex);
+            }
             int pageIndex = fromIndex;
             for (long page : pagesPtr) {
                 if (pageIndex > toIndex) break;
-                doc.mNativePagesPtr.put(pageIndex, page);
+                Long oldPagePtr = doc.mNativePagesPtr.remove(pageIndex);
+                if (oldPagePtr != null) {
+                    closePage(oldPagePtr);
+                    doc.pageCloseCount++;
+                }
+                putPage(doc, pageIndex, page);
                 pageIndex++;
             }
 
@@ -223,14 +470,70 @@ public final class PdfiumCore {
         }
     }
 
+    /**
+     * Set how many native page handles of the document stay open. When more pages are open,
+     * the least recently used ones are closed, they are reopened transparently when needed.
+     *
+     * @param limit maximum open pages, at least 1
+     */
+    public void setOpenPagesLimit(PdfDocument doc, int limit) {
+        synchronized (doc.lock) {
+            doc.openPagesLimit = Math.max(1, limit);
+            trimOpenPages(doc);
+        }
+    }
+
+    /** Caller must hold doc.lock */
+    private void putPage(PdfDocument doc, int pageIndex, long pagePtr) {
+        doc.mNativePagesPtr.put(pageIndex, pagePtr);
+        doc.mLoadedPages.add(pageIndex);
+        doc.pageOpenCount++;
+        trimOpenPages(doc);
+    }
+
+    /** Caller must hold doc.lock */
+    private void trimOpenPages(PdfDocument doc) {
+        Iterator<Map.Entry<Integer, Long>> it = doc.mNativePagesPtr.entrySet().iterator();
+        while (doc.mNativePagesPtr.size() > doc.openPagesLimit && it.hasNext()) {
+            Map.Entry<Integer, Long> eldest = it.next();
+            it.remove();
+            closePage(eldest.getValue());
+            doc.pageCloseCount++;
+        }
+    }
+
+    private void closePage(long pagePtr) {
+        synchronized (lock) {
+            nativeClosePage(pagePtr);
+        }
+    }
+
+    /**
+     * Get the native pointer of a page opened before, reopening it if it was closed by the LRU.
+     * Caller must hold doc.lock.
+     *
+     * @return the page pointer, or null if the page was never opened
+     */
+    private Long getPagePtr(PdfDocument doc, int pageIndex) {
+        Long pagePtr = doc.mNativePagesPtr.get(pageIndex);
+        if (pagePtr != null || !doc.mLoadedPages.contains(pageIndex) || doc.mNativeDocPtr == 0) {
+            return pagePtr;
+        }
+        synchronized (lock) {
+            pagePtr = nativeLoadPage(doc.mNativeDocPtr, pageIndex);
+        }
+        putPage(doc, pageIndex, pagePtr);
+        return pagePtr;
+    }
+
     /**
      * Get page width in pixels. <br>
      * This method requires page to be opened.
      */
     public int getPageWidth(PdfDocument doc, int index) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             Long pagePtr;
-            if ((pagePtr = doc.mNativePagesPtr.get(index)) != null) {
+            if ((pagePtr = getPagePtr(doc, index)) != null) {
                 return nativeGetPageWidthPixel(pagePtr, mCurrentDpi);
             }
             return 0;
@@ -242,9 +545,9 @@ public final class PdfiumCore {
      * This method requires page to be opened.
      */
     public int getPageHeight(PdfDocument doc, int index) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             Long pagePtr;
-            if ((pagePtr = doc.mNativePagesPtr.get(index)) != null) {
+            if ((pagePtr = getPagePtr(doc, index)) != null) {
                 return nativeGetPageHeightPixel(pagePtr, mCurrentDpi);
             }
             return 0;
@@ -256,9 +559,9 @@ public final class PdfiumCore {
      * This method requires page to be opened.
      */
     public int getPageWidthPoint(PdfDocument doc, int index) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             Long pagePtr;
-            if ((pagePtr = doc.mNativePagesPtr.get(index)) != null) {
+            if ((pagePtr = getPagePtr(doc, index)) != null) {
                 return nativeGetPageWidthPoint(pagePtr);
             }
             return 0;
@@ -270,9 +573,9 @@ public final class PdfiumCore {
      * This method requires page to be opened.
      */
     public int getPageHeightPoint(PdfDocument doc, int index) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             Long pagePtr;
-            if ((pagePtr = doc.mNativePagesPtr.get(index)) != null) {
+            if ((pagePtr = getPagePtr(doc, index)) != null) {
                 return nativeGetPageHeightPoint(pagePtr);
             }
             return 0;
@@ -284,11 +587,25 @@ public final class PdfiumCore {
      * This method does not require given page to be opened.
      */
     public Size getPageSize(PdfDocument doc, int index) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             return nativeGetPageSizeByIndex(doc.mNativeDocPtr, index, mCurrentDpi);
         }
     }
 
+    /**
+     * Get sizes of many pages in pixels with a single native call.<br>
+     * This method does not require given pages to be opened.
+     *
+     * @param pageIndexes indexes of the pages
+     * @return width and height of each page, in pairs: {w0, h0, w1, h1, ...}
+     * @since 10.1.5
+     */
+    public int[] getPageSizes(PdfDocument doc, int[] pageIndexes) {
+        synchronized (doc.lock) {
+            return nativeGetPageSizesByIndex(doc.mNativeDocPtr, pageIndexes, mCurrentDpi);
+        }
+    }
+
     /**
      * Render page fragment on {@link Surface}.<br>
      * Page must be opened before rendering.
@@ -305,11 +622,14 @@ public final class PdfiumCore {
     public void renderPage(PdfDocument doc, Surface surface, int pageIndex,
                            int startX, int startY, int drawSizeX, int drawSizeY,
                            boolean renderAnnot) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             try {
                 //nativeRenderPage(doc.mNativePagesPtr.get(pageIndex), surface, mCurrentDpi);
-                nativeRenderPage(doc.mNativePagesPtr.get(pageIndex), surface, mCurrentDpi,
-                        startX, startY, drawSizeX, drawSizeY, renderAnnot);
+                Long pagePtr = getPagePtr(doc, pageIndex);
+                synchronized (lock) {
+                    nativeRenderPage(pagePtr, surface, mCurrentDpi,
+                            startX, startY, drawSizeX, drawSizeY, renderAnnot);
+                }
             } catch (NullPointerException e) {
                 Log.e(TAG, "mContext may be null");
                 e.printStackTrace();
@@ -344,10 +664,13 @@ public final class PdfiumCore {
     public void renderPageBitmap(PdfDocument doc, Bitmap bitmap, int pageIndex,
                                  int startX, int startY, int drawSizeX, int drawSizeY,
                                  boolean renderAnnot) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             try {
-                nativeRenderPageBitmap(doc.mNativePagesPtr.get(pageIndex), bitmap, mCurrentDpi,
-                        startX, startY, drawSizeX, drawSizeY, renderAnnot);
+                Long pagePtr = getPagePtr(doc, pageIndex);
+                synchronized (lock) {
+                    nativeRenderPageBitmap(pagePtr, bitmap, mCurrentDpi,
+                            startX, startY, drawSizeX, drawSizeY, renderAnnot);
+                }
             } catch (NullPointerException e) {
                 Log.e(TAG, "mContext may be null");
                 e.printStackTrace();
@@ -358,17 +681,66 @@ public final class PdfiumCore {
         }
     }
 
+    /**
+     * Render page fragment on {@link Bitmap} progressively. The render stops early when the
+     * control is cancelled, and reports partial results through {@link RenderControl#onProgress(Bitmap)}.<br>
+     * Page must be opened before rendering.
+     * <p>
+     * For more info see {@link PdfiumCore#renderPageBitmap(PdfDocument, Bitmap, int, int, int, int, int)}
+     *
+     * @return true if the page was fully rendered, false if it was cancelled or failed
+     * @since 10.1.5
+     */
+    public boolean renderPageBitmap(PdfDocument doc, Bitmap bitmap, int pageIndex,
+                                    int startX, int startY, int drawSizeX, int drawSizeY,
+                                    boolean renderAnnot, RenderControl control) {
+        return renderPageBitmap(doc, bitmap, pageIndex, startX, startY, drawSizeX, drawSizeY,
+                renderAnnot, Color.WHITE, control);
+    }
+
+    /**
+     * Render page fragment on {@link Bitmap} progressively, filling the page area with a color
+     * before rendering.
+     * <p>
+     * For more info see {@link PdfiumCore#renderPageBitmap(PdfDocument, Bitmap, int, int, int, int, int, boolean, RenderControl)}
+     *
+     * @param backgroundColor color of the page area, in {@link Color} format
+     * @since 10.1.5
+     */
+    public boolean renderPageBitmap(PdfDocument doc, Bitmap bitmap, int pageIndex,
+                                    int startX, int startY, int drawSizeX, int drawSizeY,
+                                    boolean renderAnnot, int backgroundColor, RenderControl control) {
+        synchronized (doc.lock) {
+            if (control.isCancelled()) {
+                return false;
+            }
+            Long pagePtr = getPagePtr(doc, pageIndex);
+            if (pagePtr == null) {
+                return false;
+            }
+            synchronized (lock) {
+                return nativeRenderPageBitmapProgressive(pagePtr, bitmap,
+                        startX, startY, drawSizeX, drawSizeY, renderAnnot, backgroundColor, control);
+            }
+        }
+    }
+
     /**
      * Release native resources and opened file
      */
     public void closeDocument(PdfDocument doc) {
-        synchronized (lock) {
-            for (Integer index : doc.mNativePagesPtr.keySet()) {
-                nativeClosePage(doc.mNativePagesPtr.get(index));
+        synchronized (doc.lock) {
+            for (Long pagePtr : doc.mNativePagesPtr.values()) {
+                closePage(pagePtr);
+                doc.pageCloseCount++;
             }
             doc.mNativePagesPtr.clear();
+            doc.mLoadedPages.clear();
 
-            nativeCloseDocument(doc.mNativeDocPtr);
+            synchronized (lock) {
+                nativeCloseDocument(doc.mNativeDocPtr);
+            }
+            doc.mNativeDocPtr = 0;
 
             if (doc.parcelFileDescriptor != null) { //if document was loaded from file
                 try {
@@ -378,6 +750,14 @@ public final class PdfiumCore {
                 }
                 doc.parcelFileDescriptor = null;
             }
+            if (doc.source != null) {
+                try {
+                    doc.source.close();
+                } catch (IOException e) {
+                    /* ignore */
+                }
+                doc.source = null;
+            }
         }
     }
 
@@ -385,7 +765,7 @@ public final class PdfiumCore {
      * Get metadata for given document
      */
     public PdfDocument.Meta getDocumentMeta(PdfDocument doc) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             PdfDocument.Meta meta = new PdfDocument.Meta();
             meta.title = nativeGetDocumentMetaText(doc.mNativeDocPtr, "Title");
             meta.author = nativeGetDocumentMetaText(doc.mNativeDocPtr, "Author");
@@ -404,7 +784,7 @@ public final class PdfiumCore {
      * Get table of contents (bookmarks) for given document
      */
     public List<PdfDocument.Bookmark> getTableOfContents(PdfDocument doc) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             List<PdfDocument.Bookmark> topLevel = new ArrayList<>();
             Long first = nativeGetFirstChildBookmark(doc.mNativeDocPtr, null);
             if (first != null) {
@@ -436,9 +816,9 @@ public final class PdfiumCore {
      * Get all links from given page
      */
     public List<PdfDocument.Link> getPageLinks(PdfDocument doc, int pageIndex) {
-        synchronized (lock) {
+        synchronized (doc.lock) {
             List<PdfDocument.Link> links = new ArrayList<>();
-            Long nativePagePtr = doc.mNativePagesPtr.get(pageIndex);
+            Long nativePagePtr = getPagePtr(doc, pageIndex);
             if (nativePagePtr == null) {
                 return links;
             }
@@ -470,12 +850,17 @@ public final class PdfiumCore {
      *                  2 (rotated 180 degrees), 3 (rotated 90 degrees counter-clockwise)
      * @param pageX     X value in page coordinates
      * @param pageY     Y value in page coordinate
-     * @return mapped coordinates
+     * @return mapped coordinates, (0, 0) if the page was never opened
      */
     public Point mapPageCoordsToDevice(PdfDocument doc, int pageIndex, int startX, int startY, int sizeX,
                                        int sizeY, int rotate, double pageX, double pageY) {
-        long pagePtr = doc.mNativePagesPtr.get(pageIndex);
-        return nativePageCoordsToDevice(pagePtr, startX, startY, sizeX, sizeY, rotate, pageX, pageY);
+        synchronized (doc.lock) {
+            Long pagePtr = getPagePtr(doc, pageIndex);
+            if (pagePtr == null) {
+                return new Point();
+            }
+            return nativePageCoordsToDevice(pagePtr, startX, startY, sizeX, sizeY, rotate, pageX, pageY);
+        }
     }
 
     /**
@@ -539,11 +924,16 @@ public final class PdfiumCore {
      *                  3 (rotated 90 degrees counter-clockwise)
      * @param deviceX   X value in device coordinates to be converted.
      * @param deviceY   Y value in device coordinates to be converted.
-     * @return page coordinates
+     * @return page coordinates, (0, 0) if the page was never opened
      */
     public PointF mapDeviceCoordsToPage(PdfDocument doc, int pageIndex, int startX, int startY, int sizeX,
                                         int sizeY, int rotate, int deviceX, int deviceY) {
-        long pagePtr = doc.mNativePagesPtr.get(pageIndex);
-        return nativeDeviceCoordsToPage(pagePtr, startX, startY, sizeX, sizeY, rotate, deviceX, deviceY);
+        synchronized (doc.lock) {
+            Long pagePtr = getPagePtr(doc, pageIndex);
+            if (pagePtr == null) {
+                return new PointF();
+            }
+            return nativeDeviceCoordsToPage(pagePtr, startX, startY, sizeX, sizeY, rotate, deviceX, deviceY);
+        }
     }
 }
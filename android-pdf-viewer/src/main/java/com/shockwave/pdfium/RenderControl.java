@@ -0,0 +1,54 @@
+package com.shockwave.pdfium;
+
+import android.graphics.Bitmap;
+
+/**
+ * Controls a progressive render started with
+ * {@link PdfiumCore#renderPageBitmap(PdfDocument, Bitmap, int, int, int, int, int, boolean, RenderControl)}.
+ * The native renderer polls it while rendering, so {@link #cancel()} stops the render between
+ * two steps, and slow renders can report the partially rendered bitmap.
+ * <p>
+ * Field names are used by the native code, keep them in sync.
+ * @since 10.1.5
+ */
+public class RenderControl {
+
+    private volatile boolean cancelled;
+
+    /** Interval of {@link #onProgress(Bitmap)} calls, 0 disables them */
+    private final long progressIntervalMs;
+
+    public RenderControl() {
+        this(0);
+    }
+
+    /**
+     * @param progressIntervalMs time between two {@link #onProgress(Bitmap)} calls, 0 disables them
+     */
+    public RenderControl(long progressIntervalMs) {
+        this.progressIntervalMs = progressIntervalMs;
+    }
+
+    /**
+     * Stop the render, may be called from any thread
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getProgressIntervalMs() {
+        return progressIntervalMs;
+    }
+
+    /**
+     * Called on the rendering thread each progress interval with the partially rendered bitmap.
+     * The bitmap is still being rendered into, copy it to keep its content.
+     * The document lock is held, do not call back into {@link PdfiumCore}.
+     */
+    protected void onProgress(Bitmap bitmap) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.shockwave.pdfium;
+
+import java.io.OutputStream;
+
+/**
+ * Controls a save started with {@link PdfiumCore#saveAsCopy(PdfDocument, OutputStream, int, SaveControl)}
+ * or {@link PdfiumCore#saveIncremental(PdfDocument, android.os.ParcelFileDescriptor, SaveControl)}.
+ * The native writer checks it before each block, so {@link #cancel()} stops the save at the
+ * next block, and it reports the number of bytes written.
+ * <p>
+ * Field names are used by the native code, keep them in sync.
+ * @since 10.1.5
+ */
+public class SaveControl {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Stop the save, may be called from any thread
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called on the saving thread every few hundred kilobytes, and once with the total when the
+     * save completes. The document lock is held, do not call back into {@link PdfiumCore}.
+     *
+     * @param bytesWritten bytes written so far
+     */
+    protected void onProgress(long bytesWritten) {
+    }
+}
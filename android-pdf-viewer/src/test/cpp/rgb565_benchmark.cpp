@@ -0,0 +1,94 @@
+/**
+ * Host benchmark of the RGB_565 conversion of RGB_565 renders, run from android-pdf-viewer
+ * with the flags the NDK uses for x86_64, which enable SSE4.2:
+ *
+ *   g++ -O2 -ftree-vectorize -msse4.2 -std=c++11 -Isrc/main/cpp src/test/cpp/rgb565_benchmark.cpp -o rgb565_benchmark
+ *   ./rgb565_benchmark
+ *
+ * Times the former per pixel conversion against the row kernel, after checking both give
+ * the same pixels.
+ */
+#include "rgb565.hpp"
+
+extern "C" {
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+}
+
+struct rgb {
+    uint8_t red;
+    uint8_t green;
+    uint8_t blue;
+};
+
+static const int TILE_SIZE = 256;
+static const int TILES = 2000;
+
+/** the conversion before the row kernel */
+static uint16_t rgbTo565(rgb *color) {
+    return ((color->red >> 3) << 11) | ((color->green >> 2) << 5) | (color->blue >> 3);
+}
+
+static void formerRgbBitmapTo565(void *source, int sourceStride, void *dest, int destStride,
+                                 int width, int height) {
+    for (int y = 0; y < height; y++) {
+        rgb *srcLine = (rgb *) source;
+        uint16_t *dstLine = (uint16_t *) dest;
+        for (int x = 0; x < width; x++) {
+            dstLine[x] = rgbTo565(&srcLine[x]);
+        }
+        source = (char *) source + sourceStride;
+        dest = (char *) dest + destStride;
+    }
+}
+
+static double now() {
+    timespec time;
+    clock_gettime(CLOCK_MONOTONIC, &time);
+    return time.tv_sec + time.tv_nsec / 1e9;
+}
+
+int main() {
+    const int stride = TILE_SIZE * sizeof(rgb);
+    const size_t size = (size_t) stride * TILE_SIZE;
+    const double pixels = (double) TILES * TILE_SIZE * TILE_SIZE;
+    uint16_t *former = (uint16_t *) malloc(TILE_SIZE * TILE_SIZE * sizeof(uint16_t));
+    uint16_t *current = (uint16_t *) malloc(TILE_SIZE * TILE_SIZE * sizeof(uint16_t));
+    uint8_t *input = (uint8_t *) malloc(size);
+    srand(42);
+    for (size_t i = 0; i < size; i++) {
+        input[i] = (uint8_t) rand();
+    }
+
+    formerRgbBitmapTo565(input, stride, former, TILE_SIZE * 2, TILE_SIZE, TILE_SIZE);
+    rgbPixelsTo565(input, stride, current, TILE_SIZE * 2, TILE_SIZE, TILE_SIZE);
+    if (memcmp(former, current, TILE_SIZE * TILE_SIZE * sizeof(uint16_t)) != 0) {
+        printf("FAIL: conversions differ\n");
+        return 1;
+    }
+
+    unsigned checksum = 0;
+    double start = now();
+    for (int tile = 0; tile < TILES; tile++) {
+        formerRgbBitmapTo565(input, stride, former, TILE_SIZE * 2, TILE_SIZE, TILE_SIZE);
+        checksum += former[tile % (TILE_SIZE * TILE_SIZE)];
+    }
+    double formerTime = now() - start;
+
+    start = now();
+    for (int tile = 0; tile < TILES; tile++) {
+        rgbPixelsTo565(input, stride, current, TILE_SIZE * 2, TILE_SIZE, TILE_SIZE);
+        checksum += current[tile % (TILE_SIZE * TILE_SIZE)];
+    }
+    double currentTime = now() - start;
+
+    printf("%d tiles of %dx%d (checksum %u)\n", TILES, TILE_SIZE, TILE_SIZE, checksum);
+    printf("per pixel conversion:  %.1f ms, %.0f Mpixel/s\n", formerTime * 1e3, pixels / formerTime / 1e6);
+    printf("row kernel conversion: %.1f ms, %.0f Mpixel/s\n", currentTime * 1e3, pixels / currentTime / 1e6);
+    free(input);
+    free(former);
+    free(current);
+    return 0;
+}
@@ -0,0 +1,192 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.Allocations;
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CacheManagerTest {
+
+    /** bytes of the bitmap of a test part */
+    private static final long PART_BYTES = 16 * 16 * 4;
+
+    private static PagePart part(int page, float left, float top, float size, int cacheOrder) {
+        return new PagePart(page, Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888),
+                new RectF(left, top, left + size, top + size), false, cacheOrder);
+    }
+
+    private static List<PagePart> collect(CacheManager cacheManager, int page) {
+        List<PagePart> parts = new ArrayList<>();
+        cacheManager.collectParts(page, 0, 0, 1, 1, parts);
+        return parts;
+    }
+
+    @Test
+    public void partsAreCollectedInCacheOrder() {
+        CacheManager cacheManager = new CacheManager(new BitmapPool(0), Long.MAX_VALUE);
+        PagePart late = part(0, 0, 0, 0.5f, 3);
+        PagePart early = part(0, 0.5f, 0.5f, 0.5f, 1);
+        PagePart middle = part(0, 0, 0.5f, 0.5f, 2);
+        cacheManager.cachePart(late);
+        cacheManager.cachePart(early);
+        cacheManager.cachePart(middle);
+
+        List<PagePart> parts = collect(cacheManager, 0);
+        assertEquals(3, parts.size());
+        assertSame(early, parts.get(0));
+        assertSame(middle, parts.get(1));
+        assertSame(late, parts.get(2));
+    }
+
+    @Test
+    public void sharperPartIsDrawnOverStalePart() {
+        CacheManager cacheManager = new CacheManager(new BitmapPool(0), Long.MAX_VALUE);
+        // a low resolution part covering the page, kept from a previous set
+        PagePart lowRes = part(0, 0, 0, 1, 5);
+        cacheManager.cachePart(lowRes);
+        cacheManager.makeANewSet();
+        // sharper parts of the current set, the first ones span several grid cells
+        PagePart sharp = part(0, 0.2f, 0.2f, 0.4f, 0);
+        PagePart next = part(0, 0.3f, 0.6f, 0.1f, 1);
+        cacheManager.cachePart(next);
+        cacheManager.cachePart(sharp);
+
+        List<PagePart> parts = collect(cacheManager, 0);
+        assertEquals(3, parts.size());
+        assertSame(lowRes, parts.get(0));
+        assertSame(sharp, parts.get(1));
+        assertSame(next, parts.get(2));
+    }
+
+    @Test
+    public void equalCacheOrdersKeepInsertionOrder() {
+        CacheManager cacheManager = new CacheManager(new BitmapPool(0), Long.MAX_VALUE);
+        List<PagePart> cached = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            PagePart part = part(0, (7 - i) / 8f, 0, 0.125f, 1);
+            cached.add(part);
+            cacheManager.cachePart(part);
+        }
+
+        assertEquals(cached, collect(cacheManager, 0));
+        assertEquals(0, collect(cacheManager, 1).size());
+    }
+
+    @Test
+    public void bytesFollowCachedAndReleasedParts() {
+        BitmapPool pool = new BitmapPool(Long.MAX_VALUE);
+        CacheManager cacheManager = new CacheManager(pool, Long.MAX_VALUE);
+        cacheManager.cachePart(part(0, 0, 0, 0.5f, 0));
+        cacheManager.cachePart(part(0, 0.5f, 0, 0.5f, 1));
+        cacheManager.cachePart(part(1, 0, 0, 0.5f, 2));
+        assertEquals(3 * PART_BYTES, cacheManager.getCurrentBytes());
+
+        // rendered again, the new part replaces the cached one
+        cacheManager.cachePart(part(0, 0, 0, 0.5f, 3));
+        assertEquals(3 * PART_BYTES, cacheManager.getCurrentBytes());
+        assertEquals(PART_BYTES, pool.getCurrentBytes());
+
+        cacheManager.recycle(Collections.singletonList(0));
+        assertEquals(PART_BYTES, cacheManager.getCurrentBytes());
+        assertEquals(3 * PART_BYTES, pool.getCurrentBytes());
+
+        cacheManager.recycle();
+        assertEquals(0, cacheManager.getCurrentBytes());
+        assertEquals(4 * PART_BYTES, pool.getCurrentBytes());
+    }
+
+    @Test
+    public void passivePartsAreEvictedFirst() {
+        CacheManager cacheManager = new CacheManager(new BitmapPool(Long.MAX_VALUE), 3 * PART_BYTES);
+        PagePart oldFirst = part(0, 0, 0, 0.5f, 1);
+        PagePart oldSecond = part(0, 0.5f, 0, 0.5f, 2);
+        cacheManager.cachePart(oldFirst);
+        cacheManager.cachePart(oldSecond);
+        cacheManager.makeANewSet();
+        PagePart newFirst = part(0, 0, 0.5f, 0.5f, 3);
+        PagePart newSecond = part(0, 0.5f, 0.5f, 0.5f, 4);
+        cacheManager.cachePart(newFirst);
+        cacheManager.cachePart(newSecond);
+
+        List<PagePart> parts = collect(cacheManager, 0);
+        assertEquals(3 * PART_BYTES, cacheManager.getCurrentBytes());
+        assertFalse(parts.contains(oldFirst));
+        assertTrue(parts.contains(oldSecond));
+        assertTrue(parts.contains(newFirst));
+        assertTrue(parts.contains(newSecond));
+    }
+
+    @Test
+    public void loweredBudgetEvictsPassiveThenActiveParts() {
+        BitmapPool pool = new BitmapPool(Long.MAX_VALUE);
+        CacheManager cacheManager = new CacheManager(pool, Long.MAX_VALUE);
+        PagePart passive = part(0, 0, 0, 0.5f, 1);
+        cacheManager.cachePart(passive);
+        cacheManager.makeANewSet();
+        PagePart activeFirst = part(0, 0.5f, 0, 0.5f, 2);
+        PagePart activeSecond = part(0, 0, 0.5f, 0.5f, 3);
+        cacheManager.cachePart(activeFirst);
+        cacheManager.cachePart(activeSecond);
+
+        cacheManager.setMaxBytes(PART_BYTES);
+        List<PagePart> parts = collect(cacheManager, 0);
+        assertEquals(1, parts.size());
+        assertSame(activeSecond, parts.get(0));
+        assertEquals(PART_BYTES, cacheManager.getCurrentBytes());
+        assertEquals(2 * PART_BYTES, pool.getCurrentBytes());
+    }
+
+    @Test
+    public void collectingPartsDoesNotAllocate() {
+        Allocations.assumeSupported();
+        final CacheManager cacheManager = new CacheManager(new BitmapPool(0), Long.MAX_VALUE);
+        // 120 parts over 3 pages, half of them in a previous set
+        for (int page = 0; page < 3; page++) {
+            for (int i = 0; i < 40; i++) {
+                cacheManager.cachePart(part(page, i % 8 / 8f, i / 8 / 5f, 0.125f, i));
+                if (i == 20) {
+                    cacheManager.makeANewSet();
+                }
+            }
+        }
+        final List<PagePart> parts = new ArrayList<>();
+        final Runnable frame = new Runnable() {
+            @Override
+            public void run() {
+                // the part of the pages shown by the view
+                for (int page = 0; page < 3; page++) {
+                    cacheManager.collectParts(page, 0.25f, 0.25f, 0.75f, 0.75f, parts);
+                }
+                parts.clear();
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            frame.run();
+        }
+
+        assertEquals(0, Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    frame.run();
+                }
+            }
+        }));
+    }
+}
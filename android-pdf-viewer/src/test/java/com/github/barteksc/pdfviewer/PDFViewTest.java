@@ -0,0 +1,119 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.listener.OnDrawListener;
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.Allocations;
+import com.github.barteksc.pdfviewer.util.FitPolicy;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.ShadowPdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowPdfiumCore.class)
+public class PDFViewTest {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+
+    /** parts of a page, in columns and rows */
+    private static final int PART_COLUMNS = 4;
+    private static final int PART_ROWS = 5;
+
+    private static final OnDrawListener NO_OP_LISTENER = new OnDrawListener() {
+        @Override
+        public void onLayerDrawn(Canvas canvas, float pageWidth, float pageHeight, int displayedPage) {
+        }
+    };
+
+    /**
+     * Counts the bitmaps drawn instead of drawing them, the drawing shadows of Robolectric
+     * record every call and would hide the allocations of the view
+     */
+    private static class CountingCanvas extends Canvas {
+
+        int bitmapsDrawn;
+
+        @Override
+        public void drawColor(int color) {
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+            bitmapsDrawn++;
+        }
+    }
+
+    private PDFView pdfView;
+
+    @Before
+    public void setUp() {
+        pdfView = new PDFView(RuntimeEnvironment.application, null);
+        pdfView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        PdfiumCore pdfiumCore = new PdfiumCore(RuntimeEnvironment.application);
+        PdfFile pdfFile = new PdfFile(pdfiumCore, ShadowPdfiumCore.newDocument(10, 1080, 1400),
+                FitPolicy.WIDTH, new Size(VIEW_WIDTH, VIEW_HEIGHT), null, true, 0, false, false);
+        pdfView.fromPdfFile(pdfFile)
+                .onDraw(NO_OP_LISTENER)
+                .onDrawAll(NO_OP_LISTENER)
+                .load();
+    }
+
+    @After
+    public void tearDown() {
+        pdfView.recycle();
+    }
+
+    /** Cache the thumbnail and all parts of a page, as the rendering workers would */
+    private void renderPage(int page) {
+        pdfView.onBitmapRendered(new PagePart(page, Bitmap.createBitmap(32, 42, Bitmap.Config.RGB_565),
+                new RectF(0, 0, 1, 1), true, 0));
+        float width = 1f / PART_COLUMNS;
+        float height = 1f / PART_ROWS;
+        int cacheOrder = 1;
+        for (int row = 0; row < PART_ROWS; row++) {
+            for (int column = 0; column < PART_COLUMNS; column++) {
+                RectF bounds = new RectF(column * width, row * height, (column + 1) * width, (row + 1) * height);
+                pdfView.onBitmapRendered(new PagePart(page, Bitmap.createBitmap(270, 280, Bitmap.Config.RGB_565),
+                        bounds, false, cacheOrder++));
+            }
+        }
+    }
+
+    @Test
+    public void drawingFrameDoesNotAllocate() {
+        Allocations.assumeSupported();
+        renderPage(0);
+        renderPage(1);
+        final CountingCanvas canvas = new CountingCanvas();
+        final Runnable frames = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    pdfView.onDraw(canvas);
+                }
+            }
+        };
+        // the first frames size the scratch lists
+        frames.run();
+        assertTrue(canvas.bitmapsDrawn > 0);
+
+        assertEquals(0, Allocations.measure(frames));
+    }
+}
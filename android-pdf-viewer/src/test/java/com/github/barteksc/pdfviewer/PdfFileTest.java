@@ -0,0 +1,160 @@
+package com.github.barteksc.pdfviewer;
+
+import com.github.barteksc.pdfviewer.util.FitPolicy;
+import com.shockwave.pdfium.PdfiumCore;
+import com.shockwave.pdfium.ShadowPdfiumCore;
+import com.shockwave.pdfium.util.Size;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowPdfiumCore.class)
+public class PdfFileTest {
+
+    private static final float SPACING = 10;
+
+    /** page offsets as laid out by PdfFile, with the spacing of each page or the fixed spacing */
+    private static float[] offsets(float[] sizes, float[] pageSpacing) {
+        float[] offsets = new float[sizes.length];
+        float offset = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (pageSpacing != null) {
+                offset += pageSpacing[i] / 2f;
+                if (i == 0) {
+                    offset -= SPACING / 2f;
+                } else if (i == sizes.length - 1) {
+                    offset += SPACING / 2f;
+                }
+                offsets[i] = offset;
+                offset += sizes[i] + pageSpacing[i] / 2f;
+            } else {
+                offsets[i] = offset;
+                offset += sizes[i] + SPACING;
+            }
+        }
+        return offsets;
+    }
+
+    /** the scan the binary search replaced */
+    private static int scanPageAtOffset(float[] offsets, float[] pageSpacing, float offset, float zoom) {
+        int currentPage = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            float spacing = (pageSpacing != null ? pageSpacing[i] : SPACING) * zoom;
+            if (offsets[i] * zoom - spacing / 2f >= offset) {
+                break;
+            }
+            currentPage++;
+        }
+        return --currentPage >= 0 ? currentPage : 0;
+    }
+
+    private static float[] randomSizes(Random random, int count) {
+        float[] sizes = new float[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = 50 + random.nextInt(1000);
+        }
+        return sizes;
+    }
+
+    @Test
+    public void pageAtOffsetOfUniformPages() {
+        float[] offsets = offsets(new float[]{100, 100, 100, 100}, null);
+
+        assertEquals(0, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, -50, 1));
+        assertEquals(0, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, 104, 1));
+        assertEquals(0, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, 105, 1));
+        assertEquals(1, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, 106, 1));
+        assertEquals(2, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, 431, 2));
+        assertEquals(3, PdfFile.findPageAtOffset(offsets, null, SPACING, 4, 10000, 1));
+        assertEquals(0, PdfFile.findPageAtOffset(new float[0], null, SPACING, 0, 10, 1));
+    }
+
+    @Test
+    public void pageAtOffsetMatchesScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            int count = 1 + random.nextInt(200);
+            float[] sizes = randomSizes(random, count);
+            float[] pageSpacing = null;
+            if (round % 2 == 1) {
+                pageSpacing = new float[count];
+                for (int i = 0; i < count; i++) {
+                    pageSpacing[i] = SPACING + random.nextInt(300);
+                }
+            }
+            float[] offsets = offsets(sizes, pageSpacing);
+            float zoom = 0.5f + random.nextFloat() * 3;
+            float end = (offsets[count - 1] + sizes[count - 1]) * zoom;
+            for (int i = 0; i < 200; i++) {
+                float offset = random.nextFloat() * (end + 200) - 100;
+                assertEquals(scanPageAtOffset(offsets, pageSpacing, offset, zoom),
+                        PdfFile.findPageAtOffset(offsets, pageSpacing, SPACING, count, offset, zoom));
+            }
+        }
+    }
+
+    /**
+     * Cost of finding the page at an offset in documents of 10, 1000 and 100000 pages, it must
+     * grow with the log of the page count.
+     */
+    @Test
+    public void pageAtOffsetCostGrowsWithLogOfPages() {
+        int[] pageCounts = {10, 1000, 100000};
+        double[] nanos = new double[pageCounts.length];
+        for (int i = 0; i < pageCounts.length; i++) {
+            nanos[i] = pageAtOffsetNanos(pageCounts[i]);
+            System.out.println(String.format("Page at offset, %d pages: %.1f ns", pageCounts[i], nanos[i]));
+        }
+        // a scan would be 10000 times slower with 100000 pages than with 10
+        assertTrue(nanos[2] < nanos[0] * 50);
+    }
+
+    private static double pageAtOffsetNanos(int pageCount) {
+        Random random = new Random(pageCount);
+        float[] sizes = randomSizes(random, pageCount);
+        float[] offsets = offsets(sizes, null);
+        float end = offsets[pageCount - 1] + sizes[pageCount - 1];
+        float[] queries = new float[4096];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = random.nextFloat() * end;
+        }
+        int lookups = 500000;
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int round = 0; round < 7; round++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < lookups; j++) {
+                sum += PdfFile.findPageAtOffset(offsets, null, SPACING, pageCount, queries[j & 4095], 1);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // keeps the searches from being optimized away
+        assertTrue(sum >= 0);
+        return (double) best / lookups;
+    }
+
+    @Test
+    public void disposedFileOpensNoPage() throws Exception {
+        PdfFile pdfFile = new PdfFile(new PdfiumCore(RuntimeEnvironment.application),
+                ShadowPdfiumCore.newDocument(3, 100, 100), FitPolicy.WIDTH, new Size(100, 100),
+                null, true, 0, false, false);
+        assertTrue(pdfFile.openPage(0));
+        assertFalse(pdfFile.isDisposed());
+
+        pdfFile.dispose();
+
+        // a worker taking a task after the view was recycled
+        assertTrue(pdfFile.isDisposed());
+        assertFalse(pdfFile.openPage(1));
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.RenderingHandler.RenderingTask;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RenderingQueueTest {
+
+    private static RenderingTask task(int page, float left, float top, float priority) {
+        RenderingTask task = new RenderingTask(256, 256, new RectF(left, top, left + 0.25f, top + 0.25f),
+                page, false, 0, true, false);
+        task.priority = priority;
+        return task;
+    }
+
+    private static RenderingTask thumbnail(int page, float priority) {
+        RenderingTask task = new RenderingTask(64, 64, new RectF(0, 0, 1, 1), page, true, 0, true, false);
+        task.priority = priority;
+        return task;
+    }
+
+    @Test
+    public void tasksAreTakenByPriorityThenArrival() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        RenderingTask far = task(0, 0, 0, 9);
+        RenderingTask near = task(0, 0.25f, 0, 1);
+        RenderingTask nearLater = task(0, 0.5f, 0, 1);
+        RenderingTask middle = task(1, 0, 0, 4);
+        queue.offer(far);
+        queue.offer(near);
+        queue.offer(middle);
+        queue.offer(nearLater);
+
+        assertSame(near, queue.take());
+        assertSame(nearLater, queue.take());
+        assertSame(middle, queue.take());
+        assertSame(far, queue.take());
+    }
+
+    @Test
+    public void thumbnailsAreTakenFirst() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        RenderingTask part = task(0, 0, 0, 0);
+        RenderingTask thumbnail = thumbnail(3, 100);
+        queue.offer(part);
+        queue.offer(thumbnail);
+
+        assertSame(thumbnail, queue.take());
+        assertSame(part, queue.take());
+    }
+
+    @Test
+    public void queuedTaskOfferedAgainIsReprioritized() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        RenderingTask first = task(0, 0, 0, 1);
+        RenderingTask second = task(0, 0.25f, 0, 2);
+        queue.offer(first);
+        queue.offer(second);
+
+        // the view scrolled, the second part is now the closest one
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 5));
+        queue.offer(task(0, 0.25f, 0, 0));
+
+        assertSame(second, queue.take());
+        assertSame(first, queue.take());
+        assertEquals(2, queue.getStats().getEnqueued());
+        assertEquals(2, queue.getStats().getReprioritized());
+    }
+
+    @Test
+    public void staleQueuedTasksAreRemoved() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        queue.offer(task(1, 0, 0, 2));
+
+        queue.beginPass();
+        RenderingTask kept = task(1, 0, 0, 2);
+        queue.offer(kept);
+        assertEquals(1, queue.cancelStale());
+
+        RenderingTask taken = queue.take();
+        assertEquals(kept, taken);
+        assertEquals(1, taken.page);
+        assertEquals(1, queue.getStats().getCancelled());
+    }
+
+    @Test
+    public void staleRunningTaskIsCancelled() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        queue.offer(task(0, 0.25f, 0, 2));
+        RenderingTask running = queue.take();
+        RenderingTask other = queue.take();
+
+        queue.beginPass();
+        queue.offer(task(0, 0.25f, 0, 2));
+        assertEquals(1, queue.cancelStale());
+        assertTrue(running.isCancelled());
+        assertFalse(other.isCancelled());
+
+        // a cancelled task is cancelled once
+        queue.beginPass();
+        queue.offer(task(0, 0.25f, 0, 2));
+        assertEquals(0, queue.cancelStale());
+    }
+
+    @Test
+    public void runningTaskOfferedAgainIsKept() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        RenderingTask running = queue.take();
+
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        assertEquals(0, queue.cancelStale());
+
+        assertFalse(running.isCancelled());
+        assertEquals(1, queue.getStats().getEnqueued());
+    }
+
+    @Test
+    public void cancelledRunningTaskOfferedAgainIsQueuedAgain() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        RenderingTask running = queue.take();
+
+        // the part left the preload window, then came back
+        queue.beginPass();
+        assertEquals(1, queue.cancelStale());
+        assertTrue(running.isCancelled());
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+
+        RenderingTask retried = queue.take();
+        assertNotSame(running, retried);
+        assertEquals(running, retried);
+        assertFalse(retried.isCancelled());
+
+        // the end of the cancelled render does not affect the new one
+        queue.finish(running);
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        assertEquals(0, queue.cancelStale());
+        assertFalse(retried.isCancelled());
+        assertEquals(2, queue.getStats().getEnqueued());
+    }
+
+    @Test
+    public void finishedTaskCanBeQueuedAgain() throws InterruptedException {
+        RenderingQueue queue = new RenderingQueue();
+        queue.beginPass();
+        queue.offer(task(0, 0, 0, 1));
+        RenderingTask running = queue.take();
+        queue.finish(running);
+
+        queue.offer(task(0, 0, 0, 1));
+        assertNotSame(running, queue.take());
+        assertEquals(2, queue.getStats().getEnqueued());
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.barteksc.pdfviewer;
+
+import android.graphics.Bitmap;
+import android.graphics.RectF;
+
+import com.github.barteksc.pdfviewer.model.PagePart;
+import com.github.barteksc.pdfviewer.util.BitmapPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileKeyTest {
+
+    /** side of the part grid of a page, 10 x 10 parts */
+    private static final int GRID = 10;
+
+    private static RectF cell(int row, int col) {
+        float size = 1f / GRID;
+        return new RectF(col * size, row * size, (col + 1) * size, (row + 1) * size);
+    }
+
+    @Test
+    public void equalBoundsMakeEqualKeys() {
+        TileKey key = new TileKey(3, new RectF(0.1f, 0.2f, 0.3f, 0.4f), 0, false);
+        // same bounds computed another way, off by a rounding error
+        TileKey other = new TileKey(3, new RectF(0.3f / 3, 0.2f, 0.1f * 3, 0.4f), 0, false);
+
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void pageThumbnailAndBoundsMakeKeysDiffer() {
+        RectF bounds = new RectF(0.1f, 0.2f, 0.3f, 0.4f);
+        TileKey key = new TileKey(3, bounds, 0, false);
+
+        assertNotEquals(key, new TileKey(4, bounds, 0, false));
+        assertNotEquals(key, new TileKey(3, bounds, 0, true));
+        assertNotEquals(key, new TileKey(3, new RectF(0.1f, 0.2f, 0.3f, 0.5f), 0, false));
+    }
+
+    @Test
+    public void sameBoundsAtTwoZoomsMakeKeysDiffer() {
+        // a page fitting in a single part has these bounds at every zoom
+        RectF page = new RectF(0, 0, 1, 1);
+        TileKey zoom1 = new TileKey(0, page, TileKey.zoomBucket(1f), false);
+        TileKey zoom2 = new TileKey(0, page, TileKey.zoomBucket(2f), false);
+
+        assertNotEquals(zoom1, zoom2);
+        assertEquals(zoom1, new TileKey(0, page, TileKey.zoomBucket(1.02f), false));
+    }
+
+    @Test
+    public void reusedLookupKeyFindsStoredKey() {
+        Set<TileKey> keys = new HashSet<>();
+        keys.add(new TileKey(0, cell(1, 2), 0, false));
+        TileKey lookupKey = new TileKey();
+
+        assertTrue(keys.contains(lookupKey.set(0, cell(1, 2), 0, false)));
+        assertFalse(keys.contains(lookupKey.set(0, cell(2, 1), 0, false)));
+    }
+
+    @Test
+    public void gridKeysHaveDistinctHashes() {
+        Set<Integer> hashes = new HashSet<>();
+        for (int page = 0; page < 20; page++) {
+            for (int row = 0; row < GRID; row++) {
+                for (int col = 0; col < GRID; col++) {
+                    hashes.add(new TileKey(page, cell(row, col), 0, false).hashCode());
+                }
+            }
+        }
+        assertEquals(20 * GRID * GRID, hashes.size());
+    }
+
+    /**
+     * Cost of looking up a cached part with 120, 500 and 2000 parts in the cache. A lookup is a
+     * hash lookup, so its cost must not grow with the number of parts like a scan would.
+     */
+    @Test
+    public void lookupCostDoesNotGrowWithParts() {
+        int[] partCounts = {120, 500, 2000};
+        double[] nanos = new double[partCounts.length];
+        for (int i = 0; i < partCounts.length; i++) {
+            nanos[i] = lookupNanos(partCounts[i]);
+            System.out.println(String.format("TileKey lookup, %d parts: %.1f ns", partCounts[i], nanos[i]));
+        }
+        // a scan would be ~16 times slower with 2000 parts than with 120
+        assertTrue(nanos[2] < nanos[0] * 4);
+    }
+
+    private static double lookupNanos(int partCount) {
+        CacheManager cacheManager = new CacheManager(new BitmapPool(0), Long.MAX_VALUE);
+        RectF[] bounds = new RectF[partCount];
+        int[] pages = new int[partCount];
+        for (int i = 0; i < partCount; i++) {
+            pages[i] = i / (GRID * GRID);
+            bounds[i] = cell(i / GRID % GRID, i % GRID);
+            cacheManager.cachePart(new PagePart(pages[i], Bitmap.createBitmap(1, 1, Bitmap.Config.RGB_565),
+                    bounds[i], false, i));
+        }
+        int lookups = 200000;
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 7; round++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < lookups; j++) {
+                int i = j * 7919 % partCount;
+                if (!cacheManager.upPartIfContained(pages[i], bounds[i], 0, i)) {
+                    throw new AssertionError("part " + i + " not found");
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / lookups;
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.barteksc.pdfviewer.mark;
+
+import android.graphics.Bitmap;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = MarkBitmapCacheTest.ShadowScaledBitmap.class)
+public class MarkBitmapCacheTest {
+
+    /** Scaled bitmaps of Robolectric have no config, their size in bytes is then unknown */
+    @Implements(Bitmap.class)
+    public static class ShadowScaledBitmap extends ShadowBitmap {
+
+        @Implementation
+        protected static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter) {
+            return Bitmap.createBitmap(dstWidth, dstHeight, src.getConfig());
+        }
+    }
+
+    /** Runs the decodes when asked, so the test sees the pending state */
+    private static class QueuedExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        /** Run the queued decodes and deliver them to the UI thread */
+        void runAll() {
+            List<Runnable> queued = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : queued) {
+                task.run();
+            }
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+
+    /** Gives bitmaps of the requested size */
+    private static class SampledOwner implements PdfMarkManager.SampledImageOwner {
+
+        @Override
+        public Bitmap getBitmap(ImageMark mark, int reqWidth, int reqHeight) {
+            return Bitmap.createBitmap(reqWidth, reqHeight, Bitmap.Config.ARGB_8888);
+        }
+
+        @Override
+        public Bitmap getBitmap(ImageMark mark) {
+            throw new AssertionError("not called for a sampled owner");
+        }
+    }
+
+    /** Gives the same bitmap for every mark and counts the calls */
+    private static class PlainOwner implements PdfMarkManager.ImageOwner {
+
+        final Bitmap bitmap;
+        int calls;
+
+        PlainOwner(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public Bitmap getBitmap(ImageMark mark) {
+            calls++;
+            return bitmap;
+        }
+    }
+
+    private static class Counter implements Runnable {
+        int count;
+
+        @Override
+        public void run() {
+            count++;
+        }
+    }
+
+    private static ImageMark mark(float width, float height) {
+        return new ImageMark.Builder().setWidth(width).setHeight(height).build();
+    }
+
+    @Test
+    public void bucketIsSmallestPowerOfTwoNotBelowZoom() {
+        assertEquals(-1, MarkBitmapCache.bucket(0.5f));
+        assertEquals(0, MarkBitmapCache.bucket(0.75f));
+        assertEquals(0, MarkBitmapCache.bucket(1));
+        assertEquals(1, MarkBitmapCache.bucket(1.5f));
+        assertEquals(1, MarkBitmapCache.bucket(2));
+        assertEquals(2, MarkBitmapCache.bucket(3));
+        assertEquals(2f, MarkBitmapCache.bucketZoom(1), 0);
+    }
+
+    @Test
+    public void closestDecodedBucketIsUsedWhileDecoding() {
+        QueuedExecutor executor = new QueuedExecutor();
+        MarkBitmapCache cache = new MarkBitmapCache(new SampledOwner(), Integer.MAX_VALUE, null, executor);
+        ImageMark mark = mark(100, 50);
+
+        assertNull(cache.get(mark, 0));
+        executor.runAll();
+        Bitmap zoom1 = cache.get(mark, 0);
+        assertEquals(100, zoom1.getWidth());
+        assertEquals(50, zoom1.getHeight());
+
+        // bucket 1 is decoding, bucket 0 is drawn meanwhile
+        assertSame(zoom1, cache.get(mark, 1));
+        executor.runAll();
+        Bitmap zoom2 = cache.get(mark, 1);
+        assertEquals(200, zoom2.getWidth());
+
+        // at bucket distance 1 from both, the sharper bitmap is preferred
+        cache.get(mark, 2);
+        executor.runAll();
+        assertSame(cache.get(mark, 1), zoom2);
+        Bitmap zoom4 = cache.get(mark, 2);
+        assertEquals(400, zoom4.getWidth());
+        cache.remove(mark);
+        cache.get(mark, 0);
+        cache.get(mark, 2);
+        executor.runAll();
+        assertEquals(400, cache.get(mark, 1).getWidth());
+    }
+
+    @Test
+    public void removeDropsPendingDecodes() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Counter decoded = new Counter();
+        MarkBitmapCache cache = new MarkBitmapCache(new SampledOwner(), Integer.MAX_VALUE, decoded, executor);
+        ImageMark removed = mark(100, 50);
+        ImageMark kept = mark(100, 50);
+
+        cache.get(removed, 0);
+        cache.get(kept, 0);
+        cache.remove(removed);
+        executor.runAll();
+
+        assertEquals(1, decoded.count);
+        assertNotNull(cache.get(kept, 0));
+        assertNull(cache.get(removed, 0));
+    }
+
+    @Test
+    public void cacheIsBoundedByBytes() {
+        QueuedExecutor executor = new QueuedExecutor();
+        // room for 1200 bytes, the bitmaps of the marks take 800, 400 and 400 bytes
+        MarkBitmapCache cache = new MarkBitmapCache(new SampledOwner(), 1200, null, executor);
+        ImageMark large = mark(20, 10);
+        ImageMark small = mark(10, 10);
+        ImageMark other = mark(10, 10);
+
+        cache.get(large, 0);
+        cache.get(small, 0);
+        executor.runAll();
+        assertNotNull(cache.get(large, 0));
+        assertNotNull(cache.get(small, 0));
+
+        // the least recently used bitmap is evicted for the one of other
+        cache.get(other, 0);
+        executor.runAll();
+        assertNotNull(cache.get(small, 0));
+        assertNotNull(cache.get(other, 0));
+        assertNull(cache.get(large, 0));
+    }
+
+    @Test
+    public void plainOwnerBitmapIsFetchedOnce() {
+        QueuedExecutor executor = new QueuedExecutor();
+        PlainOwner owner = new PlainOwner(Bitmap.createBitmap(300, 200, Bitmap.Config.ARGB_8888));
+        MarkBitmapCache cache = new MarkBitmapCache(owner, Integer.MAX_VALUE, null, executor);
+        ImageMark mark = mark(100, 50);
+
+        // drawn at its own size, the bitmap of the owner is cached as is
+        for (int i = 0; i < 10; i++) {
+            assertSame(owner.bitmap, cache.get(mark, 0));
+        }
+        assertEquals(1, owner.calls);
+    }
+
+    @Test
+    public void plainOwnerBitmapIsDownsampledToBucketSize() {
+        QueuedExecutor executor = new QueuedExecutor();
+        PlainOwner owner = new PlainOwner(Bitmap.createBitmap(300, 200, Bitmap.Config.ARGB_8888));
+        MarkBitmapCache cache = new MarkBitmapCache(owner, Integer.MAX_VALUE, null, executor);
+        cache.setDrawnAtBitmapSize(false);
+        ImageMark mark = mark(100, 50);
+
+        assertNull(cache.get(mark, 0));
+        executor.runAll();
+        Bitmap bitmap = cache.get(mark, 0);
+        assertEquals(100, bitmap.getWidth());
+        assertEquals(50, bitmap.getHeight());
+
+        // not larger than the bucket size, it is cached as is
+        assertSame(owner.bitmap, cache.get(mark, 2));
+        assertEquals(2, owner.calls);
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.barteksc.pdfviewer.util;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Counts the bytes allocated by the current thread, on JVMs which report them
+ */
+public final class Allocations {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private Allocations() {
+        // Prevents instantiation
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        sunThreads.setThreadAllocatedMemoryEnabled(true);
+        return sunThreads;
+    }
+
+    /**
+     * Skip the calling test unless allocations can be counted
+     */
+    public static void assumeSupported() {
+        assumeTrue("thread allocation counting is not supported", THREADS != null);
+    }
+
+    /** @return bytes allocated by the current thread so far */
+    public static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the least bytes allocated by the current thread over a few runs of the action, so
+     * one-off costs like class loading or compilation are not counted
+     */
+    public static long measure(Runnable action) {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long overhead = allocatedBytes();
+            overhead = allocatedBytes() - overhead;
+            long start = allocatedBytes();
+            action.run();
+            least = Math.min(least, allocatedBytes() - start - overhead);
+        }
+        return Math.max(0, least);
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.barteksc.pdfviewer.util;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+
+    private static final long PART_BYTES = 256 * 256 * 4;
+
+    @Test
+    public void releasedBitmapIsReused() {
+        BitmapPool pool = new BitmapPool(4 * PART_BYTES);
+        Bitmap bitmap = pool.acquire(256, 256, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+        assertEquals(PART_BYTES, pool.getCurrentBytes());
+
+        assertSame(bitmap, pool.acquire(256, 256, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getCurrentBytes());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void bitmapOfOtherSizeOrConfigIsNotReused() {
+        BitmapPool pool = new BitmapPool(4 * PART_BYTES);
+        Bitmap bitmap = pool.acquire(256, 256, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+
+        assertNotSame(bitmap, pool.acquire(256, 128, Bitmap.Config.ARGB_8888));
+        assertNotSame(bitmap, pool.acquire(256, 256, Bitmap.Config.RGB_565));
+        assertEquals(0, pool.getHits());
+        assertEquals(PART_BYTES, pool.getCurrentBytes());
+    }
+
+    @Test
+    public void oldestBitmapsAreRecycledOverBudget() {
+        BitmapPool pool = new BitmapPool(2 * PART_BYTES);
+        Bitmap first = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        Bitmap third = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        assertEquals(2 * PART_BYTES, pool.getCurrentBytes());
+        assertTrue(first.isRecycled());
+        assertFalse(second.isRecycled());
+        assertFalse(third.isRecycled());
+    }
+
+    @Test
+    public void bitmapLargerThanBudgetIsRecycled() {
+        BitmapPool pool = new BitmapPool(PART_BYTES);
+        Bitmap large = Bitmap.createBitmap(512, 512, Bitmap.Config.ARGB_8888);
+        pool.release(large);
+
+        assertTrue(large.isRecycled());
+        assertEquals(0, pool.getCurrentBytes());
+    }
+
+    @Test
+    public void clearRecyclesPooledBitmaps() {
+        BitmapPool pool = new BitmapPool(4 * PART_BYTES);
+        Bitmap bitmap = Bitmap.createBitmap(256, 256, Bitmap.Config.ARGB_8888);
+        pool.release(bitmap);
+        pool.clear();
+
+        assertTrue(bitmap.isRecycled());
+        assertEquals(0, pool.getCurrentBytes());
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() {
+        Allocations.assumeSupported();
+        final BitmapPool pool = new BitmapPool(16 * PART_BYTES);
+        final Bitmap[] visible = new Bitmap[8];
+        Runnable scroll = new Runnable() {
+            @Override
+            public void run() {
+                // parts leaving the screen are released, the ones entering it are acquired
+                for (int i = 0; i < visible.length; i++) {
+                    pool.release(visible[i]);
+                    visible[i] = pool.acquire(256, 256, Bitmap.Config.RGB_565);
+                }
+            }
+        };
+        // warm up, fills the pool and its collections
+        for (int i = 0; i < 100; i++) {
+            scroll.run();
+        }
+        long misses = pool.getMisses();
+
+        assertEquals(0, Allocations.measure(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    scroll.run();
+                }
+            }
+        }));
+        assertEquals(misses, pool.getMisses());
+    }
+}
@@ -0,0 +1,64 @@
+package com.shockwave.pdfium;
+
+import android.graphics.Bitmap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+ * Stands in for the pdfium natives on the JVM. Documents made by {@link #newDocument(int, int, int)}
+ * have pages of a single size and render nothing.
+ */
+@Implements(PdfiumCore.class)
+public class ShadowPdfiumCore {
+
+    private static int pageWidth;
+    private static int pageHeight;
+
+    /** A document of {@code pageCount} pages of the given size in pixels */
+    public static PdfDocument newDocument(int pageCount, int width, int height) {
+        pageWidth = width;
+        pageHeight = height;
+        PdfDocument document = new PdfDocument();
+        // the native pointer of a test document is its page count
+        document.mNativeDocPtr = pageCount;
+        return document;
+    }
+
+    @Implementation
+    protected int nativeGetPageCount(long docPtr) {
+        return (int) docPtr;
+    }
+
+    @Implementation
+    protected int[] nativeGetPageSizesByIndex(long docPtr, int[] pageIndexes, int dpi) {
+        int[] sizes = new int[pageIndexes.length * 2];
+        for (int i = 0; i < pageIndexes.length; i++) {
+            sizes[i * 2] = pageWidth;
+            sizes[i * 2 + 1] = pageHeight;
+        }
+        return sizes;
+    }
+
+    @Implementation
+    protected long nativeLoadPage(long docPtr, int pageIndex) {
+        return pageIndex + 1;
+    }
+
+    @Implementation
+    protected void nativeClosePage(long pagePtr) {
+    }
+
+    @Implementation
+    protected void nativeCloseDocument(long docPtr) {
+    }
+
+    @Implementation
+    protected boolean nativeRenderPageBitmapProgressive(long pagePtr, Bitmap bitmap,
+                                                        int startX, int startY,
+                                                        int drawSizeHor, int drawSizeVer,
+                                                        boolean renderAnnot, int backgroundColor,
+                                                        RenderControl control) {
+        return false;
+    }
+}
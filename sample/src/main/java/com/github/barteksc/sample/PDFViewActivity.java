@@ -330,8 +330,11 @@ public class PDFViewActivity extends AppCompatActivity implements OnPageChangeLi
                     float sy = dstRect.height() / srcRect.height();
                     //sx = x / srcRect.left
 
-                    long imgPtr = pdfFile.addImage(page, bitmap, srcRect.left * sx , srcRect.top * sy + topOffset,
-                            (int) dstRect.width(), (int) dstRect.height()); //left, bottom. the screen values
+                    final float left = srcRect.left * sx;
+                    final float bottom = srcRect.top * sy + topOffset;
+                    final int width = (int) dstRect.width();
+                    final int height = (int) dstRect.height();
+                    long imgPtr = pdfFile.addImage(page, bitmap, left, bottom, width, height); //left, bottom. the screen values
                     topOffset += 20;
                     mImgPtrs.addLast(imgPtr);
 
@@ -341,7 +344,7 @@ public class PDFViewActivity extends AppCompatActivity implements OnPageChangeLi
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
-                            pdfView.redrawPages(pdfView.getCurrentPage());
+                            pdfView.redrawPageRect(page, left, bottom, width, height, true);
                         }
                     });
                 }